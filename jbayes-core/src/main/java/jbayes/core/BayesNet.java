@@ -17,22 +17,38 @@
  */
 package jbayes.core;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.stream.Collectors;
 import jbayes.util.Ensure;
 
 /**
  * The class represents a Bayesian Network.
  *
+ * <p>
+ * The network indexes its nodes by name and assigns them dense ids in the order
+ * of insertion (see {@link Node#getId()}), so nodes are looked up in constant
+ * time. Nodes should therefore be added through {@link #addNode(Node)},
+ * {@link #addLink(Node, Node)} or {@link #setNodes(Set)} rather than directly
+ * to the set returned by {@link #getNodes()}.
+ * </p>
+ *
  * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
  */
 public class BayesNet {
 
     private String name;
     private Set<Node> nodes;
+    private final Map<String, Node> nodesByName = new HashMap<>();
+    private final List<Node> nodesById = new ArrayList<>();
     private Set<Link> links;
+    private volatile BayesNetGraph graph;
+    private BayesNetSnapshot snapshot;
+    private volatile long version;
 
     /**
      * Creates new {@link BayesNet} instance.
@@ -83,6 +99,16 @@ public class BayesNet {
      */
     public void setNodes(Set<Node> nodes) {
         this.nodes = nodes;
+        nodesByName.clear();
+        nodesById.clear();
+        if (nodes != null) {
+            for (Node node : nodes) {
+                node.setNetwork(this);
+                index(node);
+            }
+        }
+        graph = null;
+        incrementVersion();
     }
 
     /**
@@ -101,6 +127,8 @@ public class BayesNet {
      */
     public void setLinks(Set<Link> links) {
         this.links = links;
+        graph = null;
+        incrementVersion();
     }
 
     /**
@@ -114,7 +142,16 @@ public class BayesNet {
         ensureNodeNameNotExists(node.getName());
 
         node.setNetwork(this);
+        index(node);
         getNodes().add(node);
+        graph = null;
+        incrementVersion();
+    }
+
+    private void index(Node node) {
+        node.setId(nodesById.size());
+        nodesById.add(node);
+        nodesByName.put(node.getName(), node);
     }
 
     /**
@@ -146,11 +183,14 @@ public class BayesNet {
         
         link.setNetwork(this);
         getLinks().add(link);
+        graph = null;
+        incrementVersion();
     }
 
     private void addLinkWithoutCheck(Link link) {
         link.setNetwork(this);
         getLinks().add(link);
+        incrementVersion();
     }
 
     /**
@@ -171,6 +211,7 @@ public class BayesNet {
 
         a.getOutLinks().add(link);
         b.getInLinks().add(link);
+        graph = null;
     }
 
     private void addNodeIfNecessary(Node node) {
@@ -179,6 +220,62 @@ public class BayesNet {
         }
     }
 
+    /**
+     * Returns the frozen view of the structure of the network. The view is
+     * cached until nodes or links are added.
+     *
+     * @return Graph of the network
+     * @throws IllegalStateException If a parent of one of the nodes doesn't
+     * belong to the network
+     */
+    public BayesNetGraph getGraph() {
+        BayesNetGraph result = graph;
+        if (result == null) {
+            synchronized (this) {
+                result = graph;
+                if (result == null) {
+                    graph = result = new BayesNetGraph(nodesById);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns an immutable snapshot of the current version of the network.
+     * The snapshot shares the nodes, which have not been changed, and the
+     * structure with the previous snapshot, so taking it after an edit copies
+     * only the changed nodes. The same snapshot is returned until the version
+     * changes.
+     *
+     * @return Snapshot of the network
+     * @see BayesNetSnapshot
+     */
+    public synchronized BayesNetSnapshot snapshot() {
+        if (snapshot == null || snapshot.getVersion() != version) {
+            snapshot = new BayesNetSnapshot(this, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the version of the network, which is incremented by each change
+     * of its structure or of the levels, link types and distributions of its
+     * nodes made through the setters. Evidence does not change the version.
+     *
+     * @return Version of the network
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Internal method for marking the network as changed.
+     */
+    synchronized void incrementVersion() {
+        version++;
+    }
+
     /**
      * Sets evidence for the specified node
      *
@@ -199,13 +296,49 @@ public class BayesNet {
         this.setEvidence(getNodeByName(nodeName), evidence);
     }
 
+    /**
+     * Returns the current evidence of all nodes.
+     *
+     * @return Evidence indexed by node id
+     */
+    public Evidence getEvidence() {
+        int[] levels = new int[nodesById.size()];
+        for (int id = 0; id < levels.length; id++) {
+            levels[id] = nodesById.get(id).getEvidenceIndex();
+        }
+        return new Evidence(levels);
+    }
+
+    /**
+     * Sets the specified evidence to all nodes. Only nodes, whose evidence
+     * differs, are changed.
+     *
+     * @param evidence Evidence indexed by node id
+     */
+    public void setEvidence(Evidence evidence) {
+        Ensure.NotNull(evidence, "evidence");
+        Ensure.AreEquals(evidence.size(), nodesById.size(), "Size of evidence");
+
+        for (int id = 0; id < nodesById.size(); id++) {
+            Node node = nodesById.get(id);
+            int level = evidence.getLevel(id);
+            if (level == -1) {
+                if (node.getEvidenceIndex() != -1) {
+                    node.clearEvidence();
+                }
+            } else {
+                node.setEvidence(level);
+            }
+        }
+    }
+
     /**
      * Clears evidences from all nodes.
      */
     public void clearEvidences() {
-        getNodes()
-                .parallelStream()
-                .forEach(x -> x.clearEvidence());
+        for (Node node : getNodes()) {
+            node.clearEvidence();
+        }
     }
 
     /**
@@ -213,21 +346,28 @@ public class BayesNet {
      *
      * @param name
      * @return Node that has specified name
+     * @throws NoSuchElementException If the network doesn't contain the node
      */
     public Node getNodeByName(String name) {
-        return getNodes()
-                .parallelStream()
-                .filter(x -> (name == null ? x.getName() == null : name.equals(x.getName())))
-                .findFirst()
-                .get();
+        Node node = nodesByName.get(name);
+        if (node == null) {
+            throw new NoSuchElementException(String.format("Network %s doesn't contain node %s", this.name, name));
+        }
+        return node;
+    }
+
+    /**
+     * Returns node by its id.
+     *
+     * @param id Id of the node
+     * @return Node that has specified id or null if there is no such node
+     */
+    public Node getNodeById(int id) {
+        return id >= 0 && id < nodesById.size() ? nodesById.get(id) : null;
     }
 
     protected void ensureNodeNameNotExists(final String nodeName) {
-        List<Node> sameNameOrAlias = getNodes()
-                .stream()
-                .filter(x -> x.getName().equals(nodeName))
-                .collect(Collectors.toList());
-        Ensure.AreEquals(sameNameOrAlias.size(), 0, "Node with the same name or alias is already presented in the network.");
+        Ensure.IsFalse(nodesByName.containsKey(nodeName), "Node with the same name or alias is already presented in the network.");
     }
 
     @Override
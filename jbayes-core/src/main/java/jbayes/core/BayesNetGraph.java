@@ -0,0 +1,251 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import java.util.BitSet;
+import java.util.List;
+import jbayes.util.Ensure;
+
+/**
+ * Frozen view of the structure of a {@link BayesNet}, indexed by
+ * {@link Node#getId()}.
+ *
+ * <p>
+ * Parents and children of all nodes are kept in two int arrays in compressed
+ * sparse row form: the parents of node {@code id} are
+ * {@code parents[parentOffsets[id]]} to
+ * {@code parents[parentOffsets[id + 1] - 1]}, in the order of
+ * {@link Node#getInLinks()}, which defines the layout of CPTs. Traversals
+ * therefore walk contiguous arrays instead of lists of {@link Link} objects.
+ * The view also keeps a topological order, and ancestors of each node are
+ * computed at the first request and cached.
+ * </p>
+ *
+ * <p>
+ * The view is obtained by {@link BayesNet#getGraph()}, which builds it again
+ * only after nodes or links were added. It may be shared between threads.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public final class BayesNetGraph {
+
+    private final Node[] nodes;
+    private final int[] parentOffsets;
+    private final int[] parents;
+    private final int[] childOffsets;
+    private final int[] children;
+    /**
+     * Topological order or null if the network contains a cycle.
+     */
+    private final int[] order;
+    private final BitSet[] ancestors;
+
+    BayesNetGraph(List<Node> nodes) {
+        int size = nodes.size();
+        this.nodes = nodes.toArray(new Node[size]);
+        this.parentOffsets = new int[size + 1];
+        this.childOffsets = new int[size + 1];
+        this.ancestors = new BitSet[size];
+
+        for (int id = 0; id < size; id++) {
+            Node node = this.nodes[id];
+            parentOffsets[id + 1] = parentOffsets[id] + node.getInLinks().size();
+            for (Link link : node.getInLinks()) {
+                Node parent = link.getParent();
+                Ensure.IsTrue(parent.getId() >= 0 && parent.getId() < size && this.nodes[parent.getId()] == parent,
+                        String.format("Parent %s of node %s doesn't belong to the network", parent.getName(), node.getName()));
+                childOffsets[parent.getId() + 1]++;
+            }
+        }
+        for (int id = 0; id < size; id++) {
+            childOffsets[id + 1] += childOffsets[id];
+        }
+
+        this.parents = new int[parentOffsets[size]];
+        this.children = new int[childOffsets[size]];
+        int[] childCounts = new int[size];
+        for (int id = 0; id < size; id++) {
+            int offset = parentOffsets[id];
+            for (Link link : this.nodes[id].getInLinks()) {
+                int parent = link.getParent().getId();
+                parents[offset++] = parent;
+                children[childOffsets[parent] + childCounts[parent]++] = id;
+            }
+        }
+        this.order = sortTopologically();
+    }
+
+    private int[] sortTopologically() {
+        int size = nodes.length;
+        int[] inDegree = new int[size];
+        int[] result = new int[size];
+        int count = 0;
+        for (int id = 0; id < size; id++) {
+            inDegree[id] = parentOffsets[id + 1] - parentOffsets[id];
+            if (inDegree[id] == 0) {
+                result[count++] = id;
+            }
+        }
+        // the result doubles as the queue of nodes, whose parents are all sorted
+        for (int head = 0; head < count; head++) {
+            int id = result[head];
+            for (int i = childOffsets[id]; i < childOffsets[id + 1]; i++) {
+                if (--inDegree[children[i]] == 0) {
+                    result[count++] = children[i];
+                }
+            }
+        }
+        return count == size ? result : null;
+    }
+
+    /**
+     * Returns count of nodes.
+     *
+     * @return Count of nodes
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the node with the specified id.
+     *
+     * @param id Node id
+     * @return Node
+     */
+    public Node getNode(int id) {
+        return nodes[id];
+    }
+
+    public int getParentCount(int id) {
+        return parentOffsets[id + 1] - parentOffsets[id];
+    }
+
+    /**
+     * Returns the id of the specified parent of the node.
+     *
+     * @param id Node id
+     * @param index Index of the parent in {@link Node#getInLinks()}
+     * @return Parent id
+     */
+    public int getParent(int id, int index) {
+        return parents[parentOffsets[id] + index];
+    }
+
+    /**
+     * Returns ids of the parents of the node in the order of
+     * {@link Node#getInLinks()}.
+     *
+     * @param id Node id
+     * @return Parent ids
+     */
+    public int[] getParents(int id) {
+        int[] result = new int[getParentCount(id)];
+        System.arraycopy(parents, parentOffsets[id], result, 0, result.length);
+        return result;
+    }
+
+    public int getChildCount(int id) {
+        return childOffsets[id + 1] - childOffsets[id];
+    }
+
+    /**
+     * Returns the id of the specified child of the node. Children are ordered
+     * by id.
+     *
+     * @param id Node id
+     * @param index Index of the child
+     * @return Child id
+     */
+    public int getChild(int id, int index) {
+        return children[childOffsets[id] + index];
+    }
+
+    /**
+     * Returns ids of the children of the node ordered by id.
+     *
+     * @param id Node id
+     * @return Child ids
+     */
+    public int[] getChildren(int id) {
+        int[] result = new int[getChildCount(id)];
+        System.arraycopy(children, childOffsets[id], result, 0, result.length);
+        return result;
+    }
+
+    public boolean isAcyclic() {
+        return order != null;
+    }
+
+    /**
+     * Returns ids of all nodes in topological order, i.e. each node follows
+     * its parents.
+     *
+     * @return Node ids in topological order
+     * @throws IllegalStateException If the network contains a cycle
+     */
+    public int[] getTopologicalOrder() {
+        Ensure.IsTrue(isAcyclic(), "The network should be acyclic");
+        return order.clone();
+    }
+
+    /**
+     * Returns ids of the ancestors of the node, not including the node itself.
+     *
+     * @param id Node id
+     * @return Ancestor ids
+     */
+    public BitSet getAncestors(int id) {
+        return (BitSet) ancestorsOf(id).clone();
+    }
+
+    /**
+     * Returns true if the first node is an ancestor of the second one.
+     *
+     * @param ancestor Id of the possible ancestor
+     * @param id Node id
+     * @return True if the first node is an ancestor of the second one
+     */
+    public boolean isAncestor(int ancestor, int id) {
+        return ancestorsOf(id).get(ancestor);
+    }
+
+    private BitSet ancestorsOf(int id) {
+        synchronized (ancestors) {
+            BitSet result = ancestors[id];
+            if (result == null) {
+                result = new BitSet(nodes.length);
+                int[] stack = new int[nodes.length + 1];
+                int top = 0;
+                stack[top++] = id;
+                while (top > 0) {
+                    int current = stack[--top];
+                    for (int i = parentOffsets[current]; i < parentOffsets[current + 1]; i++) {
+                        if (!result.get(parents[i])) {
+                            result.set(parents[i]);
+                            stack[top++] = parents[i];
+                        }
+                    }
+                }
+                ancestors[id] = result;
+            }
+            return result;
+        }
+    }
+}
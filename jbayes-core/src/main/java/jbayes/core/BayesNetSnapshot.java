@@ -0,0 +1,284 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jbayes.util.Ensure;
+
+/**
+ * Immutable snapshot of a version of a {@link BayesNet}.
+ *
+ * <p>
+ * A snapshot keeps the structure of the network and the names, levels, link
+ * types and copies of the distributions of its nodes, taken by
+ * {@link BayesNet#snapshot()}. Evidence and inference are not part of it.
+ * Later changes of the network do not affect the snapshot, so queries may
+ * still be served on it, e.g. through a {@code CompiledModel} or a network
+ * created by {@link #toNetwork()}, while the network is being edited.
+ * </p>
+ *
+ * <p>
+ * Snapshots of one network share their parts: a node, which has not been
+ * changed through its setters since the previous snapshot, is shared with it,
+ * and so is the structure if no nodes or links were added. Holding many
+ * versions therefore costs only the changed nodes, and
+ * {@link #getChangedNodes(BayesNetSnapshot)} compares two versions by
+ * reference. Changes made directly to the lists returned by the getters, e.g.
+ * to a CPT, are not detected.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public final class BayesNetSnapshot {
+
+    private final String name;
+    private final long version;
+    private final BayesNetGraph graph;
+    private final Map<String, Integer> ids;
+    private final NodeSnapshot[] nodes;
+
+    BayesNetSnapshot(BayesNet network, BayesNetSnapshot previous) {
+        this.name = network.getName();
+        this.version = network.getVersion();
+        this.graph = network.getGraph();
+        this.nodes = new NodeSnapshot[graph.size()];
+
+        boolean isSameStructure = previous != null && previous.graph == graph;
+        Map<String, Integer> nodeIds = isSameStructure ? previous.ids : new HashMap<>();
+        for (int id = 0; id < nodes.length; id++) {
+            Node node = graph.getNode(id);
+            NodeSnapshot old = previous != null && id < previous.nodes.length && previous.graph.getNode(id) == node
+                    ? previous.nodes[id] : null;
+            nodes[id] = old != null && old.version == node.getVersion() ? old : new NodeSnapshot(node);
+            if (!isSameStructure) {
+                nodeIds.put(node.getName(), id);
+            }
+        }
+        this.ids = isSameStructure ? nodeIds : Collections.unmodifiableMap(nodeIds);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the version of the network, which the snapshot was taken at.
+     *
+     * @return Version of the network
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns count of nodes.
+     *
+     * @return Count of nodes
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the node with the specified id.
+     *
+     * @param id Node id
+     * @return Node
+     */
+    public NodeSnapshot getNode(int id) {
+        return nodes[id];
+    }
+
+    /**
+     * Returns the node with the specified name.
+     *
+     * @param nodeName Node name
+     * @return Node
+     */
+    public NodeSnapshot getNode(String nodeName) {
+        Integer id = ids.get(nodeName);
+        Ensure.IsTrue(id != null, String.format("Snapshot of network %s doesn't contain node %s", name, nodeName));
+        return nodes[id];
+    }
+
+    /**
+     * Returns ids of the parents of the node in the order, which defines the
+     * layout of its CPT.
+     *
+     * @param id Node id
+     * @return Parent ids
+     */
+    public int[] getParents(int id) {
+        return graph.getParents(id);
+    }
+
+    /**
+     * Returns count of parents of the node.
+     *
+     * @param id Node id
+     * @return Count of parents
+     */
+    public int getParentCount(int id) {
+        return graph.getParentCount(id);
+    }
+
+    /**
+     * Returns id of the parent of the node with the specified index.
+     *
+     * @param id Node id
+     * @param index Index of the parent
+     * @return Parent id
+     */
+    public int getParent(int id, int index) {
+        return graph.getParent(id, index);
+    }
+
+    /**
+     * Returns ids of all nodes in topological order.
+     *
+     * @return Node ids in topological order
+     * @throws IllegalStateException If the network contains a cycle
+     */
+    public int[] getTopologicalOrder() {
+        return graph.getTopologicalOrder();
+    }
+
+    /**
+     * Returns names of the nodes, which differ from the nodes with the same
+     * name in the other snapshot, have other parents or are missing in it. Nodes are compared by
+     * reference, so snapshots of different networks differ in all nodes.
+     *
+     * @param other Other snapshot
+     * @return Names of changed nodes
+     */
+    public List<String> getChangedNodes(BayesNetSnapshot other) {
+        Ensure.NotNull(other, "other");
+
+        List<String> result = new ArrayList<>();
+        for (NodeSnapshot node : nodes) {
+            Integer id = other.ids.get(node.getName());
+            if (id == null || other.nodes[id] != node || !hasSameParents(node.getId(), other, id)) {
+                result.add(node.getName());
+            }
+        }
+        return result;
+    }
+
+    private boolean hasSameParents(int id, BayesNetSnapshot other, int otherId) {
+        if (graph == other.graph) {
+            return true;
+        }
+        if (graph.getParentCount(id) != other.graph.getParentCount(otherId)) {
+            return false;
+        }
+        for (int i = 0; i < graph.getParentCount(id); i++) {
+            if (!nodes[graph.getParent(id, i)].getName().equals(other.nodes[other.graph.getParent(otherId, i)].getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a new network with the nodes, links and distributions of the
+     * snapshot, which may be used by any inferer. Each call creates an
+     * independent network.
+     *
+     * @return New network
+     */
+    public BayesNet toNetwork() {
+        BayesNet network = new BayesNet(name);
+        Node[] copies = new Node[nodes.length];
+        for (int id = 0; id < nodes.length; id++) {
+            NodeSnapshot node = nodes[id];
+            copies[id] = new Node(node.getName(), node.getLevels().toArray(new String[0]), node.getLinkType());
+            copies[id].setDistribution(node.getDistribution().copy());
+            network.addNode(copies[id]);
+        }
+        // parents are linked in their original order, which defines the CPT layout
+        for (int id = 0; id < nodes.length; id++) {
+            for (int i = 0; i < graph.getParentCount(id); i++) {
+                network.addLink(copies[graph.getParent(id, i)], copies[id]);
+            }
+        }
+        return network;
+    }
+
+    @Override
+    public String toString() {
+        return "BayesNetSnapshot{" + "name=" + name + ", version=" + version + ", nodes=" + nodes.length + '}';
+    }
+
+    /**
+     * Immutable snapshot of a node.
+     */
+    public static final class NodeSnapshot {
+
+        private final String name;
+        private final int id;
+        private final List<String> levels;
+        private final NodeLinkType linkType;
+        private final Distribution distribution;
+        private final long version;
+
+        private NodeSnapshot(Node node) {
+            this.name = node.getName();
+            this.id = node.getId();
+            this.levels = Collections.unmodifiableList(new ArrayList<>(node.getLevels()));
+            this.linkType = node.getLinkType();
+            this.distribution = node.getDistribution().copy();
+            this.version = node.getVersion();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public List<String> getLevels() {
+            return levels;
+        }
+
+        public NodeLinkType getLinkType() {
+            return linkType;
+        }
+
+        /**
+         * Returns the distribution of the node, which is shared by all
+         * readers of the snapshot and by later snapshots. It should not be
+         * changed; use {@link Distribution#copy()} to get a modifiable one.
+         *
+         * @return Distribution of the node
+         */
+        public Distribution getDistribution() {
+            return distribution;
+        }
+
+        @Override
+        public String toString() {
+            return "NodeSnapshot{" + "name=" + name + ", linkType=" + linkType + ", levels=" + levels + '}';
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import jbayes.util.Ensure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link FactorStorage} in direct byte buffers, i.e. outside the Java heap.
+ *
+ * <p>
+ * A byte buffer holds at most 2 GiB, so the values are split into chunks of
+ * 2<sup>27</sup> values each. Values are initially zero. The memory is
+ * released by {@link #close()} without waiting for the garbage collector if
+ * the running JVM allows it, otherwise when the storage becomes unreachable.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public final class DirectFactorStorage implements FactorStorage {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectFactorStorage.class);
+
+    private static final int CHUNK_BITS = 27;
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            LOGGER.debug("Direct buffers will be released by the garbage collector", ex);
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final long size;
+    private final int chunkBits;
+    private final long chunkMask;
+    private ByteBuffer[] buffers;
+    private DoubleBuffer[] chunks;
+
+    /**
+     * Creates new {@link DirectFactorStorage} instance.
+     *
+     * @param size Count of values
+     */
+    public DirectFactorStorage(long size) {
+        this(size, CHUNK_BITS);
+    }
+
+    DirectFactorStorage(long size, int chunkBits) {
+        Ensure.GreaterThanOrEquals(size, 0L, "size");
+        Ensure.BetweenInclusive(chunkBits, 1, CHUNK_BITS, "chunkBits");
+
+        this.size = size;
+        this.chunkBits = chunkBits;
+        this.chunkMask = (1L << chunkBits) - 1;
+        int count = (int) ((size + chunkMask) >>> chunkBits);
+        this.buffers = new ByteBuffer[count];
+        this.chunks = new DoubleBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long chunkSize = Math.min(size - ((long) i << chunkBits), 1L << chunkBits);
+            buffers[i] = ByteBuffer.allocateDirect((int) chunkSize * Double.BYTES).order(ByteOrder.nativeOrder());
+            chunks[i] = buffers[i].asDoubleBuffer();
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public double get(long index) {
+        return chunks[(int) (index >>> chunkBits)].get((int) (index & chunkMask));
+    }
+
+    @Override
+    public void set(long index, double value) {
+        chunks[(int) (index >>> chunkBits)].put((int) (index & chunkMask), value);
+    }
+
+    public boolean isClosed() {
+        return chunks == null;
+    }
+
+    @Override
+    public void close() {
+        if (chunks == null) {
+            return;
+        }
+        ByteBuffer[] released = buffers;
+        buffers = null;
+        chunks = null;
+        if (INVOKE_CLEANER != null) {
+            try {
+                for (ByteBuffer buffer : released) {
+                    INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                }
+            } catch (ReflectiveOperationException ex) {
+                LOGGER.debug("Direct buffers will be released by the garbage collector", ex);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DirectFactorStorage{" + "size=" + size + ", closed=" + isClosed() + '}';
+    }
+}
@@ -18,52 +18,102 @@
 package jbayes.core;
 
 import com.google.common.base.Joiner;
-import java.util.ArrayList;
-import java.util.Arrays;
+import com.google.common.primitives.Doubles;
 import java.util.List;
-import java.util.stream.Collectors;
+import jbayes.util.Ensure;
 
 /**
+ * Discrete distribution of a node.
+ *
+ * <p>
+ * The CPT is stored in a primitive array: the node changes fastest, so each
+ * parent configuration occupies a contiguous block of the size of the count
+ * of node levels, and the blocks follow in the order of the parent
+ * configurations. List returned by {@link #getCpt()} is a view of the array,
+ * the native inferers read the array itself.
+ * </p>
  *
  * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
  */
 public class DiscreteDistribution implements Distribution {
 
-    private final List<Double> cpt;
-    private List<Double> inference;
+    private final double[] cpt;
+    private double[] inference;
 
     public DiscreteDistribution(List<Double> cpt) {
+        Ensure.NotNull(cpt, "cpt");
+
+        this.cpt = Doubles.toArray(cpt);
+    }
+
+    /**
+     * Creates new {@link DiscreteDistribution} instance backed by the
+     * specified array, which is not copied.
+     *
+     * @param cpt CPT values
+     */
+    public DiscreteDistribution(double[] cpt) {
+        Ensure.NotNull(cpt, "cpt");
+
         this.cpt = cpt;
     }
 
+    /**
+     * Returns the CPT as a list backed by the array of values.
+     *
+     * @return CPT
+     */
     public List<Double> getCpt() {
+        return Doubles.asList(cpt);
+    }
+
+    /**
+     * Returns the array of CPT values, which backs the distribution.
+     *
+     * @return CPT values
+     */
+    public double[] getCptValues() {
         return cpt;
     }
 
     @Override
     public List<Double> getInference() {
-        return inference;
+        return inference != null ? Doubles.asList(inference) : null;
     }
 
     @Override
     public void setInference(List<Double> inference) {
+        this.inference = inference != null ? Doubles.toArray(inference) : null;
+    }
+
+    @Override
+    public void setInferenceValues(double[] inference) {
         this.inference = inference;
     }
 
     public static DiscreteDistribution FromArray(Double... args) {
-        return new DiscreteDistribution(Arrays.asList(args));
+        double[] result = new double[args.length];
+        for (int i = 0; i < args.length; i++) {
+            result[i] = args[i];
+        }
+        return new DiscreteDistribution(result);
     }
 
     public static DiscreteDistribution FromArray(Integer... args) {
-        List<Double> result = new ArrayList<>();
-        for (Integer item : args) {
-            result.add((double) item);
+        double[] result = new double[args.length];
+        for (int i = 0; i < args.length; i++) {
+            result[i] = args[i];
         }
         return new DiscreteDistribution(result);
     }
 
+    @Override
+    public DiscreteDistribution copy() {
+        return new DiscreteDistribution(cpt.clone());
+    }
+
     @Override
     public String convertToString() {
-        return Joiner.on(", ").join(getCpt().stream().map(x -> String.valueOf((x))).collect(Collectors.toList()));
+        return Joiner.on(", ").join(getCpt());
     }
 }
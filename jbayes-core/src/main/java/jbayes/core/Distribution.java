@@ -17,6 +17,7 @@
  */
 package jbayes.core;
 
+import com.google.common.primitives.Doubles;
 import java.util.List;
 
 /**
@@ -30,4 +31,22 @@ public interface Distribution {
     public void setInference(List<Double> inference);
 
     public List<Double> getInference();
+
+    /**
+     * Returns a copy of the parameters of the distribution without inference,
+     * which is not affected by later changes of this distribution.
+     *
+     * @return Copy of the distribution
+     */
+    public Distribution copy();
+
+    /**
+     * Sets inference given by a primitive array. The array should not be
+     * changed afterwards, since implementations may keep it without copying.
+     *
+     * @param inference Probability of each level
+     */
+    default void setInferenceValues(double[] inference) {
+        setInference(Doubles.asList(inference));
+    }
 }
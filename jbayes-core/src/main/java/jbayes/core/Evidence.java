@@ -0,0 +1,194 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import java.util.Arrays;
+import jbayes.util.Ensure;
+
+/**
+ * Immutable evidence of a {@link BayesNet}: the index of the observed level
+ * of each node or -1 if the node is not observed, indexed by
+ * {@link Node#getId()}.
+ *
+ * <p>
+ * Evidence is a plain value with precomputed hash, so it may serve as a key of
+ * caches, be kept for batches of queries or be sent elsewhere as an int array.
+ * It is read from a network by {@link BayesNet#getEvidence()} and applied by
+ * {@link BayesNet#setEvidence(Evidence)}, which changes only the nodes whose
+ * evidence differs.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public final class Evidence {
+
+    private final int[] levels;
+    private final int hash;
+
+    /**
+     * Creates evidence, which takes ownership of the array without copying.
+     *
+     * @param levels Index of the observed level of each node or -1
+     */
+    Evidence(int[] levels) {
+        this.levels = levels;
+        this.hash = Arrays.hashCode(levels);
+    }
+
+    /**
+     * Creates evidence from the specified array, which is copied.
+     *
+     * @param levels Index of the observed level of each node or -1
+     * @return Evidence
+     */
+    public static Evidence FromArray(int... levels) {
+        Ensure.NotNull(levels, "levels");
+        for (int level : levels) {
+            Ensure.GreaterThanOrEquals(level, -1, "level");
+        }
+
+        return new Evidence(levels.clone());
+    }
+
+    /**
+     * Creates evidence without observed nodes.
+     *
+     * @param size Count of nodes
+     * @return Empty evidence
+     */
+    public static Evidence none(int size) {
+        int[] levels = new int[size];
+        Arrays.fill(levels, -1);
+        return new Evidence(levels);
+    }
+
+    /**
+     * Returns count of nodes.
+     *
+     * @return Count of nodes
+     */
+    public int size() {
+        return levels.length;
+    }
+
+    /**
+     * Returns the index of the observed level of the node.
+     *
+     * @param id Node id
+     * @return Index of the observed level or -1 if the node is not observed
+     */
+    public int getLevel(int id) {
+        return levels[id];
+    }
+
+    /**
+     * Returns whether the node is observed.
+     *
+     * @param id Node id
+     * @return True if the node is observed at some level
+     */
+    public boolean isObserved(int id) {
+        return levels[id] != -1;
+    }
+
+    /**
+     * Returns count of observed nodes.
+     *
+     * @return Count of observed nodes
+     */
+    public int getObservedCount() {
+        int count = 0;
+        for (int level : levels) {
+            if (level != -1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns evidence, where the node is observed at the specified level.
+     *
+     * @param id Node id
+     * @param level Index of the observed level
+     * @return New evidence
+     */
+    public Evidence with(int id, int level) {
+        Ensure.GreaterThanOrEquals(level, 0, "level");
+
+        int[] result = levels.clone();
+        result[id] = level;
+        return new Evidence(result);
+    }
+
+    /**
+     * Returns evidence, where the node is observed at the specified level.
+     *
+     * @param node Node
+     * @param level Observed level
+     * @return New evidence
+     */
+    public Evidence with(Node node, String level) {
+        int index = node.getLevels().indexOf(level);
+        Ensure.IsTrue(index != -1, String.format("Node %s doesn't contain level %s", node.getName(), level));
+        return with(node.getId(), index);
+    }
+
+    /**
+     * Returns evidence, where the node is not observed.
+     *
+     * @param id Node id
+     * @return New evidence
+     */
+    public Evidence without(int id) {
+        int[] result = levels.clone();
+        result[id] = -1;
+        return new Evidence(result);
+    }
+
+    /**
+     * Returns a copy of the index of the observed level of each node.
+     *
+     * @return Index of the observed level of each node or -1
+     */
+    public int[] toArray() {
+        return levels.clone();
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Evidence)) {
+            return false;
+        }
+        final Evidence other = (Evidence) obj;
+        return hash == other.hash && Arrays.equals(levels, other.levels);
+    }
+
+    @Override
+    public String toString() {
+        return "Evidence{" + "levels=" + Arrays.toString(levels) + '}';
+    }
+}
@@ -0,0 +1,582 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import java.util.Arrays;
+import jbayes.util.Ensure;
+
+/**
+ * The class represents a table of non-negative values over a set of discrete
+ * variables, also known as a potential.
+ *
+ * <p>
+ * Variables are identified by integer ids, e.g. indices of nodes. The values
+ * are stored contiguously, where the first variable changes fastest, which is
+ * the same layout as the CPT of a node whose first variable is the node itself
+ * followed by its parents. The stride of each variable is precomputed, so the
+ * operations walk the tables with incremental index arithmetic instead of
+ * decoding the states of all variables from each index. Operands laid out
+ * contiguously in each other are handled by vectorizable kernels.
+ * </p>
+ *
+ * <p>
+ * Values are stored either in an array on the heap or, for direct factors, in
+ * a {@link FactorStorage} outside the heap, which can hold more values than an
+ * array and is released by {@link #close()}. Products, quotients and copies
+ * are direct if any operand is direct. Marginals and reductions are direct
+ * only if they don't fit in an array, since they are usually small.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public final class Factor implements AutoCloseable {
+
+    /**
+     * The largest array which can be allocated by common JVMs.
+     */
+    private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final int[] vars;
+    private final int[] cards;
+    private final long[] strides;
+    private final long size;
+    private final double[] values;
+    private final FactorStorage storage;
+
+    /**
+     * Creates new {@link Factor} instance. The arrays are not copied.
+     *
+     * @param vars Variables
+     * @param cards Cardinality of each variable
+     * @param values Table values
+     */
+    public Factor(int[] vars, int[] cards, double[] values) {
+        this(vars, cards, values, null);
+    }
+
+    /**
+     * Creates new direct {@link Factor} instance, which takes ownership of the
+     * specified storage.
+     *
+     * @param vars Variables
+     * @param cards Cardinality of each variable
+     * @param storage Table values
+     */
+    public Factor(int[] vars, int[] cards, FactorStorage storage) {
+        this(vars, cards, null, storage);
+    }
+
+    private Factor(int[] vars, int[] cards, double[] values, FactorStorage storage) {
+        Ensure.NotNull(vars, "vars");
+        Ensure.NotNull(cards, "cards");
+        Ensure.NotNull(values != null ? values : storage, "values");
+        Ensure.AreEquals(vars.length, cards.length, "Count of cardinalities");
+
+        this.vars = vars;
+        this.cards = cards;
+        this.strides = new long[vars.length];
+        long count = 1;
+        for (int i = 0; i < vars.length; i++) {
+            strides[i] = count;
+            count = Math.multiplyExact(count, (long) cards[i]);
+        }
+        Ensure.AreEquals(values != null ? values.length : storage.size(), count, "Size of factor");
+        this.size = count;
+        this.values = values;
+        this.storage = storage;
+    }
+
+    /**
+     * Creates a factor with all values equal to one. The factor is direct if
+     * it doesn't fit in an array.
+     *
+     * @param vars Variables
+     * @param cards Cardinality of each variable
+     * @return Unit factor
+     */
+    public static Factor unit(int[] vars, int[] cards) {
+        return unit(vars, cards, false);
+    }
+
+    /**
+     * Creates a factor with all values equal to one.
+     *
+     * @param vars Variables
+     * @param cards Cardinality of each variable
+     * @param direct Whether the values are stored outside the heap
+     * @return Unit factor
+     */
+    public static Factor unit(int[] vars, int[] cards, boolean direct) {
+        Factor result = allocate(vars, cards, direct);
+        result.fill(0, result.size, 1.0);
+        return result;
+    }
+
+    /**
+     * Creates a factor with all values equal to zero.
+     */
+    private static Factor allocate(int[] vars, int[] cards, boolean direct) {
+        long count = sizeOf(cards);
+        if (direct || count > MAX_ARRAY_SIZE) {
+            return new Factor(vars, cards, new DirectFactorStorage(count));
+        }
+        return new Factor(vars, cards, new double[(int) count]);
+    }
+
+    public int[] getVariables() {
+        return vars;
+    }
+
+    public int[] getCards() {
+        return cards;
+    }
+
+    public long[] getStrides() {
+        return strides;
+    }
+
+    /**
+     * Returns values of the factor, which should not be direct.
+     *
+     * @return Table values
+     */
+    public double[] getValues() {
+        Ensure.IsTrue(values != null, "Values of a direct factor are not stored in an array");
+        return values;
+    }
+
+    /**
+     * Returns storage of the values of a direct factor or null.
+     *
+     * @return Storage of the values
+     */
+    public FactorStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Returns whether the values are stored outside the heap.
+     *
+     * @return True, if the factor is direct
+     */
+    public boolean isDirect() {
+        return storage != null;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public double get(long index) {
+        return values != null ? values[(int) index] : storage.get(index);
+    }
+
+    private void set(long index, double value) {
+        if (values != null) {
+            values[(int) index] = value;
+        } else {
+            storage.set(index, value);
+        }
+    }
+
+    private void fill(long from, long to, double value) {
+        if (values != null) {
+            Arrays.fill(values, (int) from, (int) to, value);
+        } else {
+            for (long i = from; i < to; i++) {
+                storage.set(i, value);
+            }
+        }
+    }
+
+    public int indexOf(int var) {
+        for (int i = 0; i < vars.length; i++) {
+            if (vars[i] == var) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(int var) {
+        return indexOf(var) != -1;
+    }
+
+    public Factor copy() {
+        if (values != null) {
+            return new Factor(vars, cards, values.clone());
+        }
+        Factor result = allocate(vars, cards, true);
+        for (long i = 0; i < size; i++) {
+            result.set(i, storage.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns product of this and the specified factor. Variables of the
+     * result are the variables of this factor followed by the remaining
+     * variables of the other one.
+     *
+     * @param other Factor
+     * @return Product
+     */
+    public Factor multiply(Factor other) {
+        int[] extra = new int[other.vars.length];
+        int extraCount = 0;
+        for (int i = 0; i < other.vars.length; i++) {
+            if (!contains(other.vars[i])) {
+                extra[extraCount++] = i;
+            }
+        }
+        int[] resVars = Arrays.copyOf(vars, vars.length + extraCount);
+        int[] resCards = Arrays.copyOf(cards, cards.length + extraCount);
+        for (int i = 0; i < extraCount; i++) {
+            resVars[vars.length + i] = other.vars[extra[i]];
+            resCards[cards.length + i] = other.cards[extra[i]];
+        }
+        Factor result = allocate(resVars, resCards, isDirect() || other.isDirect());
+        if (FactorKernels.ENABLED && result.values != null && values != null && other.values != null) {
+            int start = FactorKernels.runOf(resVars, other.vars);
+            if (start != -1) {
+                // variables of this factor lead the result, so it is tiled
+                for (int base = 0; base < result.values.length; base += values.length) {
+                    System.arraycopy(values, 0, result.values, base, values.length);
+                }
+                FactorKernels.multiply(result.values, other.values, (int) result.strides[start]);
+                return result;
+            }
+        }
+
+        long[] thisStrides = stridesOf(resVars, vars, cards);
+        long[] otherStrides = stridesOf(resVars, other.vars, other.cards);
+        // the check is hoisted out of the loop by the JIT compiler
+        boolean arrays = result.values != null && values != null && other.values != null;
+        int[] states = new int[resVars.length];
+        long thisIndex = 0;
+        long otherIndex = 0;
+        for (long i = 0; i < result.size; i++) {
+            if (arrays) {
+                result.values[(int) i] = values[(int) thisIndex] * other.values[(int) otherIndex];
+            } else {
+                result.set(i, get(thisIndex) * other.get(otherIndex));
+            }
+            for (int j = 0; j < states.length; j++) {
+                thisIndex += thisStrides[j];
+                otherIndex += otherStrides[j];
+                if (++states[j] < resCards[j]) {
+                    break;
+                }
+                states[j] = 0;
+                thisIndex -= thisStrides[j] * resCards[j];
+                otherIndex -= otherStrides[j] * resCards[j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Multiplies this factor in place by the specified factor, whose variables
+     * should be a subset of the variables of this factor.
+     *
+     * @param other Factor
+     */
+    public void multiplyInPlace(Factor other) {
+        if (FactorKernels.ENABLED && values != null && other.values != null) {
+            int start = FactorKernels.runOf(vars, other.vars);
+            if (start != -1) {
+                FactorKernels.multiply(values, other.values, (int) strides[start]);
+                return;
+            }
+        }
+        long[] otherStrides = stridesOf(vars, other.vars, other.cards);
+        boolean arrays = values != null && other.values != null;
+        int[] states = new int[vars.length];
+        long otherIndex = 0;
+        for (long i = 0; i < size; i++) {
+            if (arrays) {
+                values[(int) i] *= other.values[(int) otherIndex];
+            } else {
+                set(i, get(i) * other.get(otherIndex));
+            }
+            for (int j = 0; j < states.length; j++) {
+                otherIndex += otherStrides[j];
+                if (++states[j] < cards[j]) {
+                    break;
+                }
+                states[j] = 0;
+                otherIndex -= otherStrides[j] * cards[j];
+            }
+        }
+    }
+
+    /**
+     * Divides this factor by the specified one defined over the same variables
+     * in the same order. Zero divided by zero gives zero.
+     *
+     * @param other Factor
+     * @return Quotient
+     */
+    public Factor divide(Factor other) {
+        Ensure.IsTrue(Arrays.equals(vars, other.vars), "Factors should have the same variables");
+
+        Factor result = allocate(vars, cards, isDirect() || other.isDirect());
+        for (long i = 0; i < size; i++) {
+            double divisor = other.get(i);
+            result.set(i, divisor == 0.0 ? 0.0 : get(i) / divisor);
+        }
+        return result;
+    }
+
+    /**
+     * Sums out all variables that are not specified.
+     *
+     * @param keep Variables to keep, in the order of the result
+     * @return Marginal factor
+     */
+    public Factor marginalize(int[] keep) {
+        return project(keep, false);
+    }
+
+    /**
+     * Maximizes out all variables that are not specified.
+     *
+     * @param keep Variables to keep, in the order of the result
+     * @return Max-marginal factor
+     */
+    public Factor maximize(int[] keep) {
+        return project(keep, true);
+    }
+
+    private Factor project(int[] keep, boolean max) {
+        int[] resCards = new int[keep.length];
+        for (int i = 0; i < keep.length; i++) {
+            resCards[i] = cards[indexOfExisting(keep[i])];
+        }
+        Factor result = allocate(keep, resCards, false);
+        if (FactorKernels.ENABLED && !max && values != null && result.values != null) {
+            int start = FactorKernels.runOf(vars, keep);
+            if (start != -1) {
+                FactorKernels.sum(values, result.values, (int) strides[start]);
+                return result;
+            }
+        }
+
+        long[] resStrides = stridesOf(vars, keep, resCards);
+        boolean arrays = values != null && result.values != null;
+        int[] states = new int[vars.length];
+        long resIndex = 0;
+        for (long i = 0; i < size; i++) {
+            if (arrays) {
+                double value = values[(int) i];
+                double current = result.values[(int) resIndex];
+                result.values[(int) resIndex] = max ? Math.max(current, value) : current + value;
+            } else {
+                double value = get(i);
+                double current = result.get(resIndex);
+                result.set(resIndex, max ? Math.max(current, value) : current + value);
+            }
+            for (int j = 0; j < states.length; j++) {
+                resIndex += resStrides[j];
+                if (++states[j] < cards[j]) {
+                    break;
+                }
+                states[j] = 0;
+                resIndex -= resStrides[j] * cards[j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets to zero all entries which are inconsistent with the observed state
+     * of the specified variable.
+     *
+     * @param var Variable
+     * @param state Observed state
+     */
+    public void observe(int var, int state) {
+        int index = indexOfExisting(var);
+        long stride = strides[index];
+        long block = stride * cards[index];
+        for (long base = 0; base < size; base += block) {
+            fill(base, base + state * stride, 0.0);
+            fill(base + (state + 1) * stride, base + block, 0.0);
+        }
+    }
+
+    /**
+     * Returns the factor restricted to the observed state of the specified
+     * variable. The variable is removed from the result.
+     *
+     * @param var Variable
+     * @param state Observed state
+     * @return Reduced factor
+     */
+    public Factor reduce(int var, int state) {
+        int index = indexOfExisting(var);
+
+        int[] resVars = new int[vars.length - 1];
+        int[] resCards = new int[vars.length - 1];
+        for (int i = 0, j = 0; i < vars.length; i++) {
+            if (i != index) {
+                resVars[j] = vars[i];
+                resCards[j++] = cards[i];
+            }
+        }
+        Factor result = allocate(resVars, resCards, false);
+
+        // the entries consistent with the state form runs of the size of the
+        // stride, one in each block of the variable
+        long stride = strides[index];
+        long block = stride * cards[index];
+        for (long base = 0, offset = 0; base < size; base += block, offset += stride) {
+            if (values != null && result.values != null) {
+                System.arraycopy(values, (int) (base + state * stride), result.values, (int) offset, (int) stride);
+            } else {
+                for (long i = 0; i < stride; i++) {
+                    result.set(offset + i, get(base + state * stride + i));
+                }
+            }
+        }
+        return result;
+    }
+
+    public double sum() {
+        double sum = 0.0;
+        if (values != null && FactorKernels.ENABLED) {
+            sum = FactorKernels.sum(values, 0, values.length);
+        } else if (values != null) {
+            for (double value : values) {
+                sum += value;
+            }
+        } else {
+            for (long i = 0; i < size; i++) {
+                sum += storage.get(i);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Scales the factor so that its values sum to one.
+     *
+     * @return Sum of the values before normalization
+     */
+    public double normalize() {
+        double sum = sum();
+        if (sum > 0.0) {
+            double scale = 1.0 / sum;
+            if (values != null && FactorKernels.ENABLED) {
+                FactorKernels.scale(values, scale);
+            } else if (values != null) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] *= scale;
+                }
+            } else {
+                for (long i = 0; i < size; i++) {
+                    storage.set(i, storage.get(i) * scale);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Releases the storage of a direct factor. The factor should not be used
+     * afterwards. Does nothing for a factor on the heap.
+     */
+    @Override
+    public void close() {
+        if (storage != null) {
+            storage.close();
+        }
+    }
+
+    private int indexOfExisting(int var) {
+        int index = indexOf(var);
+        Ensure.IsTrue(index != -1, String.format("Factor doesn't contain variable %d", var));
+        return index;
+    }
+
+    /**
+     * For each entry of a table over the specified variables returns the index
+     * of the consistent entry of a table over a subset of the variables. Both
+     * tables have the first variable changing fastest.
+     *
+     * @param vars Variables of the table
+     * @param cards Cardinality of each variable of the table
+     * @param subVars Variables of the other table
+     * @param subCards Cardinality of each variable of the other table
+     * @return Index in the other table for each entry of the table
+     */
+    public static int[] mapIndices(int[] vars, int[] cards, int[] subVars, int[] subCards) {
+        long[] subStrides = stridesOf(vars, subVars, subCards);
+        int[] result = new int[productOf(cards)];
+        int[] states = new int[vars.length];
+        int subIndex = 0;
+        for (int i = 0; i < result.length; i++) {
+            result[i] = subIndex;
+            for (int j = 0; j < states.length; j++) {
+                subIndex += (int) subStrides[j];
+                if (++states[j] < cards[j]) {
+                    break;
+                }
+                states[j] = 0;
+                subIndex -= (int) subStrides[j] * cards[j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns strides of a table over a subset of the specified variables,
+     * aligned to the variables. Variables absent in the subset get zero
+     * stride.
+     */
+    private static long[] stridesOf(int[] vars, int[] subVars, int[] subCards) {
+        long[] result = new long[vars.length];
+        long stride = 1;
+        for (int i = 0; i < subVars.length; stride *= subCards[i], i++) {
+            int index = -1;
+            for (int j = 0; j < vars.length && index == -1; j++) {
+                index = vars[j] == subVars[i] ? j : -1;
+            }
+            Ensure.IsTrue(index != -1, String.format("Factor doesn't contain variable %d", subVars[i]));
+            result[index] = stride;
+        }
+        return result;
+    }
+
+    public static int productOf(int[] cards) {
+        return Math.toIntExact(sizeOf(cards));
+    }
+
+    private static long sizeOf(int[] cards) {
+        long size = 1;
+        for (int card : cards) {
+            size = Math.multiplyExact(size, (long) card);
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "Factor{" + "vars=" + Arrays.toString(vars) + ", size=" + size + ", direct=" + isDirect() + '}';
+    }
+}
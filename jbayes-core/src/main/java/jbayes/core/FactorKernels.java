@@ -0,0 +1,163 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+/**
+ * Kernels of {@link Factor} operations for factors on the heap, whose
+ * operands are laid out contiguously.
+ *
+ * <p>
+ * If the variables of one factor are a contiguous run of the variables of the
+ * other one in the same order, the entries consistent with each entry of the
+ * smaller factor form runs with unit stride. The kernels walk such runs with
+ * plain counted loops over arrays, which the JIT compiler unrolls and
+ * vectorizes with SIMD instructions, instead of walking the tables entry by
+ * entry with the general index arithmetic.
+ * </p>
+ *
+ * <p>
+ * The kernels are used unless the system property
+ * {@code jbayes.factor.kernels} is set to {@code generic} at startup, which
+ * leaves only the general index arithmetic.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+final class FactorKernels {
+
+    static final boolean ENABLED = !"generic".equals(System.getProperty("jbayes.factor.kernels"));
+
+    private FactorKernels() {
+    }
+
+    /**
+     * Returns position of the first of the specified variables among the
+     * variables of a factor, if they form a contiguous run in the same order,
+     * otherwise -1.
+     *
+     * @param vars Variables of the factor
+     * @param subVars Variables of the other factor
+     * @return Position of the run or -1
+     */
+    static int runOf(int[] vars, int[] subVars) {
+        if (subVars.length == 0 || subVars.length > vars.length) {
+            return -1;
+        }
+        for (int start = 0; start + subVars.length <= vars.length; start++) {
+            if (vars[start] == subVars[0]) {
+                for (int i = 1; i < subVars.length; i++) {
+                    if (vars[start + i] != subVars[i]) {
+                        return -1;
+                    }
+                }
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Multiplies each entry of the table by the consistent entry of a table
+     * over a contiguous run of its variables.
+     *
+     * @param values Table values
+     * @param other Values of the table over the run
+     * @param inner Product of cardinalities of the variables before the run
+     */
+    static void multiply(double[] values, double[] other, int inner) {
+        int count = other.length;
+        if (inner == 1) {
+            // the run is leading, so the other table repeats along the table
+            for (int base = 0; base < values.length; base += count) {
+                for (int k = 0; k < count; k++) {
+                    values[base + k] *= other[k];
+                }
+            }
+        } else {
+            // each entry of the other table scales a run of inner entries
+            for (int base = 0; base < values.length;) {
+                for (int j = 0; j < count; j++, base += inner) {
+                    double scale = other[j];
+                    for (int k = 0; k < inner; k++) {
+                        values[base + k] *= scale;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds each entry of the table to the consistent entry of a table over a
+     * contiguous run of its variables.
+     *
+     * @param values Table values
+     * @param result Values of the table over the run
+     * @param inner Product of cardinalities of the variables before the run
+     */
+    static void sum(double[] values, double[] result, int inner) {
+        int count = result.length;
+        if (inner == 1) {
+            // the trailing variables are summed out
+            for (int base = 0; base < values.length; base += count) {
+                for (int k = 0; k < count; k++) {
+                    result[k] += values[base + k];
+                }
+            }
+        } else {
+            // the leading variables are summed out
+            for (int base = 0; base < values.length;) {
+                for (int j = 0; j < count; j++, base += inner) {
+                    result[j] += sum(values, base, base + inner);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns sum of the values in the range. Four partial sums are kept, so
+     * that the additions don't wait for each other.
+     *
+     * @param values Values
+     * @param from Index of the first value
+     * @param to Index after the last value
+     * @return Sum of the values
+     */
+    static double sum(double[] values, int from, int to) {
+        double s0 = 0.0;
+        double s1 = 0.0;
+        double s2 = 0.0;
+        double s3 = 0.0;
+        int i = from;
+        for (; i + 3 < to; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < to; i++) {
+            s0 += values[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static void scale(double[] values, double factor) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] *= factor;
+        }
+    }
+}
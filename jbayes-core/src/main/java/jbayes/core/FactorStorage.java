@@ -0,0 +1,45 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+/**
+ * Storage of the values of a {@link Factor} indexed by long, so that it can
+ * hold more values than an array and may live outside the Java heap.
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public interface FactorStorage extends AutoCloseable {
+
+    /**
+     * Returns count of stored values.
+     *
+     * @return Count of values
+     */
+    long size();
+
+    double get(long index);
+
+    void set(long index, double value);
+
+    /**
+     * Releases the memory of the storage. The storage should not be used
+     * afterwards.
+     */
+    @Override
+    void close();
+}
@@ -17,8 +17,10 @@
  */
 package jbayes.core;
 
+import com.google.common.primitives.Doubles;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import jbayes.util.Ensure;
@@ -35,10 +37,19 @@ public class Node {
     private static Logger LOGGER = LoggerFactory.getLogger(Node.class);
 
     private final String name;
+    private int id = -1;
+    private long version;
     private Distribution distribution;
     private NodeLinkType linkType = NodeLinkType.NONE;
     private List<String> levels;
-    private String evidence;
+    /**
+     * Index of the observed level or -1.
+     */
+    private int evidence = -1;
+    /**
+     * Inference of the observed level, built on first read.
+     */
+    private List<Double> evidenceInference;
     private BayesNet network;
     private List<Link> inLinks;
     private List<Link> outLinks;
@@ -133,6 +144,25 @@ public class Node {
         return name;
     }
 
+    /**
+     * Returns the id of the node in its network. Ids are dense: the nodes of a
+     * network of n nodes have ids from 0 to n - 1 in the order of insertion.
+     *
+     * @return Id of the node or -1 if the node doesn't belong to a network
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Internal method for setting the id of the node in its network.
+     *
+     * @param id Id of the node
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+
     /**
      * Returns distribution of the node.
      *
@@ -158,6 +188,15 @@ public class Node {
      * @return Evidence of the node
      */
     public String getEvidence() {
+        return evidence == -1 ? null : getLevels().get(evidence);
+    }
+
+    /**
+     * Returns the index of the level of the node that is set as evidence.
+     *
+     * @return Index of the observed level or -1 if the node is not observed
+     */
+    public int getEvidenceIndex() {
         return evidence;
     }
 
@@ -179,24 +218,34 @@ public class Node {
             return;
         }
 
-        LOGGER.trace("Evidence {} is set to Node {}", level, this.getName());
+        setEvidence(getLevelIndex(level));
+    }
 
-        int index = getLevelIndex(level);
-        this.evidence = level;
+    /**
+     * Sets the level with the specified index as new evidence to the node.
+     *
+     * @param level Index of the level as evidence
+     * @throws IllegalStateException Index is out of the range of levels.
+     */
+    public void setEvidence(int level) {
+        Ensure.BetweenInclusive(level, 0, getLevels().size() - 1, "evidence");
 
-        // set inference
-        List<Double> inference = new ArrayList<>();
-        for (int i = 0; i < getLevels().size(); i++) {
-            inference.add(i == index ? 1.0 : 0.0);
+        if (level == evidence) {
+            return;
         }
-        setInference(inference);
+
+        LOGGER.trace("Evidence {} is set to Node {}", getLevels().get(level), this.getName());
+
+        this.evidence = level;
+        this.evidenceInference = null;
     }
 
     /**
      * Clears evidence of the node.
      */
     public void clearEvidence() {
-        this.evidence = null;
+        this.evidence = -1;
+        this.evidenceInference = null;
         this.setInference(null);
     }
 
@@ -207,6 +256,7 @@ public class Node {
      */
     public void setDistribution(Distribution distribution) {
         this.distribution = distribution;
+        changed();
     }
 
     /**
@@ -216,6 +266,7 @@ public class Node {
      */
     public final void setDistribution(Double... args) {
         this.distribution = DiscreteDistribution.FromArray(args);
+        changed();
     }
 
     /**
@@ -225,6 +276,7 @@ public class Node {
      */
     public final void setDistribution(Integer... args) {
         this.distribution = DiscreteDistribution.FromArray(args);
+        changed();
     }
 
     /**
@@ -243,6 +295,7 @@ public class Node {
      */
     public void setLinkType(NodeLinkType linkType) {
         this.linkType = linkType;
+        changed();
     }
 
     /**
@@ -260,7 +313,12 @@ public class Node {
      * @param levels Node levels
      */
     public void setLevels(List<String> levels) {
+        // the evidence is kept if the observed level remains
+        String level = getEvidence();
         this.levels = levels;
+        this.evidence = level != null ? getLevels().indexOf(level) : -1;
+        this.evidenceInference = null;
+        changed();
     }
 
     /**
@@ -311,10 +369,23 @@ public class Node {
     /**
      * Returns node inference.
      *
+     * <p>
+     * The inference of an observed node is 1.0 for the evidence level and 0.0
+     * for other levels.
+     * </p>
+     *
      * @return Node inference
      */
     public List<Double> getInference() {
-        return getDistribution().getInference();
+        if (evidence == -1) {
+            return getDistribution().getInference();
+        }
+        if (evidenceInference == null) {
+            double[] inference = new double[getLevels().size()];
+            inference[evidence] = 1.0;
+            evidenceInference = Collections.unmodifiableList(Doubles.asList(inference));
+        }
+        return evidenceInference;
     }
 
     /**
@@ -369,22 +440,33 @@ public class Node {
         return index;
     }
 
-    private Distribution generateAverageDistributionFromLevels() {
-        double value = 1.0 / (double) getLevels().size();
-        List<Double> distr = new ArrayList<>();
-        final int levelsCount = getLevels().size();
-        for (int i = 0; i < levelsCount; i++) {
-            distr.add(value);
+    /**
+     * Returns the count of changes of the levels, link type and distribution
+     * of the node made through the setters.
+     *
+     * @return Version of the node
+     */
+    long getVersion() {
+        return version;
+    }
+
+    private void changed() {
+        version++;
+        if (network != null) {
+            network.incrementVersion();
         }
+    }
+
+    private Distribution generateAverageDistributionFromLevels() {
+        double[] distr = new double[getLevels().size()];
+        Arrays.fill(distr, 1.0 / (double) distr.length);
         return new DiscreteDistribution(distr);
     }
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 47 * hash + Objects.hashCode(this.name);
-        hash = 47 * hash + Objects.hashCode(this.network);
-        return hash;
+        // the network changes when the node is added to it, so it can't be hashed
+        return Objects.hashCode(this.name);
     }
 
     @Override
@@ -20,9 +20,16 @@ package jbayes.core;
 /**
  * The class represents the link type of {@link Node}.
  *
+ * <p>
+ * Nodes of types {@link #AND} and {@link #OR} are deterministic. Nodes of
+ * types {@link #NOISY_OR} and {@link #NOISY_MAX} are parametrized by a
+ * {@link NoisyMaxDistribution}, which grows linearly with the count of
+ * parents. {@link #NOISY_OR} additionally requires two levels.
+ * </p>
+ *
  * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
  */
 public enum NodeLinkType {
 
-    NONE, AND, OR
+    NONE, AND, OR, NOISY_OR, NOISY_MAX
 }
@@ -0,0 +1,182 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import com.google.common.base.Joiner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import jbayes.util.Ensure;
+
+/**
+ * The class represents the parameters of a node of type
+ * {@link NodeLinkType#NOISY_OR} or {@link NodeLinkType#NOISY_MAX}.
+ *
+ * <p>
+ * Levels of the node are ordered from the most severe one, so the first level
+ * of a binary node means true, as for {@link NodeLinkType#AND} and
+ * {@link NodeLinkType#OR} nodes. Each parent independently causes a level of
+ * the node, drawn from the distribution given by the level of the parent,
+ * and a leak causes a level regardless of the parents. The node takes the
+ * most severe of the caused levels. The distribution of each parent is stored
+ * as a CPT over the node and the parent (the node changes fastest), in the
+ * order of {@link Node#getInLinks()}, and takes the count of the parent levels
+ * times the count of the node levels, instead of the product of the counts of
+ * all parent levels.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class NoisyMaxDistribution implements Distribution {
+
+    private final List<Double> leak;
+    private final List<List<Double>> parentCpts;
+    private List<Double> inference;
+
+    /**
+     * Creates new {@link NoisyMaxDistribution} instance.
+     *
+     * @param leak Distribution of the level caused by the leak
+     * @param parentCpts Distribution of the level caused by each parent given
+     * the parent level
+     */
+    public NoisyMaxDistribution(List<Double> leak, List<List<Double>> parentCpts) {
+        Ensure.NotNull(leak, "leak");
+        Ensure.NotNull(parentCpts, "parentCpts");
+
+        this.leak = leak;
+        this.parentCpts = parentCpts;
+    }
+
+    /**
+     * Creates the distribution of a binary noisy-OR node with binary parents.
+     * A parent, which is true, fails to make the node true with its inhibitor
+     * probability. A false parent never makes the node true.
+     *
+     * @param leak Probability that the node is true when all parents are false
+     * @param inhibitors Inhibitor probability of each parent
+     * @return Noisy-OR distribution
+     */
+    public static NoisyMaxDistribution noisyOr(double leak, double... inhibitors) {
+        Ensure.BetweenInclusive(leak, 0.0, 1.0, "leak");
+
+        List<List<Double>> parentCpts = new ArrayList<>();
+        for (double inhibitor : inhibitors) {
+            Ensure.BetweenInclusive(inhibitor, 0.0, 1.0, "inhibitor");
+            parentCpts.add(Arrays.asList(1.0 - inhibitor, inhibitor, 0.0, 1.0));
+        }
+        return new NoisyMaxDistribution(Arrays.asList(leak, 1.0 - leak), parentCpts);
+    }
+
+    public List<Double> getLeak() {
+        return leak;
+    }
+
+    public List<List<Double>> getParentCpts() {
+        return parentCpts;
+    }
+
+    /**
+     * Expands the distribution into the full CPT of the node, where the node
+     * changes fastest, then its parents in the order of
+     * {@link Node#getInLinks()}. The size of the CPT grows exponentially with
+     * the count of parents.
+     *
+     * @param node Node
+     * @return Full CPT
+     */
+    public List<Double> toCpt(Node node) {
+        int card = node.getLevels().size();
+        int[] parentCards = node.getInLinks().stream().mapToInt(x -> x.getParent().getLevels().size()).toArray();
+        Ensure.AreEquals(parentCpts.size(), parentCards.length, String.format("Count of parent CPTs of node %s", node.getName()));
+
+        // the most severe level is at most l iff none of the causes is at most l
+        List<Double> cpt = new ArrayList<>();
+        int[] states = new int[parentCards.length];
+        do {
+            double[] cumulative = cumulative(leak, 0, card);
+            for (int i = 0; i < states.length; i++) {
+                double[] caused = cumulative(parentCpts.get(i), states[i] * card, card);
+                for (int level = 0; level < card; level++) {
+                    cumulative[level] = 1.0 - (1.0 - cumulative[level]) * (1.0 - caused[level]);
+                }
+            }
+            for (int level = 0; level < card; level++) {
+                cpt.add(cumulative[level] - (level > 0 ? cumulative[level - 1] : 0.0));
+            }
+        } while (next(states, parentCards));
+        return cpt;
+    }
+
+    /**
+     * Returns probabilities, that the caused level is the specified one or a
+     * more severe one. The distribution is normalized as a CPT column.
+     */
+    private static double[] cumulative(List<Double> distribution, int offset, int card) {
+        Ensure.IsTrue(distribution.size() >= offset + card, "Size of distribution should match levels of the node");
+        double sum = 0.0;
+        for (int level = 0; level < card; level++) {
+            sum += distribution.get(offset + level);
+        }
+        Ensure.GreaterThan(sum, 0.0, "Sum of distribution");
+        double[] result = new double[card];
+        double running = 0.0;
+        for (int level = 0; level < card; level++) {
+            running += distribution.get(offset + level);
+            result[level] = running / sum;
+        }
+        return result;
+    }
+
+    private static boolean next(int[] states, int[] cards) {
+        for (int i = 0; i < states.length; i++) {
+            if (++states[i] < cards[i]) {
+                return true;
+            }
+            states[i] = 0;
+        }
+        return false;
+    }
+
+    @Override
+    public List<Double> getInference() {
+        return inference;
+    }
+
+    @Override
+    public void setInference(List<Double> inference) {
+        this.inference = inference;
+    }
+
+    @Override
+    public NoisyMaxDistribution copy() {
+        return new NoisyMaxDistribution(new ArrayList<>(leak),
+                parentCpts.stream().<List<Double>>map(x -> new ArrayList<>(x)).collect(Collectors.toList()));
+    }
+
+    @Override
+    public String convertToString() {
+        List<List<Double>> all = new ArrayList<>(Collections.singletonList(leak));
+        all.addAll(parentCpts);
+        return Joiner.on("; ").join(all.stream()
+                .map(x -> Joiner.on(", ").join(x.stream().map(y -> String.valueOf(y)).collect(Collectors.toList())))
+                .collect(Collectors.toList()));
+    }
+}
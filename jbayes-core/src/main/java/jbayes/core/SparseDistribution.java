@@ -0,0 +1,167 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import com.google.common.base.Joiner;
+import com.google.common.primitives.Doubles;
+import java.util.Arrays;
+import java.util.List;
+import jbayes.util.Ensure;
+
+/**
+ * The class represents a CPT, which stores only its non-zero cells.
+ *
+ * <p>
+ * The layout of the CPT is the same as of {@link DiscreteDistribution}: the
+ * node changes fastest, then its parents in the order of
+ * {@link Node#getInLinks()}. Cells are kept as sorted indices with their
+ * values, so a CPT of a mostly deterministic node takes memory proportional to
+ * the count of non-zero cells. Only {@code ArithmeticCircuitInferer} and
+ * {@code CompiledModel} skip the zero cells; other engines expand the CPT into
+ * a dense table when they compile the network.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class SparseDistribution implements Distribution {
+
+    private final int size;
+    private final int[] indices;
+    private final double[] values;
+    private List<Double> inference;
+
+    /**
+     * Creates new {@link SparseDistribution} instance. The arrays are copied.
+     *
+     * @param size Count of cells of the full CPT
+     * @param indices Indices of the non-zero cells in ascending order
+     * @param values Values of the non-zero cells
+     */
+    public SparseDistribution(int size, int[] indices, double[] values) {
+        Ensure.NotNull(indices, "indices");
+        Ensure.NotNull(values, "values");
+        Ensure.AreEquals(indices.length, values.length, "Count of values");
+        for (int i = 0; i < indices.length; i++) {
+            Ensure.BetweenInclusive(indices[i], i > 0 ? indices[i - 1] + 1 : 0, size - 1, "index");
+        }
+
+        this.size = size;
+        this.indices = indices.clone();
+        this.values = values.clone();
+    }
+
+    /**
+     * Creates a sparse distribution from the full CPT, dropping its zero
+     * cells.
+     *
+     * @param cpt Full CPT
+     * @return Sparse distribution
+     */
+    public static SparseDistribution FromCpt(double... cpt) {
+        Ensure.NotNull(cpt, "cpt");
+
+        int count = 0;
+        int[] indices = new int[cpt.length];
+        double[] values = new double[cpt.length];
+        for (int i = 0; i < cpt.length; i++) {
+            if (cpt[i] != 0.0) {
+                indices[count] = i;
+                values[count++] = cpt[i];
+            }
+        }
+        return new SparseDistribution(cpt.length, Arrays.copyOf(indices, count), Arrays.copyOf(values, count));
+    }
+
+    /**
+     * Returns count of cells of the full CPT.
+     *
+     * @return Size of the CPT
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns count of the stored non-zero cells.
+     *
+     * @return Count of non-zero cells
+     */
+    public int getNonZeroCount() {
+        return indices.length;
+    }
+
+    /**
+     * Returns value of the specified cell of the full CPT.
+     *
+     * @param index Index of the cell
+     * @return Value of the cell
+     */
+    public double get(int index) {
+        int position = Arrays.binarySearch(indices, index);
+        return position >= 0 ? values[position] : 0.0;
+    }
+
+    /**
+     * Writes the non-zero cells into the specified array of the size of the
+     * full CPT. Other cells of the array are not changed.
+     *
+     * @param cpt Full CPT
+     */
+    public void scatter(double[] cpt) {
+        Ensure.AreEquals(cpt.length, size, "Size of CPT");
+        for (int i = 0; i < indices.length; i++) {
+            cpt[indices[i]] = values[i];
+        }
+    }
+
+    /**
+     * Expands the distribution into the full CPT.
+     *
+     * @return Full CPT
+     */
+    public double[] toCptValues() {
+        double[] cpt = new double[size];
+        scatter(cpt);
+        return cpt;
+    }
+
+    @Override
+    public List<Double> getInference() {
+        return inference;
+    }
+
+    @Override
+    public void setInference(List<Double> inference) {
+        this.inference = inference;
+    }
+
+    /**
+     * Returns the full CPT as a comma separated string.
+     *
+     * @return Full CPT
+     */
+    @Override
+    public String convertToString() {
+        return Joiner.on(", ").join(Doubles.asList(toCptValues()));
+    }
+
+    @Override
+    public SparseDistribution copy() {
+        return new SparseDistribution(size, indices, values);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import com.google.common.base.Joiner;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import jbayes.util.Ensure;
+
+/**
+ * The class represents a CPT with context-specific independence as a tree.
+ *
+ * <p>
+ * Each inner vertex of the tree splits on the level of one parent and has a
+ * child for each level of the parent. Each leaf holds the distribution of the
+ * node levels in all columns of the CPT which reach the leaf, so parents
+ * which don't influence the node in a context are simply not tested there.
+ * The tree takes memory proportional to the count of its leaves instead of
+ * the product of the counts of all parent levels. Only
+ * {@code ArithmeticCircuitInferer} and {@code CompiledModel} keep this
+ * advantage; other engines expand the tree into the full CPT.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class TreeDistribution implements Distribution {
+
+    private final Subtree root;
+    private List<Double> inference;
+
+    /**
+     * Creates new {@link TreeDistribution} instance.
+     *
+     * @param root Root of the tree
+     */
+    public TreeDistribution(Subtree root) {
+        Ensure.NotNull(root, "root");
+
+        this.root = root;
+    }
+
+    /**
+     * Creates a leaf of the tree.
+     *
+     * @param distribution Distribution of the node levels
+     * @return Leaf
+     */
+    public static Subtree leaf(Double... distribution) {
+        Ensure.NotNull(distribution, "distribution");
+        Ensure.GreaterThan(distribution.length, 0, "distribution should not be empty");
+
+        return new Subtree(null, null, Collections.unmodifiableList(Arrays.asList(distribution.clone())));
+    }
+
+    /**
+     * Creates an inner vertex of the tree, which splits on the level of the
+     * specified parent.
+     *
+     * @param parentName Name of the parent
+     * @param children Subtree for each level of the parent
+     * @return Inner vertex
+     */
+    public static Subtree split(String parentName, Subtree... children) {
+        Ensure.NotNull(parentName, "parentName");
+        Ensure.NotNull(children, "children");
+        Ensure.GreaterThan(children.length, 0, "children should not be empty");
+
+        return new Subtree(parentName, Collections.unmodifiableList(Arrays.asList(children.clone())), null);
+    }
+
+    public Subtree getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns count of the leaves of the tree.
+     *
+     * @return Count of leaves
+     */
+    public int getLeafCount() {
+        return root.getLeafCount();
+    }
+
+    /**
+     * Expands the tree into the full CPT of the node, where the node changes
+     * fastest, then its parents in the order of {@link Node#getInLinks()}.
+     *
+     * @param node Node
+     * @return Full CPT
+     */
+    public double[] toCptValues(Node node) {
+        List<String> parentNames = node.getInLinks().stream()
+                .map(x -> x.getParent().getName())
+                .collect(Collectors.toList());
+        int[] parentCards = node.getInLinks().stream().mapToInt(x -> x.getParent().getLevels().size()).toArray();
+        return toCptValues(node.getName(), node.getLevels().size(), parentNames, parentCards);
+    }
+
+    /**
+     * Expands the tree into the full CPT of a node with the specified parents,
+     * where the node changes fastest, then its parents in the specified order.
+     *
+     * @param nodeName Node name, used in messages
+     * @param card Count of node levels
+     * @param parentNames Names of the parents
+     * @param parentCards Count of levels of each parent
+     * @return Full CPT
+     */
+    public double[] toCptValues(String nodeName, int card, List<String> parentNames, int[] parentCards) {
+        int columns = 1;
+        int size;
+        try {
+            for (int parentCard : parentCards) {
+                columns = Math.multiplyExact(columns, parentCard);
+            }
+            size = Math.multiplyExact(columns, card);
+        } catch (ArithmeticException e) {
+            throw new IllegalStateException(String.format("Full CPT of node %s is too large to expand", nodeName), e);
+        }
+
+        double[] cpt = new double[size];
+        int[] states = new int[parentCards.length];
+        for (int column = 0; column < columns; column++) {
+            Subtree vertex = root;
+            while (!vertex.isLeaf()) {
+                int parent = parentNames.indexOf(vertex.getParentName());
+                Ensure.IsTrue(parent != -1, String.format("Node %s doesn't have parent %s", nodeName, vertex.getParentName()));
+                Ensure.AreEquals(vertex.getChildren().size(), parentCards[parent],
+                        String.format("Count of children splitting on %s", vertex.getParentName()));
+                vertex = vertex.getChildren().get(states[parent]);
+            }
+            Ensure.AreEquals(vertex.getDistribution().size(), card, String.format("Size of leaf distribution of node %s", nodeName));
+            for (int level = 0; level < card; level++) {
+                cpt[column * card + level] = vertex.getDistribution().get(level);
+            }
+            for (int i = 0; i < states.length && ++states[i] == parentCards[i]; i++) {
+                states[i] = 0;
+            }
+        }
+        return cpt;
+    }
+
+    @Override
+    public List<Double> getInference() {
+        return inference;
+    }
+
+    @Override
+    public void setInference(List<Double> inference) {
+        this.inference = inference;
+    }
+
+    @Override
+    public String convertToString() {
+        return root.toString();
+    }
+
+    /**
+     * Returns a distribution with the same tree, which is immutable and
+     * therefore shared.
+     *
+     * @return Copy of the distribution
+     */
+    @Override
+    public TreeDistribution copy() {
+        return new TreeDistribution(root);
+    }
+
+    /**
+     * The class represents a vertex of the tree, which is either a leaf or
+     * splits on a parent.
+     */
+    public static final class Subtree {
+
+        private final String parentName;
+        private final List<Subtree> children;
+        private final List<Double> distribution;
+
+        private Subtree(String parentName, List<Subtree> children, List<Double> distribution) {
+            this.parentName = parentName;
+            this.children = children;
+            this.distribution = distribution;
+        }
+
+        public boolean isLeaf() {
+            return distribution != null;
+        }
+
+        /**
+         * Returns name of the parent the vertex splits on or null for a leaf.
+         *
+         * @return Parent name
+         */
+        public String getParentName() {
+            return parentName;
+        }
+
+        public List<Subtree> getChildren() {
+            return children != null ? children : Collections.<Subtree>emptyList();
+        }
+
+        /**
+         * Returns distribution of the node levels of a leaf or null.
+         *
+         * @return Distribution of a leaf
+         */
+        public List<Double> getDistribution() {
+            return distribution;
+        }
+
+        int getLeafCount() {
+            return isLeaf() ? 1 : children.stream().mapToInt(x -> x.getLeafCount()).sum();
+        }
+
+        @Override
+        public String toString() {
+            return isLeaf()
+                    ? "(" + Joiner.on(", ").join(distribution) + ")"
+                    : parentName + "[" + Joiner.on("; ").join(children) + "]";
+        }
+    }
+}
@@ -0,0 +1,588 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import jbayes.core.Factor;
+
+/**
+ * The class represents the network polynomial of a {@link CompiledNetwork} as
+ * an arithmetic circuit.
+ *
+ * <p>
+ * The circuit is a DAG of binary sum and product nodes over evidence
+ * indicators and CPT parameters stored in flat arrays, where each node follows
+ * its operands. It is compiled once by symbolic variable elimination, which
+ * drops zero parameters and shares repeated parameters and sub-circuits, so
+ * deterministic and context-specific CPTs give smaller circuits. An upward
+ * pass over the circuit computes the probability of evidence and a downward
+ * pass computes partial derivatives, which give the joint probability of each
+ * level of each variable with the evidence. Both passes run in time linear in
+ * the circuit size and work only on the buffers created by
+ * {@link #createValues()} and {@link #createDerivatives()}. Both passes are
+ * also provided in single precision and in log-space, see {@link NumericMode}.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+final class ArithmeticCircuit {
+
+    static final byte INDICATOR = 0;
+    static final byte PARAMETER = 1;
+    static final byte SUM = 2;
+    static final byte PRODUCT = 3;
+
+    private final int[][] indicators;
+    private byte[] kinds;
+    private int[] left;
+    private int[] right;
+    private double[] parameters;
+    private int size;
+    private int zero;
+    private int one;
+    /**
+     * Compiled network, whose families are turned into the circuit. Used only
+     * during compilation, so the circuit doesn't keep the nodes and the dense
+     * families.
+     */
+    private CompiledNetwork network;
+    /**
+     * Existing parameter, sum and product nodes, so that repeated CPT values
+     * and sub-circuits are shared. Used only during compilation.
+     */
+    private Map<Long, Integer> parameterNodes = new HashMap<>();
+    private Map<Long, Integer> sumNodes = new HashMap<>();
+    private Map<Long, Integer> productNodes = new HashMap<>();
+
+    private ArithmeticCircuit(CompiledNetwork network) {
+        this.network = network;
+        this.indicators = new int[network.size()][];
+        this.kinds = new byte[64];
+        this.left = new int[64];
+        this.right = new int[64];
+        this.parameters = new double[64];
+    }
+
+    /**
+     * Compiles the specified network into an arithmetic circuit.
+     *
+     * @param network Compiled network
+     * @param heuristic Heuristic used for the elimination order
+     * @return Arithmetic circuit
+     */
+    static ArithmeticCircuit compile(CompiledNetwork network, EliminationHeuristic heuristic) {
+        ArithmeticCircuit circuit = new ArithmeticCircuit(network);
+        circuit.zero = circuit.add(PARAMETER, -1, -1, 0.0);
+        circuit.one = circuit.add(PARAMETER, -1, -1, 1.0);
+
+        List<Table> tables = new ArrayList<>();
+        for (int var = 0; var < network.size(); var++) {
+            circuit.indicators[var] = new int[network.getCard(var)];
+            for (int state = 0; state < network.getCard(var); state++) {
+                circuit.indicators[var][state] = circuit.add(INDICATOR, var, state, 0.0);
+            }
+        }
+        for (int var = 0; var < network.size(); var++) {
+            tables.add(circuit.createFamilyTable(var));
+        }
+
+        BitSet all = new BitSet(network.size());
+        all.set(0, network.size());
+        int[] order = EliminationOrdering.eliminate(EliminationOrdering.moralGraph(network),
+                network.getCards(), all, heuristic);
+        for (int var : order) {
+            Table product = null;
+            for (Iterator<Table> it = tables.iterator(); it.hasNext();) {
+                Table table = it.next();
+                if (table.indexOf(var) != -1) {
+                    product = product == null ? table : circuit.multiply(product, table);
+                    it.remove();
+                }
+            }
+            if (product != null) {
+                tables.add(circuit.sumOut(product, var));
+            }
+        }
+
+        int root = circuit.one;
+        for (Table table : tables) {
+            root = circuit.product(root, table.nodes[0]);
+        }
+        circuit.trim(root);
+        circuit.network = null;
+        circuit.parameterNodes = null;
+        circuit.sumNodes = null;
+        circuit.productNodes = null;
+        return circuit;
+    }
+
+    /**
+     * Returns count of nodes of the circuit. The last node is the root.
+     *
+     * @return Count of nodes
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Creates a buffer for the values of the circuit nodes with the parameters
+     * already set.
+     *
+     * @return Buffer for node values
+     */
+    double[] createValues() {
+        return parameters.clone();
+    }
+
+    /**
+     * Creates a buffer for the partial derivatives of the circuit nodes.
+     *
+     * @return Buffer for partial derivatives
+     */
+    double[] createDerivatives() {
+        return new double[size];
+    }
+
+    /**
+     * Evaluates the circuit bottom up for the specified evidence.
+     *
+     * @param evidence Observed level of each variable or -1
+     * @param values Buffer created by {@link #createValues()}
+     * @return Probability of evidence
+     */
+    double evaluate(int[] evidence, double[] values) {
+        for (int var = 0; var < indicators.length; var++) {
+            int[] nodes = indicators[var];
+            for (int state = 0; state < nodes.length; state++) {
+                values[nodes[state]] = evidence[var] == -1 || evidence[var] == state ? 1.0 : 0.0;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == SUM) {
+                values[i] = values[left[i]] + values[right[i]];
+            } else if (kinds[i] == PRODUCT) {
+                values[i] = values[left[i]] * values[right[i]];
+            }
+        }
+        return values[size - 1];
+    }
+
+    /**
+     * Computes partial derivatives of the root with respect to each node, top
+     * down. The values should be computed by {@link #evaluate} before.
+     *
+     * @param values Node values
+     * @param derivatives Buffer created by {@link #createDerivatives()}
+     */
+    void differentiate(double[] values, double[] derivatives) {
+        Arrays.fill(derivatives, 0.0);
+        derivatives[size - 1] = 1.0;
+        for (int i = size - 1; i >= 0; i--) {
+            double d = derivatives[i];
+            if (d == 0.0) {
+                continue;
+            }
+            if (kinds[i] == SUM) {
+                derivatives[left[i]] += d;
+                derivatives[right[i]] += d;
+            } else if (kinds[i] == PRODUCT) {
+                derivatives[left[i]] += d * values[right[i]];
+                derivatives[right[i]] += d * values[left[i]];
+            }
+        }
+    }
+
+    /**
+     * Writes the posterior marginal of a variable without evidence into the
+     * specified array. The derivatives should be computed by
+     * {@link #differentiate} before.
+     *
+     * @param var Variable
+     * @param derivatives Partial derivatives
+     * @param marginal Array of the size of the variable cardinality
+     */
+    void marginal(int var, double[] derivatives, double[] marginal) {
+        int[] nodes = indicators[var];
+        double sum = 0.0;
+        for (int state = 0; state < nodes.length; state++) {
+            marginal[state] = derivatives[nodes[state]];
+            sum += marginal[state];
+        }
+        for (int state = 0; state < nodes.length; state++) {
+            marginal[state] /= sum;
+        }
+    }
+
+    /**
+     * Creates a buffer for the values of the circuit nodes in single
+     * precision with the parameters already set.
+     *
+     * @return Buffer for node values
+     */
+    float[] createFloatValues() {
+        float[] values = new float[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = (float) parameters[i];
+        }
+        return values;
+    }
+
+    /**
+     * Evaluates the circuit bottom up for the specified evidence in single
+     * precision.
+     *
+     * @param evidence Observed level of each variable or -1
+     * @param values Buffer created by {@link #createFloatValues()}
+     * @return Probability of evidence
+     */
+    float evaluate(int[] evidence, float[] values) {
+        for (int var = 0; var < indicators.length; var++) {
+            int[] nodes = indicators[var];
+            for (int state = 0; state < nodes.length; state++) {
+                values[nodes[state]] = evidence[var] == -1 || evidence[var] == state ? 1.0f : 0.0f;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == SUM) {
+                values[i] = values[left[i]] + values[right[i]];
+            } else if (kinds[i] == PRODUCT) {
+                values[i] = values[left[i]] * values[right[i]];
+            }
+        }
+        return values[size - 1];
+    }
+
+    /**
+     * Computes partial derivatives in single precision, see
+     * {@link #differentiate(double[], double[])}.
+     *
+     * @param values Node values
+     * @param derivatives Buffer of the size of the circuit
+     */
+    void differentiate(float[] values, float[] derivatives) {
+        Arrays.fill(derivatives, 0.0f);
+        derivatives[size - 1] = 1.0f;
+        for (int i = size - 1; i >= 0; i--) {
+            float d = derivatives[i];
+            if (d == 0.0f) {
+                continue;
+            }
+            if (kinds[i] == SUM) {
+                derivatives[left[i]] += d;
+                derivatives[right[i]] += d;
+            } else if (kinds[i] == PRODUCT) {
+                derivatives[left[i]] += d * values[right[i]];
+                derivatives[right[i]] += d * values[left[i]];
+            }
+        }
+    }
+
+    /**
+     * Writes the posterior marginal of a variable from partial derivatives in
+     * single precision, see {@link #marginal(int, double[], double[])}.
+     *
+     * @param var Variable
+     * @param derivatives Partial derivatives
+     * @param marginal Array of the size of the variable cardinality
+     */
+    void marginal(int var, float[] derivatives, double[] marginal) {
+        int[] nodes = indicators[var];
+        double sum = 0.0;
+        for (int state = 0; state < nodes.length; state++) {
+            marginal[state] = derivatives[nodes[state]];
+            sum += marginal[state];
+        }
+        for (int state = 0; state < nodes.length; state++) {
+            marginal[state] /= sum;
+        }
+    }
+
+    /**
+     * Creates a buffer for the logarithms of the values of the circuit nodes
+     * with the parameters already set.
+     *
+     * @return Buffer for logarithms of node values
+     */
+    double[] createLogValues() {
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = Math.log(parameters[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Evaluates the circuit bottom up for the specified evidence in log-space.
+     *
+     * @param evidence Observed level of each variable or -1
+     * @param values Buffer created by {@link #createLogValues()}
+     * @return Logarithm of probability of evidence
+     */
+    double evaluateLog(int[] evidence, double[] values) {
+        for (int var = 0; var < indicators.length; var++) {
+            int[] nodes = indicators[var];
+            for (int state = 0; state < nodes.length; state++) {
+                values[nodes[state]] = evidence[var] == -1 || evidence[var] == state ? 0.0 : Double.NEGATIVE_INFINITY;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == SUM) {
+                values[i] = logSum(values[left[i]], values[right[i]]);
+            } else if (kinds[i] == PRODUCT) {
+                values[i] = values[left[i]] + values[right[i]];
+            }
+        }
+        return values[size - 1];
+    }
+
+    /**
+     * Computes logarithms of partial derivatives of the root with respect to
+     * each node, top down. The values should be computed by
+     * {@link #evaluateLog} before.
+     *
+     * @param values Logarithms of node values
+     * @param derivatives Buffer of the size of the circuit
+     */
+    void differentiateLog(double[] values, double[] derivatives) {
+        Arrays.fill(derivatives, Double.NEGATIVE_INFINITY);
+        derivatives[size - 1] = 0.0;
+        for (int i = size - 1; i >= 0; i--) {
+            double d = derivatives[i];
+            if (d == Double.NEGATIVE_INFINITY) {
+                continue;
+            }
+            if (kinds[i] == SUM) {
+                derivatives[left[i]] = logSum(derivatives[left[i]], d);
+                derivatives[right[i]] = logSum(derivatives[right[i]], d);
+            } else if (kinds[i] == PRODUCT) {
+                derivatives[left[i]] = logSum(derivatives[left[i]], d + values[right[i]]);
+                derivatives[right[i]] = logSum(derivatives[right[i]], d + values[left[i]]);
+            }
+        }
+    }
+
+    /**
+     * Writes the posterior marginal of a variable from logarithms of partial
+     * derivatives computed by {@link #differentiateLog}.
+     *
+     * @param var Variable
+     * @param derivatives Logarithms of partial derivatives
+     * @param marginal Array of the size of the variable cardinality
+     */
+    void marginalLog(int var, double[] derivatives, double[] marginal) {
+        int[] nodes = indicators[var];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int state = 0; state < nodes.length; state++) {
+            max = Math.max(max, derivatives[nodes[state]]);
+        }
+        double sum = 0.0;
+        for (int state = 0; state < nodes.length; state++) {
+            marginal[state] = Math.exp(derivatives[nodes[state]] - max);
+            sum += marginal[state];
+        }
+        for (int state = 0; state < nodes.length; state++) {
+            marginal[state] /= sum;
+        }
+    }
+
+    /**
+     * Returns log(exp(a) + exp(b)) without overflow or underflow.
+     */
+    private static double logSum(double a, double b) {
+        if (a == Double.NEGATIVE_INFINITY) {
+            return b;
+        }
+        if (b == Double.NEGATIVE_INFINITY) {
+            return a;
+        }
+        return Math.max(a, b) + Math.log1p(Math.exp(-Math.abs(a - b)));
+    }
+
+    private Table createFamilyTable(int var) {
+        Factor family = network.getFamily(var);
+        int[] nodes = new int[family.getValues().length];
+        int card = network.getCard(var);
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = product(addParameter(family.getValues()[i]), indicators[var][i % card]);
+        }
+        return new Table(family.getVariables(), family.getCards(), nodes);
+    }
+
+    private Table multiply(Table a, Table b) {
+        int[] vars = Arrays.copyOf(a.vars, a.vars.length + b.vars.length);
+        int[] cards = Arrays.copyOf(a.cards, a.cards.length + b.cards.length);
+        int count = a.vars.length;
+        for (int i = 0; i < b.vars.length; i++) {
+            if (a.indexOf(b.vars[i]) == -1) {
+                vars[count] = b.vars[i];
+                cards[count++] = b.cards[i];
+            }
+        }
+        vars = Arrays.copyOf(vars, count);
+        cards = Arrays.copyOf(cards, count);
+
+        int[] aIdx = Factor.mapIndices(vars, cards, a.vars, a.cards);
+        int[] bIdx = Factor.mapIndices(vars, cards, b.vars, b.cards);
+        int[] nodes = new int[aIdx.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = product(a.nodes[aIdx[i]], b.nodes[bIdx[i]]);
+        }
+        return new Table(vars, cards, nodes);
+    }
+
+    private Table sumOut(Table table, int var) {
+        int index = table.indexOf(var);
+        int[] vars = new int[table.vars.length - 1];
+        int[] cards = new int[table.vars.length - 1];
+        for (int i = 0, j = 0; i < table.vars.length; i++) {
+            if (i != index) {
+                vars[j] = table.vars[i];
+                cards[j++] = table.cards[i];
+            }
+        }
+        int[] idx = Factor.mapIndices(table.vars, table.cards, vars, cards);
+        int[] nodes = new int[Factor.productOf(cards)];
+        Arrays.fill(nodes, zero);
+        for (int i = 0; i < idx.length; i++) {
+            nodes[idx[i]] = sum(nodes[idx[i]], table.nodes[i]);
+        }
+        return new Table(vars, cards, nodes);
+    }
+
+    private int sum(int a, int b) {
+        if (a == zero) {
+            return b;
+        }
+        if (b == zero) {
+            return a;
+        }
+        if (kinds[a] == PARAMETER && kinds[b] == PARAMETER) {
+            return addParameter(parameters[a] + parameters[b]);
+        }
+        return unique(sumNodes, SUM, a, b);
+    }
+
+    private int product(int a, int b) {
+        if (a == zero || b == zero) {
+            return zero;
+        }
+        if (a == one) {
+            return b;
+        }
+        if (b == one) {
+            return a;
+        }
+        if (kinds[a] == PARAMETER && kinds[b] == PARAMETER) {
+            return addParameter(parameters[a] * parameters[b]);
+        }
+        return unique(productNodes, PRODUCT, a, b);
+    }
+
+    /**
+     * Returns the existing node of the commutative operation over the
+     * operands or adds a new one.
+     */
+    private int unique(Map<Long, Integer> nodes, byte kind, int a, int b) {
+        long key = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+        Integer node = nodes.get(key);
+        if (node == null) {
+            node = add(kind, a, b, 0.0);
+            nodes.put(key, node);
+        }
+        return node;
+    }
+
+    private int addParameter(double value) {
+        if (value == 0.0) {
+            return zero;
+        }
+        if (value == 1.0) {
+            return one;
+        }
+        long key = Double.doubleToLongBits(value);
+        Integer node = parameterNodes.get(key);
+        if (node == null) {
+            node = add(PARAMETER, -1, -1, value);
+            parameterNodes.put(key, node);
+        }
+        return node;
+    }
+
+    private int add(byte kind, int a, int b, double value) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            parameters = Arrays.copyOf(parameters, capacity);
+        }
+        kinds[size] = kind;
+        left[size] = a;
+        right[size] = b;
+        parameters[size] = value;
+        return size++;
+    }
+
+    /**
+     * Makes the specified node the last one and releases unused capacity.
+     */
+    private void trim(int root) {
+        if (root != size - 1) {
+            // the root is a leaf or an already existing node; wrap it so that
+            // the root is always the last node of the circuit
+            add(PRODUCT, root, one, 0.0);
+        }
+        kinds = Arrays.copyOf(kinds, size);
+        left = Arrays.copyOf(left, size);
+        right = Arrays.copyOf(right, size);
+        parameters = Arrays.copyOf(parameters, size);
+    }
+
+    /**
+     * The class represents a table of circuit nodes over a set of variables,
+     * which is the symbolic counterpart of {@link Factor}.
+     */
+    private static final class Table {
+
+        private final int[] vars;
+        private final int[] cards;
+        private final int[] nodes;
+
+        Table(int[] vars, int[] cards, int[] nodes) {
+            this.vars = vars;
+            this.cards = cards;
+            this.nodes = nodes;
+        }
+
+        int indexOf(int var) {
+            for (int i = 0; i < vars.length; i++) {
+                if (vars[i] == var) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
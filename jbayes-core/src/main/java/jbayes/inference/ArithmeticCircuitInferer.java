@@ -0,0 +1,235 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import jbayes.core.BayesNet;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exact inferer that compiles the network into an arithmetic circuit.
+ *
+ * <p>
+ * Compilation is done once before the first query. Each query evaluates the
+ * circuit with one upward and one downward pass over primitive arrays, which
+ * gives the marginals of all nodes and the probability of evidence at once.
+ * The inferer is intended for networks that are queried many times with
+ * different evidence.
+ * </p>
+ *
+ * <p>
+ * Batches of evidence sets can be inferred by {@link #inferBatch} without
+ * touching the evidence of the nodes. The batch is split between tasks of a
+ * {@link ForkJoinPool}, and each task reuses its buffers for all its cases.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class ArithmeticCircuitInferer extends BayesInfererBase {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArithmeticCircuitInferer.class);
+
+    /**
+     * Count of cases inferred by one task without further splitting.
+     */
+    private static final int TASK_SIZE = 256;
+
+    private final EliminationHeuristic heuristic;
+    private CompiledNetwork compiled;
+    private ArithmeticCircuit circuit;
+    private int[] evidence;
+    private double[] values;
+    private double[] derivatives;
+    private double probabilityOfEvidence = Double.NaN;
+    private ForkJoinPool pool;
+
+    public ArithmeticCircuitInferer(BayesNet network) {
+        this(network, EliminationHeuristic.MIN_FILL);
+    }
+
+    public ArithmeticCircuitInferer(BayesNet network, EliminationHeuristic heuristic) {
+        super(network);
+        Ensure.NotNull(heuristic, "heuristic");
+
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Returns count of nodes of the compiled circuit.
+     *
+     * @return Count of circuit nodes
+     */
+    public int getCircuitSize() {
+        initializeIfNecessary();
+        return circuit.size();
+    }
+
+    /**
+     * Returns the probability of evidence computed by the last query.
+     *
+     * @return Probability of evidence or NaN if nothing has been queried yet
+     */
+    public double getProbabilityOfEvidence() {
+        return probabilityOfEvidence;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool != null ? pool : ForkJoinPool.commonPool();
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Computes marginal probabilities of the target nodes for each row of the
+     * evidence matrix. Evidence of the nodes of the network is neither used
+     * nor changed.
+     *
+     * <p>
+     * Row i of the result contains the marginals of all targets one after
+     * another, so its length is the sum of the counts of the target levels.
+     * The marginal of a target observed in a case puts all probability on the
+     * observed level. Rows of cases with zero probability of evidence are
+     * filled with NaN.
+     * </p>
+     *
+     * @param evidenceNodes Nodes corresponding to the columns of the evidence
+     * matrix
+     * @param evidence Level index of each evidence node in each case, -1 for
+     * no evidence
+     * @param targets Nodes, whose marginals are computed
+     * @return Posterior matrix
+     */
+    public double[][] inferBatch(List<Node> evidenceNodes, int[][] evidence, List<Node> targets) {
+        Ensure.NotNull(evidenceNodes, "evidenceNodes");
+        Ensure.NotNull(evidence, "evidence");
+        Ensure.NotNull(targets, "targets");
+        initializeIfNecessary();
+
+        int[] columns = evidenceNodes.stream().mapToInt(x -> compiled.getId(x)).toArray();
+        for (int[] row : evidence) {
+            Ensure.IsTrue(row.length == columns.length, "Each evidence row should have a level for each evidence node");
+            for (int i = 0; i < columns.length; i++) {
+                Ensure.IsTrue(row[i] >= -1 && row[i] < compiled.getCard(columns[i]),
+                        String.format("Level index %d is out of range for %s", row[i], evidenceNodes.get(i)));
+            }
+        }
+        int[] vars = targets.stream().mapToInt(x -> compiled.getId(x)).toArray();
+
+        double[][] result = new double[evidence.length][];
+        getPool().invoke(new BatchTask(columns, evidence, vars, result, 0, evidence.length));
+        return result;
+    }
+
+    @Override
+    protected void compile() {
+        compiled = CompiledNetwork.compile(getNetwork());
+        circuit = ArithmeticCircuit.compile(compiled, heuristic);
+        evidence = new int[compiled.size()];
+        values = circuit.createValues();
+        derivatives = circuit.createDerivatives();
+        LOGGER.debug("Arithmetic circuit of {} contains {} nodes", getNetwork(), circuit.size());
+    }
+
+    @Override
+    protected void infer(List<Node> nodes) {
+        readEvidence(compiled, evidence);
+        probabilityOfEvidence = circuit.evaluate(evidence, values);
+        Ensure.GreaterThan(probabilityOfEvidence, 0.0, "Probability of evidence");
+        circuit.differentiate(values, derivatives);
+
+        for (Node node : nodes) {
+            int var = compiled.getId(node);
+            double[] marginal = new double[compiled.getCard(var)];
+            circuit.marginal(var, derivatives, marginal);
+            setInference(node, marginal);
+        }
+    }
+
+    /**
+     * The task infers a range of cases of a batch, splitting itself while
+     * there are more than {@link #TASK_SIZE} cases.
+     */
+    private final class BatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] columns;
+        private final int[][] evidence;
+        private final int[] targets;
+        private final double[][] result;
+        private final int from;
+        private final int to;
+
+        BatchTask(int[] columns, int[][] evidence, int[] targets, double[][] result, int from, int to) {
+            this.columns = columns;
+            this.evidence = evidence;
+            this.targets = targets;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TASK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BatchTask(columns, evidence, targets, result, from, middle),
+                        new BatchTask(columns, evidence, targets, result, middle, to));
+                return;
+            }
+
+            int width = Arrays.stream(targets).map(x -> compiled.getCard(x)).sum();
+            int[] states = new int[compiled.size()];
+            double[] caseValues = circuit.createValues();
+            double[] caseDerivatives = circuit.createDerivatives();
+            double[] marginal = new double[Arrays.stream(targets).map(x -> compiled.getCard(x)).max().orElse(0)];
+            for (int i = from; i < to; i++) {
+                Arrays.fill(states, -1);
+                for (int j = 0; j < columns.length; j++) {
+                    states[columns[j]] = evidence[i][j];
+                }
+                double[] row = new double[width];
+                result[i] = row;
+                if (circuit.evaluate(states, caseValues) <= 0.0) {
+                    Arrays.fill(row, Double.NaN);
+                    continue;
+                }
+                circuit.differentiate(caseValues, caseDerivatives);
+
+                int offset = 0;
+                for (int var : targets) {
+                    if (states[var] != -1) {
+                        row[offset + states[var]] = 1.0;
+                    } else {
+                        circuit.marginal(var, caseDerivatives, marginal);
+                        System.arraycopy(marginal, 0, row, offset, compiled.getCard(var));
+                    }
+                    offset += compiled.getCard(var);
+                }
+            }
+        }
+    }
+}
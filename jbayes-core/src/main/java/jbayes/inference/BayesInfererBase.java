@@ -0,0 +1,238 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import jbayes.core.BayesNet;
+import jbayes.core.Evidence;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+
+/**
+ * Base class of the inferers that run inside of JVM.
+ *
+ * <p>
+ * The network is compiled lazily before the first query and compiled again
+ * before the next query after {@link BayesNet#getVersion()} has changed. As
+ * well as in {@link IBayesInferer} implementations based on R, the inference
+ * is set only for the requested nodes without evidence.
+ * </p>
+ *
+ * <p>
+ * Queries given an {@link Evidence} read it instead of the evidence of the
+ * nodes, which stays unchanged, so batches of queries with different evidence
+ * need no changes of the network.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public abstract class BayesInfererBase implements IBayesInferer {
+
+    private final BayesNet network;
+    private boolean initialized = false;
+    private long compiledVersion;
+    /**
+     * Evidence given to the current query or null if the evidence of the
+     * nodes is used.
+     */
+    private Evidence evidence;
+
+    protected BayesInfererBase(BayesNet network) {
+        Ensure.NotNull(network, "network");
+
+        this.network = network;
+    }
+
+    public boolean isInitialized() {
+        return initialized && compiledVersion == network.getVersion();
+    }
+
+    protected void initializeIfNecessary() {
+        if (!isInitialized()) {
+            initialize();
+        }
+    }
+
+    protected void initialize() {
+        compiledVersion = network.getVersion();
+        compile();
+        this.initialized = true;
+    }
+
+    /**
+     * Compiles the underlying network into the structure used by the inferer.
+     */
+    protected abstract void compile();
+
+    /**
+     * Computes marginal probability for the specified nodes. None of the nodes
+     * has evidence.
+     *
+     * @param nodes Nodes without evidence
+     */
+    protected abstract void infer(List<Node> nodes);
+
+    /**
+     * Returns underlying {@link BayesNet} instance.
+     *
+     * @return Underlying {@link BayesNet} instance
+     */
+    @Override
+    public BayesNet getNetwork() {
+        return network;
+    }
+
+    /**
+     * Computes marginal probability for the specified nodes.
+     *
+     * @param nodes
+     */
+    @Override
+    public void inferNodes(Collection<Node> nodes) {
+        Ensure.NotNull(nodes, "nodes");
+
+        initializeIfNecessary();
+
+        List<Node> finalNodes = nodes.stream()
+                .filter(x -> x.getEvidence() == null)
+                .collect(Collectors.toList());
+        if (finalNodes.isEmpty()) {
+            return;
+        }
+        infer(finalNodes);
+    }
+
+    /**
+     * Computes marginal probability for the specified nodes given the
+     * specified evidence. The evidence of the nodes is neither read nor
+     * changed.
+     *
+     * @param evidence Evidence indexed by node id
+     * @param nodes
+     */
+    @Override
+    public void inferNodes(Evidence evidence, Collection<Node> nodes) {
+        Ensure.NotNull(evidence, "evidence");
+        Ensure.NotNull(nodes, "nodes");
+        Ensure.AreEquals(evidence.size(), network.getGraph().size(), "Size of evidence");
+
+        initializeIfNecessary();
+
+        List<Node> finalNodes = nodes.stream()
+                .filter(x -> !evidence.isObserved(x.getId()))
+                .collect(Collectors.toList());
+        if (finalNodes.isEmpty()) {
+            return;
+        }
+        this.evidence = evidence;
+        try {
+            infer(finalNodes);
+        } finally {
+            this.evidence = null;
+        }
+    }
+
+    /**
+     * Computes marginal probability for all nodes given the specified
+     * evidence. The evidence of the nodes is neither read nor changed.
+     *
+     * @param evidence Evidence indexed by node id
+     */
+    @Override
+    public void inferAllNodes(Evidence evidence) {
+        this.inferNodes(evidence, getNetwork().getNodes());
+    }
+
+    /**
+     * Computes marginal probability for the specified nodes.
+     *
+     * @param nodes
+     */
+    @Override
+    public void inferNodes(Node... nodes) {
+        this.inferNodes(Arrays.asList(nodes));
+    }
+
+    /**
+     * Computes marginal probability for all nodes.
+     */
+    @Override
+    public void inferAllNodes() {
+        this.inferNodes(getNetwork().getNodes());
+    }
+
+    /**
+     * Computes marginal probability for the specified node.
+     *
+     * @param nodeName Node
+     */
+    @Override
+    public void inferNode(String nodeName) {
+        this.inferNodes(getNetwork().getNodeByName(nodeName));
+    }
+
+    /**
+     * Returns the evidence of the current query.
+     *
+     * @return Evidence given to the query or the evidence of the nodes
+     */
+    protected Evidence getEvidence() {
+        return evidence != null ? evidence : network.getEvidence();
+    }
+
+    /**
+     * Returns the evidence of the current query for the variables of the
+     * compiled network.
+     *
+     * @param compiled Compiled network
+     * @return Index of the observed level of each variable or -1
+     */
+    protected int[] getEvidence(CompiledNetwork compiled) {
+        int[] result = new int[compiled.size()];
+        readEvidence(compiled, result);
+        return result;
+    }
+
+    /**
+     * Reads the evidence of the current query for the variables of the
+     * compiled network into the specified array.
+     *
+     * @param compiled Compiled network
+     * @param result Array for the index of the observed level of each variable
+     */
+    protected void readEvidence(CompiledNetwork compiled, int[] result) {
+        if (evidence != null) {
+            compiled.readEvidence(evidence, result);
+        } else {
+            compiled.readEvidence(result);
+        }
+    }
+
+    /**
+     * Sets the computed marginal probability to the node.
+     *
+     * @param node Node
+     * @param marginal Marginal probability of each level
+     */
+    protected static void setInference(Node node, double[] marginal) {
+        node.getDistribution().setInferenceValues(marginal);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.primitives.Doubles;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import jbayes.core.BayesNet;
+import jbayes.core.Evidence;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inferer that caches inference results of another inferer.
+ *
+ * <p>
+ * Results are keyed by the {@link Evidence} of the network together with the
+ * requested nodes without evidence sorted by node name, so the order in which
+ * evidence was set or nodes were requested does not matter. A repeated
+ * query sets cached results to the nodes without calling the underlying
+ * inferer. The cache is bounded and evicts least recently used entries.
+ * </p>
+ *
+ * <p>
+ * The cache is cleared whenever {@link BayesNet#getVersion()} changes, i.e.
+ * after a change of the structure of the network or of the levels, link types
+ * or distributions of its nodes. Changes made directly to the lists returned
+ * by the getters, e.g. to a CPT, are not detected and require
+ * {@link #invalidate()}.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class CachingBayesInferer implements IBayesInferer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingBayesInferer.class);
+
+    private final IBayesInferer inferer;
+    private final Cache<QueryKey, double[][]> cache;
+    private long version;
+
+    public CachingBayesInferer(IBayesInferer inferer) {
+        this(inferer, 10_000);
+    }
+
+    public CachingBayesInferer(IBayesInferer inferer, long maximumSize) {
+        Ensure.NotNull(inferer, "inferer");
+        Ensure.GreaterThan(maximumSize, 0L, "maximumSize");
+
+        this.inferer = inferer;
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        this.version = inferer.getNetwork().getVersion();
+    }
+
+    /**
+     * Returns the underlying inferer.
+     *
+     * @return Underlying inferer
+     */
+    public IBayesInferer getInferer() {
+        return inferer;
+    }
+
+    /**
+     * Returns hit, miss and eviction counters of the cache.
+     *
+     * @return Cache statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Returns count of cached results.
+     *
+     * @return Count of cached results
+     */
+    public long getCachedResultCount() {
+        return cache.size();
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void invalidate() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public BayesNet getNetwork() {
+        return inferer.getNetwork();
+    }
+
+    @Override
+    public void inferAllNodes() {
+        inferNodes(getNetwork().getNodes());
+    }
+
+    @Override
+    public void inferNode(String nodeName) {
+        inferNodes(getNetwork().getNodeByName(nodeName));
+    }
+
+    @Override
+    public void inferNodes(Node... nodes) {
+        inferNodes(Arrays.asList(nodes));
+    }
+
+    @Override
+    public void inferNodes(Collection<Node> nodes) {
+        Ensure.NotNull(nodes, "nodes");
+
+        infer(getNetwork().getEvidence(), nodes, false);
+    }
+
+    /**
+     * Computes marginal probability for the specified nodes given the
+     * specified evidence, which is passed on to the underlying inferer.
+     *
+     * @param evidence Evidence indexed by node id
+     * @param nodes
+     */
+    @Override
+    public void inferNodes(Evidence evidence, Collection<Node> nodes) {
+        Ensure.NotNull(evidence, "evidence");
+        Ensure.NotNull(nodes, "nodes");
+
+        infer(evidence, nodes, true);
+    }
+
+    @Override
+    public void inferAllNodes(Evidence evidence) {
+        inferNodes(evidence, getNetwork().getNodes());
+    }
+
+    private void infer(Evidence evidence, Collection<Node> nodes, boolean isGiven) {
+        List<Node> targets = nodes.stream()
+                .filter(x -> !evidence.isObserved(x.getId()))
+                .sorted((a, b) -> a.getName().compareTo(b.getName()))
+                .distinct()
+                .collect(Collectors.toList());
+        if (targets.isEmpty()) {
+            return;
+        }
+        long currentVersion = getNetwork().getVersion();
+        if (currentVersion != version) {
+            LOGGER.debug("Network {} has changed, cache is cleared", getNetwork());
+            cache.invalidateAll();
+            version = currentVersion;
+        }
+
+        QueryKey key = new QueryKey(evidence, targets);
+        double[][] result = cache.getIfPresent(key);
+        if (result == null) {
+            if (isGiven) {
+                inferer.inferNodes(evidence, targets);
+            } else {
+                inferer.inferNodes(targets);
+            }
+            result = new double[targets.size()][];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = Doubles.toArray(targets.get(i).getInference());
+            }
+            cache.put(key, result);
+        } else {
+            // nodes get their own arrays, since distributions may expose them through getInference()
+            for (int i = 0; i < result.length; i++) {
+                targets.get(i).getDistribution().setInferenceValues(result[i].clone());
+            }
+        }
+    }
+
+    /**
+     * Canonical form of a query: the evidence of the network and the names of
+     * the requested nodes in sorted order.
+     */
+    private static final class QueryKey {
+
+        private final Evidence evidence;
+        private final List<String> targets;
+
+        QueryKey(Evidence evidence, List<Node> targets) {
+            this.evidence = evidence;
+            this.targets = targets.stream().map(x -> x.getName()).collect(Collectors.toList());
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * evidence.hashCode() + targets.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) obj;
+            return evidence.equals(other.evidence) && targets.equals(other.targets);
+        }
+    }
+}
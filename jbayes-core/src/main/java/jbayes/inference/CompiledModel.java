@@ -0,0 +1,216 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jbayes.core.BayesNet;
+import jbayes.core.BayesNetSnapshot;
+import jbayes.util.Ensure;
+
+/**
+ * Immutable compiled form of a {@link BayesNet}, which can be queried from
+ * many threads at once.
+ *
+ * <p>
+ * The model is an arithmetic circuit together with the names and levels of
+ * the nodes, taken from the network at compilation. Later changes of the
+ * network, including its evidence, do not affect the model. The model holds no
+ * evidence or results: each thread queries it through its own
+ * {@link InferenceSession}, so no locks and no copies of the network are
+ * needed.
+ * </p>
+ *
+ * <p>
+ * The {@link NumericMode} of the model decides how sessions represent
+ * probabilities, so the cheapest mode accurate enough for the network can be
+ * chosen.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public final class CompiledModel {
+
+    private final String name;
+    private final ArithmeticCircuit circuit;
+    private final NumericMode numericMode;
+    private final List<String> nodeNames;
+    /**
+     * Levels of each variable, null for auxiliary variables.
+     */
+    private final List<List<String>> levels;
+    private final Map<String, Integer> ids;
+    /**
+     * Variable of each node indexed by {@link jbayes.core.Node#getId()}.
+     */
+    private final int[] vars;
+
+    private CompiledModel(String name, CompiledNetwork network, ArithmeticCircuit circuit, NumericMode numericMode) {
+        List<String> names = new ArrayList<>();
+        List<List<String>> varLevels = new ArrayList<>();
+        Map<String, Integer> varIds = new HashMap<>();
+        int[] nodeVars = new int[network.size()];
+        for (int var = 0; var < network.size(); var++) {
+            if (network.getNodeId(var) != -1) {
+                nodeVars[network.getNodeId(var)] = var;
+                names.add(network.getName(var));
+                varLevels.add(network.getLevels(var));
+                varIds.put(network.getName(var), var);
+            } else {
+                varLevels.add(null);
+            }
+        }
+
+        this.name = name;
+        this.circuit = circuit;
+        this.numericMode = numericMode;
+        this.nodeNames = Collections.unmodifiableList(names);
+        this.levels = Collections.unmodifiableList(varLevels);
+        this.ids = Collections.unmodifiableMap(varIds);
+        this.vars = Arrays.copyOf(nodeVars, names.size());
+    }
+
+    /**
+     * Compiles the specified network.
+     *
+     * @param network {@link BayesNet}
+     * @return Compiled model
+     */
+    public static CompiledModel compile(BayesNet network) {
+        return compile(network, EliminationHeuristic.MIN_FILL);
+    }
+
+    /**
+     * Compiles the specified network.
+     *
+     * @param network {@link BayesNet}
+     * @param heuristic Heuristic used for the elimination order
+     * @return Compiled model
+     */
+    public static CompiledModel compile(BayesNet network, EliminationHeuristic heuristic) {
+        return compile(network, heuristic, NumericMode.DOUBLE);
+    }
+
+    /**
+     * Compiles the specified network.
+     *
+     * @param network {@link BayesNet}
+     * @param heuristic Heuristic used for the elimination order
+     * @param numericMode Representation of probabilities
+     * @return Compiled model
+     */
+    public static CompiledModel compile(BayesNet network, EliminationHeuristic heuristic, NumericMode numericMode) {
+        Ensure.NotNull(network, "network");
+        Ensure.NotNull(heuristic, "heuristic");
+        Ensure.NotNull(numericMode, "numericMode");
+
+        CompiledNetwork compiled = CompiledNetwork.compile(network);
+        return new CompiledModel(network.getName(), compiled, ArithmeticCircuit.compile(compiled, heuristic), numericMode);
+    }
+
+    /**
+     * Compiles the specified snapshot of a network directly from its node
+     * data, without creating a network. Since the snapshot is immutable, the
+     * model may be cached for it.
+     *
+     * @param snapshot {@link BayesNetSnapshot}
+     * @return Compiled model
+     */
+    public static CompiledModel compile(BayesNetSnapshot snapshot) {
+        Ensure.NotNull(snapshot, "snapshot");
+
+        CompiledNetwork compiled = CompiledNetwork.compile(snapshot);
+        return new CompiledModel(snapshot.getName(), compiled,
+                ArithmeticCircuit.compile(compiled, EliminationHeuristic.MIN_FILL), NumericMode.DOUBLE);
+    }
+
+    /**
+     * Creates a new session without evidence. A session should be used by one
+     * thread at a time.
+     *
+     * @return Inference session
+     */
+    public InferenceSession createSession() {
+        return new InferenceSession(this);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public NumericMode getNumericMode() {
+        return numericMode;
+    }
+
+    /**
+     * Returns names of the nodes in topological order.
+     *
+     * @return Node names
+     */
+    public List<String> getNodeNames() {
+        return nodeNames;
+    }
+
+    /**
+     * Returns levels of the specified node.
+     *
+     * @param nodeName Node name
+     * @return Levels
+     */
+    public List<String> getLevels(String nodeName) {
+        return levels.get(getId(nodeName));
+    }
+
+    ArithmeticCircuit getCircuit() {
+        return circuit;
+    }
+
+    /**
+     * Returns count of variables of the circuit including the auxiliary ones.
+     */
+    int size() {
+        return levels.size();
+    }
+
+    int getId(String nodeName) {
+        Integer id = ids.get(nodeName);
+        Ensure.IsTrue(id != null, String.format("Model %s doesn't contain node %s", name, nodeName));
+        return id;
+    }
+
+    /**
+     * Returns the variable of the node with the specified id in the compiled
+     * network.
+     */
+    int getVar(int nodeId) {
+        return vars[nodeId];
+    }
+
+    int getCard(int var) {
+        return levels.get(var).size();
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledModel{" + "name=" + name + ", nodes=" + nodeNames.size() + ", numericMode=" + numericMode + '}';
+    }
+}
@@ -0,0 +1,630 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import jbayes.core.BayesNet;
+import jbayes.core.BayesNetGraph;
+import jbayes.core.BayesNetSnapshot;
+import jbayes.core.DiscreteDistribution;
+import jbayes.core.Distribution;
+import jbayes.core.Evidence;
+import jbayes.core.Factor;
+import jbayes.core.Node;
+import jbayes.core.NodeLinkType;
+import jbayes.core.NoisyMaxDistribution;
+import jbayes.core.SparseDistribution;
+import jbayes.core.TreeDistribution;
+import jbayes.util.Ensure;
+
+/**
+ * The class represents a {@link BayesNet} converted to the form used by the
+ * native inferers: nodes are numbered in topological order and the CPT of each
+ * node is stored as a {@link Factor} over the node and its parents.
+ *
+ * <p>
+ * CPT values are interpreted as in gRain: the node changes fastest, then its
+ * parents in the order of {@link Node#getInLinks()}, and each column is
+ * normalized. Nodes of type {@link NodeLinkType#AND} and
+ * {@link NodeLinkType#OR} get a deterministic table where the first level
+ * means true.
+ * </p>
+ *
+ * <p>
+ * A node of type {@link NodeLinkType#NOISY_OR} or
+ * {@link NodeLinkType#NOISY_MAX} with n parents is decomposed into a chain of
+ * n variables, where each variable adds the influence of one parent to the
+ * previous one and the last variable is the node itself. The first n - 1
+ * variables are auxiliary, they have no node and never have evidence. Tables
+ * of the chain grow linearly with the count of parents.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+final class CompiledNetwork {
+
+    /**
+     * Node of each variable, null for auxiliary variables and for variables
+     * compiled from a snapshot.
+     */
+    private final Node[] nodes;
+    /**
+     * Node id of each variable or -1 for auxiliary variables.
+     */
+    private final int[] nodeIds;
+    /**
+     * Variable of each node, indexed by {@link Node#getId()}.
+     */
+    private final int[] ids;
+    private final String[] names;
+    private final List<List<String>> levels;
+    private final int[] cards;
+    private final int[][] parents;
+    private final int[][] children;
+    private final int[][] parentStrides;
+    private final Factor[] families;
+
+    private CompiledNetwork(int[] nodeIds, int[] ids) {
+        int size = nodeIds.length;
+        this.nodes = new Node[size];
+        this.nodeIds = nodeIds;
+        this.ids = ids;
+        this.names = new String[size];
+        this.levels = new ArrayList<>(Collections.<List<String>>nCopies(size, null));
+        this.cards = new int[size];
+        this.parents = new int[size][];
+        this.children = new int[size][];
+        this.parentStrides = new int[size][];
+        this.families = new Factor[size];
+    }
+
+    /**
+     * Compiles the specified network.
+     *
+     * @param network {@link BayesNet}
+     * @return Compiled network
+     * @throws IllegalStateException If the network contains a cycle or the
+     * CPT of one of the nodes is inconsistent with its levels and parents
+     */
+    static CompiledNetwork compile(BayesNet network) {
+        Ensure.NotNull(network, "network");
+
+        BayesNetGraph graph = network.getGraph();
+        Ensure.AreEquals(graph.size(), network.getNodes().size(), "Count of nodes added through BayesNet.addNode");
+        return compile(new NetworkSource(graph));
+    }
+
+    /**
+     * Compiles the specified snapshot. The compiled network has no nodes, so
+     * evidence should be given explicitly.
+     *
+     * @param snapshot {@link BayesNetSnapshot}
+     * @return Compiled network
+     * @throws IllegalStateException If the CPT of one of the nodes is
+     * inconsistent with its levels and parents
+     */
+    static CompiledNetwork compile(BayesNetSnapshot snapshot) {
+        Ensure.NotNull(snapshot, "snapshot");
+
+        return compile(new SnapshotSource(snapshot));
+    }
+
+    private static CompiledNetwork compile(Source source) {
+        // a noisy node with n parents is preceded by n - 1 auxiliary variables
+        List<Integer> vars = new ArrayList<>();
+        for (int id : source.getTopologicalOrder()) {
+            for (int i = 1; i < source.getParentCount(id) && isNoisy(source.getLinkType(id)); i++) {
+                vars.add(-1);
+            }
+            vars.add(id);
+        }
+        int[] order = vars.stream().mapToInt(x -> x).toArray();
+        int[] ids = new int[source.size()];
+        for (int i = 0; i < order.length; i++) {
+            if (order[i] != -1) {
+                ids[order[i]] = i;
+            }
+        }
+
+        CompiledNetwork result = new CompiledNetwork(order, ids);
+        List<List<Integer>> childLists = new ArrayList<>();
+        for (int i = 0; i < order.length; i++) {
+            childLists.add(new ArrayList<>());
+        }
+        for (int i = 0; i < order.length; i++) {
+            if (order[i] == -1) {
+                continue;
+            }
+            int id = order[i];
+            result.nodes[i] = source.getNode(id);
+            result.names[i] = source.getName(id);
+            result.levels.set(i, source.getLevels(id));
+            int parentCount = source.getParentCount(id);
+            int card = result.levels.get(i).size();
+            Ensure.GreaterThan(card, 0, String.format("Count of levels of node %s", result.names[i]));
+            if (isNoisy(source.getLinkType(id)) && parentCount > 1) {
+                // variable i - n + 1 + k combines the leak and the first k + 1 parents
+                int first = i - parentCount + 1;
+                for (int k = 0; k < parentCount; k++) {
+                    result.cards[first + k] = card;
+                    result.parents[first + k] = k == 0
+                            ? new int[]{ids[source.getParent(id, 0)]}
+                            : new int[]{first + k - 1, ids[source.getParent(id, k)]};
+                }
+            } else {
+                result.cards[i] = card;
+                result.parents[i] = new int[parentCount];
+                for (int k = 0; k < parentCount; k++) {
+                    result.parents[i][k] = ids[source.getParent(id, k)];
+                }
+            }
+        }
+        for (int i = 0; i < order.length; i++) {
+            int[] varParents = result.parents[i];
+            result.parentStrides[i] = new int[varParents.length];
+            for (int j = 0, stride = result.cards[i]; j < varParents.length; j++) {
+                result.parentStrides[i][j] = stride;
+                stride *= result.cards[varParents[j]];
+                childLists.get(varParents[j]).add(i);
+            }
+        }
+        for (int i = 0; i < order.length; i++) {
+            result.children[i] = childLists.get(i).stream().mapToInt(x -> x).toArray();
+        }
+        for (int i = 0; i < order.length; i++) {
+            if (order[i] != -1 && isNoisy(source.getLinkType(order[i]))) {
+                result.createNoisyFamilies(i, source.getParentCount(order[i]), source.getDistribution(order[i]),
+                        source.getLinkType(order[i]));
+            } else if (order[i] != -1) {
+                result.families[i] = result.createFamily(i, source.getDistribution(order[i]), source.getLinkType(order[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns count of variables including the auxiliary ones.
+     *
+     * @return Count of variables
+     */
+    int size() {
+        return nodeIds.length;
+    }
+
+    /**
+     * Returns the id of the node of the variable.
+     *
+     * @param var Variable
+     * @return Node id or -1 if the variable is auxiliary
+     */
+    int getNodeId(int var) {
+        return nodeIds[var];
+    }
+
+    /**
+     * Returns the name of the node of the variable.
+     *
+     * @param var Variable
+     * @return Node name or null if the variable is auxiliary
+     */
+    String getName(int var) {
+        return names[var];
+    }
+
+    /**
+     * Returns the levels of the node of the variable.
+     *
+     * @param var Variable
+     * @return Unmodifiable node levels or null if the variable is auxiliary
+     */
+    List<String> getLevels(int var) {
+        return levels.get(var);
+    }
+
+    /**
+     * Describes the variable for messages: its node or, for an auxiliary
+     * variable, the noisy node that follows its chain.
+     *
+     * @param var Variable
+     * @return Description of the variable
+     */
+    String describe(int var) {
+        if (nodeIds[var] != -1) {
+            return "Node " + names[var];
+        }
+        int owner = var + 1;
+        while (owner < nodeIds.length && nodeIds[owner] == -1) {
+            owner++;
+        }
+        return owner < nodeIds.length
+                ? String.format("auxiliary variable %d of Node %s", var, names[owner])
+                : "auxiliary variable " + var;
+    }
+
+    int getId(Node node) {
+        int nodeId = node.getId();
+        if (nodeId < 0 || nodeId >= ids.length || nodes[ids[nodeId]] != node) {
+            throw new IllegalArgumentException(String.format("Node %s doesn't belong to the compiled network", node));
+        }
+        return ids[nodeId];
+    }
+
+    int getCard(int var) {
+        return cards[var];
+    }
+
+    int[] getCards() {
+        return cards;
+    }
+
+    int[] getParents(int var) {
+        return parents[var];
+    }
+
+    int[] getChildren(int var) {
+        return children[var];
+    }
+
+    /**
+     * Returns the CPT of the variable over the variable and its parents.
+     *
+     * @param var Variable
+     * @return Family potential
+     */
+    Factor getFamily(int var) {
+        return families[var];
+    }
+
+    /**
+     * Returns the offset of the CPT column of the variable, which corresponds
+     * to the parent levels in the specified assignment.
+     *
+     * @param var Variable
+     * @param states Level of each variable
+     * @return Index of the first entry of the column in the family values
+     */
+    int getColumnOffset(int var, int[] states) {
+        int[] varParents = parents[var];
+        int[] strides = parentStrides[var];
+        int offset = 0;
+        for (int i = 0; i < varParents.length; i++) {
+            offset += states[varParents[i]] * strides[i];
+        }
+        return offset;
+    }
+
+    /**
+     * Reads current evidence of the nodes.
+     *
+     * @return Index of the observed level of each variable or -1 if the
+     * variable is not observed
+     */
+    int[] getEvidence() {
+        int[] evidence = new int[nodes.length];
+        readEvidence(evidence);
+        return evidence;
+    }
+
+    /**
+     * Reads current evidence of the nodes into the specified array.
+     *
+     * @param evidence Array for the index of the observed level of each
+     * variable or -1 if the variable is not observed
+     */
+    void readEvidence(int[] evidence) {
+        for (int i = 0; i < nodes.length; i++) {
+            evidence[i] = nodes[i] != null ? nodes[i].getEvidenceIndex() : -1;
+        }
+    }
+
+    /**
+     * Reads the specified evidence into the specified array.
+     *
+     * @param evidence Evidence indexed by node id
+     * @param result Array for the index of the observed level of each
+     * variable or -1 if the variable is not observed
+     */
+    void readEvidence(Evidence evidence, int[] result) {
+        for (int i = 0; i < nodes.length; i++) {
+            int level = nodeIds[i] != -1 ? evidence.getLevel(nodeIds[i]) : -1;
+            Ensure.LowerThan(level, cards[i], "level");
+            result[i] = level;
+        }
+    }
+
+    private Factor createFamily(int var, Distribution distribution, NodeLinkType linkType) {
+        String name = names[var];
+        int[] vars = new int[parents[var].length + 1];
+        int[] famCards = new int[vars.length];
+        vars[0] = var;
+        famCards[0] = cards[var];
+        for (int i = 0; i < parents[var].length; i++) {
+            vars[i + 1] = parents[var][i];
+            famCards[i + 1] = cards[parents[var][i]];
+        }
+        Factor family = Factor.unit(vars, famCards);
+        double[] values = family.getValues();
+
+        if (linkType == NodeLinkType.NONE) {
+            if (distribution instanceof SparseDistribution) {
+                // only the non-zero cells are written
+                SparseDistribution sparse = (SparseDistribution) distribution;
+                Ensure.AreEquals(sparse.getSize(), values.length, String.format("CPT size of node %s", name));
+                Arrays.fill(values, 0.0);
+                sparse.scatter(values);
+            } else {
+                Ensure.IsTrue(distribution instanceof DiscreteDistribution || distribution instanceof TreeDistribution,
+                        String.format("Node %s should have a discrete distribution", name));
+                double[] cpt = distribution instanceof TreeDistribution
+                        ? toCptValues((TreeDistribution) distribution, var)
+                        : ((DiscreteDistribution) distribution).getCptValues();
+                Ensure.AreEquals(cpt.length, values.length, String.format("CPT size of node %s", name));
+                System.arraycopy(cpt, 0, values, 0, values.length);
+            }
+            normalizeColumns(name, values, cards[var]);
+        } else {
+            for (int card : famCards) {
+                Ensure.AreEquals(card, 2, String.format("Count of levels in the family of %s node %s", linkType, name));
+            }
+            boolean isAnd = linkType == NodeLinkType.AND;
+            for (int column = 0; column < values.length / 2; column++) {
+                boolean result = isAnd;
+                for (int i = 0; i < parents[var].length; i++) {
+                    boolean parentTrue = ((column >> i) & 1) == 0;
+                    result = isAnd ? result && parentTrue : result || parentTrue;
+                }
+                values[2 * column] = result ? 1.0 : 0.0;
+                values[2 * column + 1] = result ? 0.0 : 1.0;
+            }
+        }
+        return family;
+    }
+
+    /**
+     * Creates the families of the noisy node and of its auxiliary variables.
+     * The variable of step k takes the most severe of the level of the
+     * previous step, or of the leak for the first step, and the level caused
+     * by parent k.
+     */
+    private void createNoisyFamilies(int var, int parentCount, Distribution nodeDistribution, NodeLinkType linkType) {
+        String name = names[var];
+        Ensure.IsTrue(nodeDistribution instanceof NoisyMaxDistribution,
+                String.format("Node %s should have a noisy-MAX distribution", name));
+        Ensure.IsTrue(linkType != NodeLinkType.NOISY_OR || cards[var] == 2,
+                String.format("Noisy-OR node %s should have two levels", name));
+        NoisyMaxDistribution distribution = (NoisyMaxDistribution) nodeDistribution;
+        Ensure.AreEquals(distribution.getParentCpts().size(), parentCount,
+                String.format("Count of parent CPTs of node %s", name));
+        int card = cards[var];
+
+        double[] leak = toArray(distribution.getLeak());
+        Ensure.AreEquals(leak.length, card, String.format("Leak size of node %s", name));
+        normalizeColumns(name, leak, card);
+        if (parentCount == 0) {
+            families[var] = new Factor(new int[]{var}, new int[]{card}, leak);
+            return;
+        }
+
+        int first = var - parentCount + 1;
+        for (int k = 0; k < parentCount; k++) {
+            int step = first + k;
+            int parent = parents[step][parents[step].length - 1];
+            double[] caused = toArray(distribution.getParentCpts().get(k));
+            Ensure.AreEquals(caused.length, card * cards[parent], String.format("Size of CPT of parent %d of node %s", k, name));
+            normalizeColumns(name, caused, card);
+
+            int[] vars = new int[parents[step].length + 1];
+            int[] famCards = new int[vars.length];
+            vars[0] = step;
+            famCards[0] = card;
+            for (int i = 0; i < parents[step].length; i++) {
+                vars[i + 1] = parents[step][i];
+                famCards[i + 1] = cards[parents[step][i]];
+            }
+            Factor family = Factor.unit(vars, famCards);
+            double[] values = family.getValues();
+            int previousCard = k == 0 ? 1 : card;
+            for (int previous = 0; previous < previousCard; previous++) {
+                for (int state = 0; state < cards[parent]; state++) {
+                    int column = (previous + state * previousCard) * card;
+                    for (int level = 0; level < card; level++) {
+                        values[column + level] = 0.0;
+                    }
+                    for (int from = 0; from < card; from++) {
+                        double p = k == 0 ? leak[from] : (from == previous ? 1.0 : 0.0);
+                        for (int by = 0; by < card; by++) {
+                            values[column + Math.min(from, by)] += p * caused[state * card + by];
+                        }
+                    }
+                }
+            }
+            families[step] = family;
+        }
+    }
+
+    private static double[] toArray(List<Double> values) {
+        return values.stream().mapToDouble(x -> x).toArray();
+    }
+
+    private static void normalizeColumns(String name, double[] values, int card) {
+        for (int offset = 0; offset < values.length; offset += card) {
+            double sum = 0.0;
+            for (int i = offset; i < offset + card; i++) {
+                Ensure.GreaterThanOrEquals(values[i], 0.0, String.format("CPT value of node %s", name));
+                sum += values[i];
+            }
+            Ensure.GreaterThan(sum, 0.0, String.format("Sum of CPT column of node %s", name));
+            for (int i = offset; i < offset + card; i++) {
+                values[i] /= sum;
+            }
+        }
+    }
+
+    private double[] toCptValues(TreeDistribution distribution, int var) {
+        List<String> parentNames = new ArrayList<>();
+        int[] parentCards = new int[parents[var].length];
+        for (int i = 0; i < parentCards.length; i++) {
+            parentNames.add(names[parents[var][i]]);
+            parentCards[i] = cards[parents[var][i]];
+        }
+        return distribution.toCptValues(names[var], cards[var], parentNames, parentCards);
+    }
+
+    private static boolean isNoisy(NodeLinkType linkType) {
+        return linkType == NodeLinkType.NOISY_OR || linkType == NodeLinkType.NOISY_MAX;
+    }
+
+    /**
+     * Read access to the nodes to compile by node id.
+     */
+    private interface Source {
+
+        int size();
+
+        int[] getTopologicalOrder();
+
+        int getParentCount(int id);
+
+        int getParent(int id, int index);
+
+        /**
+         * Returns the node or null if the source has no nodes.
+         */
+        Node getNode(int id);
+
+        String getName(int id);
+
+        List<String> getLevels(int id);
+
+        NodeLinkType getLinkType(int id);
+
+        Distribution getDistribution(int id);
+    }
+
+    private static final class NetworkSource implements Source {
+
+        private final BayesNetGraph graph;
+
+        NetworkSource(BayesNetGraph graph) {
+            this.graph = graph;
+        }
+
+        @Override
+        public int size() {
+            return graph.size();
+        }
+
+        @Override
+        public int[] getTopologicalOrder() {
+            return graph.getTopologicalOrder();
+        }
+
+        @Override
+        public int getParentCount(int id) {
+            return graph.getParentCount(id);
+        }
+
+        @Override
+        public int getParent(int id, int index) {
+            return graph.getParent(id, index);
+        }
+
+        @Override
+        public Node getNode(int id) {
+            return graph.getNode(id);
+        }
+
+        @Override
+        public String getName(int id) {
+            return graph.getNode(id).getName();
+        }
+
+        @Override
+        public List<String> getLevels(int id) {
+            // the levels of a node may change after compilation
+            return Collections.unmodifiableList(new ArrayList<>(graph.getNode(id).getLevels()));
+        }
+
+        @Override
+        public NodeLinkType getLinkType(int id) {
+            return graph.getNode(id).getLinkType();
+        }
+
+        @Override
+        public Distribution getDistribution(int id) {
+            return graph.getNode(id).getDistribution();
+        }
+    }
+
+    private static final class SnapshotSource implements Source {
+
+        private final BayesNetSnapshot snapshot;
+
+        SnapshotSource(BayesNetSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public int size() {
+            return snapshot.size();
+        }
+
+        @Override
+        public int[] getTopologicalOrder() {
+            return snapshot.getTopologicalOrder();
+        }
+
+        @Override
+        public int getParentCount(int id) {
+            return snapshot.getParentCount(id);
+        }
+
+        @Override
+        public int getParent(int id, int index) {
+            return snapshot.getParent(id, index);
+        }
+
+        @Override
+        public Node getNode(int id) {
+            return null;
+        }
+
+        @Override
+        public String getName(int id) {
+            return snapshot.getNode(id).getName();
+        }
+
+        @Override
+        public List<String> getLevels(int id) {
+            return snapshot.getNode(id).getLevels();
+        }
+
+        @Override
+        public NodeLinkType getLinkType(int id) {
+            return snapshot.getNode(id).getLinkType();
+        }
+
+        @Override
+        public Distribution getDistribution(int id) {
+            return snapshot.getNode(id).getDistribution();
+        }
+    }
+}
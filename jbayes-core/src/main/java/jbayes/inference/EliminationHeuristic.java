@@ -0,0 +1,94 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.BitSet;
+
+/**
+ * The class represents the greedy heuristic used for choosing the next
+ * variable to eliminate.
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public enum EliminationHeuristic {
+
+    /**
+     * Eliminates the variable that adds the least count of fill-in edges.
+     */
+    MIN_FILL {
+                @Override
+                double cost(BitSet[] adjacency, int[] cards, int var) {
+                    long fill = 0;
+                    BitSet neighbours = adjacency[var];
+                    for (int a = neighbours.nextSetBit(0); a >= 0; a = neighbours.nextSetBit(a + 1)) {
+                        BitSet missing = (BitSet) neighbours.clone();
+                        missing.andNot(adjacency[a]);
+                        missing.clear(a);
+                        fill += missing.cardinality();
+                    }
+                    return fill / 2;
+                }
+            },
+    /**
+     * Eliminates the variable that has the least count of neighbours.
+     */
+    MIN_DEGREE {
+                @Override
+                double cost(BitSet[] adjacency, int[] cards, int var) {
+                    return adjacency[var].cardinality();
+                }
+            },
+    /**
+     * Eliminates the variable that creates the smallest table, i.e. the least
+     * product of cardinalities of the variable and its neighbours.
+     */
+    MIN_WEIGHT {
+                @Override
+                double cost(BitSet[] adjacency, int[] cards, int var) {
+                    return weight(adjacency, cards, var);
+                }
+            };
+
+    /**
+     * Returns cost of elimination of the variable in the current graph.
+     *
+     * @param adjacency Neighbours of each variable
+     * @param cards Cardinality of each variable
+     * @param var Variable
+     * @return Cost of elimination
+     */
+    abstract double cost(BitSet[] adjacency, int[] cards, int var);
+
+    /**
+     * Returns logarithm of the size of the table created by elimination of the
+     * variable.
+     *
+     * @param adjacency Neighbours of each variable
+     * @param cards Cardinality of each variable
+     * @param var Variable
+     * @return Logarithm of the table size
+     */
+    static double weight(BitSet[] adjacency, int[] cards, int var) {
+        double weight = Math.log(cards[var]);
+        BitSet neighbours = adjacency[var];
+        for (int a = neighbours.nextSetBit(0); a >= 0; a = neighbours.nextSetBit(a + 1)) {
+            weight += Math.log(cards[a]);
+        }
+        return weight;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Helper class for finding elimination orders on the moral graph of a
+ * {@link CompiledNetwork}.
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+final class EliminationOrdering {
+
+    private EliminationOrdering() {
+    }
+
+    /**
+     * Returns the graph, in which two variables are adjacent if they appear
+     * together in one of the specified scopes.
+     *
+     * @param size Count of variables
+     * @param scopes Variables of each factor
+     * @return Neighbours of each variable
+     */
+    static BitSet[] interactionGraph(int size, Collection<int[]> scopes) {
+        BitSet[] adjacency = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            adjacency[i] = new BitSet(size);
+        }
+        for (int[] scope : scopes) {
+            for (int a : scope) {
+                for (int b : scope) {
+                    if (a != b) {
+                        adjacency[a].set(b);
+                    }
+                }
+            }
+        }
+        return adjacency;
+    }
+
+    /**
+     * Returns the moral graph of the network.
+     *
+     * @param network Compiled network
+     * @return Neighbours of each variable
+     */
+    static BitSet[] moralGraph(CompiledNetwork network) {
+        List<int[]> families = new ArrayList<>();
+        for (int i = 0; i < network.size(); i++) {
+            families.add(network.getFamily(i).getVariables());
+        }
+        return interactionGraph(network.size(), families);
+    }
+
+    /**
+     * Greedily eliminates the specified variables from the graph. The graph is
+     * modified: eliminated variables are disconnected and fill-in edges are
+     * added. Ties of the heuristic are broken by the size of the created table.
+     *
+     * @param adjacency Neighbours of each variable
+     * @param cards Cardinality of each variable
+     * @param variables Variables to eliminate
+     * @param heuristic Heuristic
+     * @return Elimination order
+     */
+    static int[] eliminate(BitSet[] adjacency, int[] cards, BitSet variables, EliminationHeuristic heuristic) {
+        BitSet remaining = (BitSet) variables.clone();
+        int[] order = new int[remaining.cardinality()];
+        for (int step = 0; step < order.length; step++) {
+            int best = -1;
+            double bestCost = Double.MAX_VALUE;
+            double bestWeight = Double.MAX_VALUE;
+            for (int v = remaining.nextSetBit(0); v >= 0; v = remaining.nextSetBit(v + 1)) {
+                double cost = heuristic.cost(adjacency, cards, v);
+                if (cost > bestCost) {
+                    continue;
+                }
+                double weight = EliminationHeuristic.weight(adjacency, cards, v);
+                if (cost < bestCost || weight < bestWeight) {
+                    best = v;
+                    bestCost = cost;
+                    bestWeight = weight;
+                }
+            }
+            order[step] = best;
+            eliminate(adjacency, best);
+            remaining.clear(best);
+        }
+        return order;
+    }
+
+    /**
+     * Connects all neighbours of the variable and disconnects the variable.
+     *
+     * @param adjacency Neighbours of each variable
+     * @param var Variable
+     */
+    static void eliminate(BitSet[] adjacency, int var) {
+        BitSet neighbours = adjacency[var];
+        for (int a = neighbours.nextSetBit(0); a >= 0; a = neighbours.nextSetBit(a + 1)) {
+            adjacency[a].or(neighbours);
+            adjacency[a].clear(a);
+            adjacency[a].clear(var);
+        }
+        adjacency[var] = new BitSet(adjacency.length);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.List;
+import jbayes.core.BayesNet;
+import jbayes.core.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exact inferer that picks the cheapest exact algorithm for the structure of
+ * the network.
+ *
+ * <p>
+ * Singly connected networks are queried by {@link PolytreeInferer}, which
+ * needs no triangulation and resends only messages affected by changed
+ * evidence. Other networks fall back to {@link JunctionTreeInferer}. The choice
+ * is made again whenever the network is compiled again, e.g. after a link
+ * closes a loop.
+ * </p>
+ *
+ * <p>
+ * The evidence of the query is passed to the chosen inferer as an
+ * {@link jbayes.core.Evidence}, so the evidence of the nodes is not changed.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class ExactInferer extends BayesInfererBase implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExactInferer.class);
+
+    private BayesInfererBase inferer;
+
+    public ExactInferer(BayesNet network) {
+        super(network);
+    }
+
+    /**
+     * Returns the inferer chosen for the current structure of the network.
+     *
+     * @return {@link PolytreeInferer}, {@link JunctionTreeInferer} or null
+     * before the first query
+     */
+    public IBayesInferer getInferer() {
+        return inferer;
+    }
+
+    @Override
+    public void close() {
+        if (inferer instanceof JunctionTreeInferer) {
+            ((JunctionTreeInferer) inferer).close();
+        }
+    }
+
+    @Override
+    protected void compile() {
+        boolean isPolytree = PolytreeInferer.isSinglyConnected(getNetwork());
+        if (isPolytree && !(inferer instanceof PolytreeInferer)) {
+            close();
+            inferer = new PolytreeInferer(getNetwork());
+        } else if (!isPolytree && !(inferer instanceof JunctionTreeInferer)) {
+            inferer = new JunctionTreeInferer(getNetwork());
+        }
+        LOGGER.debug("Network {} is queried by {}", getNetwork(), inferer.getClass().getSimpleName());
+    }
+
+    @Override
+    protected void infer(List<Node> nodes) {
+        inferer.inferNodes(getEvidence(), nodes);
+    }
+}
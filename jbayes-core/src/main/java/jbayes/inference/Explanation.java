@@ -0,0 +1,94 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.Collections;
+import java.util.Map;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+
+/**
+ * The class represents the jointly most probable assignment of levels to a
+ * set of nodes given the evidence.
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public final class Explanation {
+
+    private final Map<Node, String> levels;
+    private final double probability;
+    private final double probabilityOfEvidence;
+
+    Explanation(Map<Node, String> levels, double probability, double probabilityOfEvidence) {
+        this.levels = Collections.unmodifiableMap(levels);
+        this.probability = probability;
+        this.probabilityOfEvidence = probabilityOfEvidence;
+    }
+
+    /**
+     * Returns the level of each explained node.
+     *
+     * @return Levels by node
+     */
+    public Map<Node, String> getLevels() {
+        return levels;
+    }
+
+    /**
+     * Returns the level of the specified node.
+     *
+     * @param node Explained node
+     * @return Level
+     */
+    public String getLevel(Node node) {
+        Ensure.IsTrue(levels.containsKey(node), String.format("Node %s is not explained", node));
+        return levels.get(node);
+    }
+
+    /**
+     * Returns the joint probability of the assignment and the evidence.
+     *
+     * @return Joint probability
+     */
+    public double getProbability() {
+        return probability;
+    }
+
+    /**
+     * Returns the probability of the evidence.
+     *
+     * @return Probability of evidence
+     */
+    public double getProbabilityOfEvidence() {
+        return probabilityOfEvidence;
+    }
+
+    /**
+     * Returns the probability of the assignment given the evidence.
+     *
+     * @return Posterior probability
+     */
+    public double getPosteriorProbability() {
+        return probability / probabilityOfEvidence;
+    }
+
+    @Override
+    public String toString() {
+        return "Explanation{" + "levels=" + levels + ", probability=" + probability + '}';
+    }
+}
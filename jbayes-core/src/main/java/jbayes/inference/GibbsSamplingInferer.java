@@ -0,0 +1,571 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import jbayes.core.BayesNet;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Approximate inferer that estimates marginals by Gibbs sampling.
+ *
+ * <p>
+ * Each unobserved node is resampled from its distribution given its Markov
+ * blanket, i.e. its parents, children and parents of its children, while
+ * unobserved deterministic nodes follow their parents. Zeros in other
+ * conditional probability tables may still split the state space, in which
+ * case the chains disagree and R-hat stays large. Several
+ * chains run in parallel, one per task of a {@link ForkJoinPool}. After the
+ * burn-in, every n-th sweep (thinning) is recorded. Sampling is done in rounds
+ * and stops as soon as the potential scale reduction factor (R-hat) and the
+ * effective sample size of each requested node reach their targets, or when
+ * the sample budget is exhausted.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class GibbsSamplingInferer extends BayesInfererBase {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GibbsSamplingInferer.class);
+
+    /**
+     * Count of attempts to find an initial state consistent with evidence.
+     */
+    private static final int INITIALIZATION_ATTEMPTS = 10_000;
+
+    private int chainCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private int burnIn = 1_000;
+    private int thinning = 1;
+    private int sampleCount = 10_000;
+    private int roundSize = 1_000;
+    private double targetRHat = 1.01;
+    private double targetEffectiveSampleSize = 1_000;
+    private long seed = System.nanoTime();
+    private ForkJoinPool pool;
+    private CompiledNetwork compiled;
+    private boolean[] deterministic;
+    private double[] rHats;
+    private double[] effectiveSampleSizes;
+    private int drawnSampleCount;
+
+    public GibbsSamplingInferer(BayesNet network) {
+        super(network);
+    }
+
+    public int getChainCount() {
+        return chainCount;
+    }
+
+    /**
+     * Sets count of chains, which run in parallel.
+     *
+     * @param chainCount Count of chains (at least two)
+     */
+    public void setChainCount(int chainCount) {
+        Ensure.GreaterThanOrEquals(chainCount, 2, "chainCount");
+        this.chainCount = chainCount;
+    }
+
+    public int getBurnIn() {
+        return burnIn;
+    }
+
+    /**
+     * Sets count of sweeps discarded at the start of each chain.
+     *
+     * @param burnIn Count of discarded sweeps
+     */
+    public void setBurnIn(int burnIn) {
+        Ensure.GreaterThanOrEquals(burnIn, 0, "burnIn");
+        this.burnIn = burnIn;
+    }
+
+    public int getThinning() {
+        return thinning;
+    }
+
+    /**
+     * Sets count of sweeps per recorded sample.
+     *
+     * @param thinning Count of sweeps per sample
+     */
+    public void setThinning(int thinning) {
+        Ensure.GreaterThan(thinning, 0, "thinning");
+        this.thinning = thinning;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Sets the maximal count of recorded samples per chain.
+     *
+     * @param sampleCount Sample budget per chain
+     */
+    public void setSampleCount(int sampleCount) {
+        Ensure.GreaterThan(sampleCount, 1, "sampleCount");
+        this.sampleCount = sampleCount;
+    }
+
+    public int getRoundSize() {
+        return roundSize;
+    }
+
+    /**
+     * Sets count of samples per chain recorded between two convergence checks.
+     *
+     * @param roundSize Count of samples per round
+     */
+    public void setRoundSize(int roundSize) {
+        Ensure.GreaterThan(roundSize, 1, "roundSize");
+        this.roundSize = roundSize;
+    }
+
+    public double getTargetRHat() {
+        return targetRHat;
+    }
+
+    /**
+     * Sets R-hat, which is low enough to stop sampling. Zero means that the
+     * whole sample budget is always drawn.
+     *
+     * @param targetRHat Target R-hat
+     */
+    public void setTargetRHat(double targetRHat) {
+        Ensure.GreaterThanOrEquals(targetRHat, 0.0, "targetRHat");
+        this.targetRHat = targetRHat;
+    }
+
+    public double getTargetEffectiveSampleSize() {
+        return targetEffectiveSampleSize;
+    }
+
+    /**
+     * Sets effective sample size, which is large enough to stop sampling.
+     *
+     * @param targetEffectiveSampleSize Target effective sample size
+     */
+    public void setTargetEffectiveSampleSize(double targetEffectiveSampleSize) {
+        Ensure.GreaterThanOrEquals(targetEffectiveSampleSize, 0.0, "targetEffectiveSampleSize");
+        this.targetEffectiveSampleSize = targetEffectiveSampleSize;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool != null ? pool : ForkJoinPool.commonPool();
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns count of samples per chain recorded by the last query.
+     *
+     * @return Count of samples per chain
+     */
+    public int getDrawnSampleCount() {
+        return drawnSampleCount;
+    }
+
+    /**
+     * Returns the potential scale reduction factor (R-hat) of the node
+     * computed by the last query. Values close to one mean that the chains
+     * agree.
+     *
+     * @param node Node
+     * @return R-hat or NaN if the node was not requested by the last query
+     */
+    public double getRHat(Node node) {
+        return rHats == null ? Double.NaN : rHats[compiled.getId(node)];
+    }
+
+    /**
+     * Returns the effective sample size of the node computed by the last
+     * query over all chains.
+     *
+     * @param node Node
+     * @return Effective sample size or NaN if the node was not requested by
+     * the last query
+     */
+    public double getEffectiveSampleSize(Node node) {
+        return effectiveSampleSizes == null ? Double.NaN : effectiveSampleSizes[compiled.getId(node)];
+    }
+
+    @Override
+    protected void compile() {
+        compiled = CompiledNetwork.compile(getNetwork());
+        deterministic = new boolean[compiled.size()];
+        for (int var = 0; var < compiled.size(); var++) {
+            deterministic[var] = Arrays.stream(compiled.getFamily(var).getValues()).allMatch(x -> x == 0.0 || x == 1.0);
+        }
+    }
+
+    @Override
+    protected void infer(List<Node> nodes) {
+        int[] evidence = getEvidence(compiled);
+        int[] targets = nodes.stream().mapToInt(x -> compiled.getId(x)).toArray();
+        Blanket[] blankets = new Blanket[compiled.size()];
+        for (int var = 0; var < blankets.length; var++) {
+            if (evidence[var] == -1 && !deterministic[var]) {
+                blankets[var] = new Blanket(var, evidence);
+            }
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Chain> chains = new ArrayList<>();
+        for (int i = 0; i < chainCount; i++) {
+            chains.add(new Chain(evidence, blankets, targets, random.split()));
+        }
+
+        rHats = new double[compiled.size()];
+        effectiveSampleSizes = new double[compiled.size()];
+        Arrays.fill(rHats, Double.NaN);
+        Arrays.fill(effectiveSampleSizes, Double.NaN);
+        drawnSampleCount = 0;
+        boolean converged = false;
+        while (drawnSampleCount < sampleCount && !converged) {
+            int count = Math.min(roundSize, sampleCount - drawnSampleCount);
+            run(chains, count);
+            drawnSampleCount += count;
+
+            converged = targetRHat > 0.0;
+            for (int t = 0; t < targets.length; t++) {
+                rHats[targets[t]] = computeRHat(chains, t);
+                converged &= rHats[targets[t]] <= targetRHat;
+            }
+            // autocorrelations are expensive, so they are computed only for agreeing chains
+            if (converged || drawnSampleCount == sampleCount) {
+                for (int t = 0; t < targets.length; t++) {
+                    effectiveSampleSizes[targets[t]] = computeEffectiveSampleSize(chains, t);
+                    converged &= effectiveSampleSizes[targets[t]] >= targetEffectiveSampleSize;
+                }
+            }
+        }
+        LOGGER.debug("Drawn {} samples in each of {} chains", drawnSampleCount, chainCount);
+
+        for (int t = 0; t < targets.length; t++) {
+            double[] marginal = new double[compiled.getCard(targets[t])];
+            for (Chain chain : chains) {
+                for (int i = 0; i < chain.length; i++) {
+                    marginal[chain.traces[t][i]] += 1.0;
+                }
+            }
+            for (int state = 0; state < marginal.length; state++) {
+                marginal[state] /= chainCount * (double) drawnSampleCount;
+            }
+            setInference(nodes.get(t), marginal);
+        }
+    }
+
+    private void run(List<Chain> chains, int count) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Chain chain : chains) {
+            tasks.add(() -> {
+                chain.run(count);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : getPool().invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Sampling has been interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the largest R-hat (Gelman-Rubin) of the indicators of the levels
+     * of the target.
+     */
+    private double computeRHat(List<Chain> chains, int target) {
+        double result = 1.0;
+        for (int state = 0; state < compiled.getCard(chains.get(0).targets[target]); state++) {
+            double[] moments = computeMoments(chains, target, state);
+            if (moments[0] > 0.0) {
+                result = Math.max(result, Math.sqrt(moments[1] / moments[0]));
+            } else if (moments[1] > 0.0) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the smallest effective sample size of the indicators of the
+     * levels of the target. Autocorrelations are combined over chains and
+     * summed in pairs up to the first negative pair (Geyer).
+     */
+    private double computeEffectiveSampleSize(List<Chain> chains, int target) {
+        int m = chains.size();
+        int n = drawnSampleCount;
+        double result = m * (double) n;
+        for (int state = 0; state < compiled.getCard(chains.get(0).targets[target]); state++) {
+            double variance = computeMoments(chains, target, state)[1];
+            if (variance == 0.0) {
+                continue;
+            }
+            double time = -1.0;
+            for (int lag = 0; lag + 1 < n; lag += 2) {
+                double pair = computeAutocorrelation(chains, target, state, lag, variance)
+                        + computeAutocorrelation(chains, target, state, lag + 1, variance);
+                if (pair < 0.0) {
+                    break;
+                }
+                time += 2.0 * pair;
+            }
+            // antithetic chains may give more than m * n, which is capped as in Stan
+            result = Math.min(result, m * (double) n / Math.max(time, 1.0 / Math.log10(m * (double) n)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the mean within-chain variance and the pooled variance estimate
+     * of the indicator of the level of the target.
+     */
+    private double[] computeMoments(List<Chain> chains, int target, int state) {
+        int m = chains.size();
+        int n = drawnSampleCount;
+        double[] means = new double[m];
+        double meanOfMeans = 0.0;
+        double within = 0.0;
+        for (int j = 0; j < m; j++) {
+            int[] trace = chains.get(j).traces[target];
+            int hits = 0;
+            for (int i = 0; i < n; i++) {
+                hits += trace[i] == state ? 1 : 0;
+            }
+            means[j] = hits / (double) n;
+            meanOfMeans += means[j] / m;
+            within += hits * (1.0 - means[j]) * (1.0 - means[j]) / (n - 1) / m
+                    + (n - hits) * means[j] * means[j] / (n - 1) / m;
+        }
+        double between = 0.0;
+        for (int j = 0; j < m; j++) {
+            between += (means[j] - meanOfMeans) * (means[j] - meanOfMeans) * n / (m - 1);
+        }
+        return new double[]{within, (n - 1.0) / n * within + between / n};
+    }
+
+    private double computeAutocorrelation(List<Chain> chains, int target, int state, int lag, double variance) {
+        int n = drawnSampleCount;
+        double variogram = 0.0;
+        for (Chain chain : chains) {
+            int[] trace = chain.traces[target];
+            for (int i = lag; i < n; i++) {
+                variogram += (trace[i] == state) != (trace[i - lag] == state) ? 1.0 : 0.0;
+            }
+        }
+        return 1.0 - variogram / (chains.size() * (double) (n - lag)) / (2.0 * variance);
+    }
+
+    /**
+     * Returns the level of the deterministic variable given its parents.
+     */
+    private int determine(int var, int[] states) {
+        double[] cpt = compiled.getFamily(var).getValues();
+        int offset = compiled.getColumnOffset(var, states);
+        int state = 0;
+        while (cpt[offset + state] == 0.0 && state < compiled.getCard(var) - 1) {
+            state++;
+        }
+        return state;
+    }
+
+    /**
+     * The class describes what has to be evaluated to resample a variable
+     * given its Markov blanket. Unobserved deterministic nodes (e.g. AND/OR)
+     * are not sampled, since single-site updates could never change them, but
+     * follow their parents instead.
+     */
+    private final class Blanket {
+
+        /**
+         * Unobserved deterministic descendants in topological order, which
+         * are recomputed together with the variable.
+         */
+        private final int[] dependents;
+        /**
+         * Variables whose conditional probabilities depend on the variable or
+         * its dependents.
+         */
+        private final int[] factors;
+
+        Blanket(int var, int[] evidence) {
+            BitSet dependentSet = new BitSet();
+            BitSet factorSet = new BitSet();
+            factorSet.set(var);
+            for (int next = var; next != -1; next = dependentSet.nextSetBit(next + 1)) {
+                for (int child : compiled.getChildren(next)) {
+                    if (evidence[child] == -1 && deterministic[child]) {
+                        dependentSet.set(child);
+                    } else {
+                        factorSet.set(child);
+                    }
+                }
+            }
+            this.dependents = dependentSet.stream().toArray();
+            this.factors = factorSet.stream().toArray();
+        }
+    }
+
+    /**
+     * The class represents a single Markov chain and the recorded levels of
+     * the requested nodes.
+     */
+    private final class Chain {
+
+        private final int[] evidence;
+        private final Blanket[] blankets;
+        private final int[] targets;
+        private final SplittableRandom random;
+        private final int[] states;
+        private final double[] weights;
+        private final int[][] traces;
+        private int length;
+        private boolean started;
+
+        Chain(int[] evidence, Blanket[] blankets, int[] targets, SplittableRandom random) {
+            this.evidence = evidence;
+            this.blankets = blankets;
+            this.targets = targets;
+            this.random = random;
+            this.states = new int[compiled.size()];
+            this.weights = new double[Arrays.stream(compiled.getCards()).max().orElse(1)];
+            this.traces = new int[targets.length][0];
+        }
+
+        void run(int count) {
+            if (!started) {
+                initialize();
+                for (int i = 0; i < burnIn; i++) {
+                    sweep();
+                }
+                started = true;
+            }
+            if (traces[0].length < length + count) {
+                for (int t = 0; t < traces.length; t++) {
+                    traces[t] = Arrays.copyOf(traces[t], Math.max(length + count, traces[t].length * 2));
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < thinning; j++) {
+                    sweep();
+                }
+                for (int t = 0; t < targets.length; t++) {
+                    traces[t][length] = states[targets[t]];
+                }
+                length++;
+            }
+        }
+
+        /**
+         * Finds a state consistent with evidence by forward sampling.
+         */
+        private void initialize() {
+            for (int attempt = 0; attempt < INITIALIZATION_ATTEMPTS; attempt++) {
+                boolean consistent = true;
+                for (int var = 0; var < states.length && consistent; var++) {
+                    double[] cpt = compiled.getFamily(var).getValues();
+                    int offset = compiled.getColumnOffset(var, states);
+                    if (evidence[var] != -1) {
+                        states[var] = evidence[var];
+                        consistent = cpt[offset + evidence[var]] > 0.0;
+                    } else {
+                        states[var] = draw(var, cpt, offset, compiled.getCard(var));
+                    }
+                }
+                if (consistent) {
+                    return;
+                }
+            }
+            throw new IllegalStateException("Initial state consistent with evidence has not been found");
+        }
+
+        private void sweep() {
+            for (int var = 0; var < states.length; var++) {
+                Blanket blanket = blankets[var];
+                if (blanket == null) {
+                    continue;
+                }
+                int card = compiled.getCard(var);
+                for (int state = 0; state < card; state++) {
+                    states[var] = state;
+                    for (int dependent : blanket.dependents) {
+                        states[dependent] = determine(dependent, states);
+                    }
+                    double weight = 1.0;
+                    for (int i = 0; i < blanket.factors.length && weight > 0.0; i++) {
+                        int factor = blanket.factors[i];
+                        weight *= compiled.getFamily(factor).getValues()[compiled.getColumnOffset(factor, states) + states[factor]];
+                    }
+                    weights[state] = weight;
+                }
+                states[var] = draw(var, weights, 0, card);
+                for (int dependent : blanket.dependents) {
+                    states[dependent] = determine(dependent, states);
+                }
+            }
+        }
+
+        private int draw(int var, double[] values, int offset, int card) {
+            double sum = 0.0;
+            for (int i = 0; i < card; i++) {
+                sum += values[offset + i];
+            }
+            if (sum <= 0.0) {
+                // the weights of the Markov blanket may underflow for many observed children
+                throw new IllegalStateException(String.format(
+                        "All levels of %s have zero weight given its Markov blanket", compiled.describe(var)));
+            }
+            double u = random.nextDouble() * sum;
+            int state = 0;
+            double cumulative = values[offset];
+            while (u >= cumulative && state < card - 1) {
+                cumulative += values[offset + ++state];
+            }
+            return state;
+        }
+    }
+}
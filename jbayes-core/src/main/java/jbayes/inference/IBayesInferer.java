@@ -19,6 +19,7 @@ package jbayes.inference;
 
 import java.util.Collection;
 import jbayes.core.BayesNet;
+import jbayes.core.Evidence;
 import jbayes.core.Node;
 
 /**
@@ -61,4 +62,31 @@ public interface IBayesInferer {
      */
     void inferNodes(Node... nodes);
 
+    /**
+     * Eliminates marginal probability for all nodes of the network given the
+     * specified evidence. Inferers running inside of JVM read the evidence
+     * without changing the evidence of the nodes; by default the evidence is
+     * set to the network before the query.
+     *
+     * @param evidence Evidence indexed by node id
+     */
+    default void inferAllNodes(Evidence evidence) {
+        getNetwork().setEvidence(evidence);
+        inferAllNodes();
+    }
+
+    /**
+     * Eliminates marginal probability for the specified nodes of the network
+     * given the specified evidence. Inferers running inside of JVM read the
+     * evidence without changing the evidence of the nodes; by default the
+     * evidence is set to the network before the query.
+     *
+     * @param evidence Evidence indexed by node id
+     * @param nodes
+     */
+    default void inferNodes(Evidence evidence, Collection<Node> nodes) {
+        getNetwork().setEvidence(evidence);
+        inferNodes(nodes);
+    }
+
 }
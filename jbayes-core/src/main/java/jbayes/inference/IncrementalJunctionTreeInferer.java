@@ -0,0 +1,234 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import jbayes.core.BayesNet;
+import jbayes.core.Factor;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exact inferer for streams of small evidence changes, which runs
+ * Shenoy-Shafer propagation on a junction tree and keeps messages between
+ * queries.
+ *
+ * <p>
+ * The inferer remembers the evidence of the last query. When a finding is
+ * added, changed or retracted, only the potential of the clique holding the
+ * finding is rebuilt and only the messages pointing away from that clique
+ * become stale. A query sends again just the stale messages its nodes depend
+ * on. Since messages are never divided out, retraction needs no
+ * re-initialization of the tree.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class IncrementalJunctionTreeInferer extends BayesInfererBase {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IncrementalJunctionTreeInferer.class);
+
+    private final EliminationHeuristic heuristic;
+    private CompiledNetwork compiled;
+    private JunctionTree tree;
+    private Factor[] potentials;
+    /**
+     * Message 2 * c goes from clique c to its parent, message 2 * c + 1 goes
+     * from the parent to clique c.
+     */
+    private Factor[] messages;
+    private boolean[] stale;
+    private int[] evidence;
+    private int sentMessageCount;
+
+    public IncrementalJunctionTreeInferer(BayesNet network) {
+        this(network, EliminationHeuristic.MIN_FILL);
+    }
+
+    public IncrementalJunctionTreeInferer(BayesNet network, EliminationHeuristic heuristic) {
+        super(network);
+        Ensure.NotNull(heuristic, "heuristic");
+
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Returns count of messages sent by the last query.
+     *
+     * @return Count of messages
+     */
+    public int getSentMessageCount() {
+        return sentMessageCount;
+    }
+
+    @Override
+    protected void compile() {
+        compiled = CompiledNetwork.compile(getNetwork());
+        tree = JunctionTree.build(compiled, heuristic);
+        potentials = new Factor[tree.getCliqueCount()];
+        messages = new Factor[2 * tree.getCliqueCount()];
+        stale = new boolean[messages.length];
+        Arrays.fill(stale, true);
+        evidence = new int[compiled.size()];
+        Arrays.fill(evidence, -1);
+    }
+
+    @Override
+    protected void infer(List<Node> nodes) {
+        int[] current = getEvidence(compiled);
+        for (int var = 0; var < current.length; var++) {
+            if (current[var] != evidence[var]) {
+                int clique = tree.getSmallestClique(var);
+                potentials[clique] = null;
+                invalidate(clique);
+            }
+        }
+        evidence = current;
+
+        sentMessageCount = 0;
+        for (Node node : nodes) {
+            int var = compiled.getId(node);
+            int clique = tree.getSmallestClique(var);
+            Factor marginal = collect(clique, -1).marginalize(new int[]{var});
+            Ensure.GreaterThan(marginal.normalize(), 0.0, "Probability of evidence");
+            setInference(node, marginal.getValues());
+        }
+        LOGGER.debug("Sent {} messages", sentMessageCount);
+    }
+
+    /**
+     * Returns the potential of the clique with its evidence entered.
+     */
+    private Factor getPotential(int clique) {
+        if (potentials[clique] == null) {
+            Factor potential = tree.createPotential(clique);
+            for (int var : tree.getClique(clique)) {
+                if (evidence[var] != -1 && tree.getSmallestClique(var) == clique) {
+                    potential.observe(var, evidence[var]);
+                }
+            }
+            potentials[clique] = potential;
+        }
+        return potentials[clique];
+    }
+
+    /**
+     * Returns the product of the clique potential and the messages sent to
+     * the clique by all neighbours except the specified one, which is -1 for
+     * none.
+     */
+    private Factor collect(int clique, int skippedNeighbour) {
+        for (int message : incoming(clique, skippedNeighbour)) {
+            send(message);
+        }
+        Factor result = getPotential(clique).copy();
+        for (int message : incoming(clique, skippedNeighbour)) {
+            result.multiplyInPlace(messages[message]);
+        }
+        return result;
+    }
+
+    private int[] incoming(int clique, int skippedNeighbour) {
+        int[] children = tree.getChildren(clique);
+        int parent = tree.getParent(clique);
+        int[] result = new int[children.length + 1];
+        int count = 0;
+        for (int child : children) {
+            if (child != skippedNeighbour) {
+                result[count++] = 2 * child;
+            }
+        }
+        if (parent != -1 && parent != skippedNeighbour) {
+            result[count++] = 2 * clique + 1;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Sends the message if it is stale, sending first the stale messages it
+     * depends on.
+     */
+    private void send(int message) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(message);
+        while (!stack.isEmpty()) {
+            int current = stack.peek();
+            if (!stale[current]) {
+                stack.pop();
+                continue;
+            }
+            int clique = current / 2;
+            int source = current % 2 == 0 ? clique : tree.getParent(clique);
+            int target = current % 2 == 0 ? tree.getParent(clique) : clique;
+            boolean ready = true;
+            for (int input : incoming(source, target)) {
+                if (stale[input]) {
+                    stack.push(input);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                Factor result = collect(source, target).marginalize(tree.getSeparator(clique));
+                result.normalize();
+                messages[current] = result;
+                stale[current] = false;
+                sentMessageCount++;
+                stack.pop();
+            }
+        }
+    }
+
+    /**
+     * Marks stale all messages pointing away from the clique. Messages
+     * depending on a stale message are always stale, so marking stops at
+     * messages, which are already stale.
+     */
+    private void invalidate(int clique) {
+        Deque<Integer> queue = new ArrayDeque<>();
+        addOutgoing(clique, -1, queue);
+        while (!queue.isEmpty()) {
+            int message = queue.poll();
+            if (!stale[message]) {
+                stale[message] = true;
+                int c = message / 2;
+                if (message % 2 == 0) {
+                    addOutgoing(tree.getParent(c), c, queue);
+                } else {
+                    addOutgoing(c, tree.getParent(c), queue);
+                }
+            }
+        }
+    }
+
+    private void addOutgoing(int clique, int skippedNeighbour, Deque<Integer> out) {
+        for (int child : tree.getChildren(clique)) {
+            if (child != skippedNeighbour) {
+                out.add(2 * child + 1);
+            }
+        }
+        int parent = tree.getParent(clique);
+        if (parent != -1 && parent != skippedNeighbour) {
+            out.add(2 * clique);
+        }
+    }
+}
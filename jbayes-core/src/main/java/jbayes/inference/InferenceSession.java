@@ -0,0 +1,225 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.Arrays;
+import jbayes.core.Evidence;
+import jbayes.util.Ensure;
+
+/**
+ * Evidence and posterior buffers of one client of a {@link CompiledModel}.
+ *
+ * <p>
+ * Posteriors are computed lazily by the first request after the evidence has
+ * changed, with one upward and one downward pass over the circuit of the
+ * model. A session is not thread-safe, but it is cheap, so each thread should
+ * create its own one. Buffers hold numbers in the {@link NumericMode} of the
+ * model.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public final class InferenceSession {
+
+    private final CompiledModel model;
+    private final int[] evidence;
+    private final double[] values;
+    private final double[] derivatives;
+    private final float[] floatValues;
+    private final float[] floatDerivatives;
+    private double probabilityOfEvidence = Double.NaN;
+    private double logProbabilityOfEvidence = Double.NaN;
+    private boolean inferred = false;
+
+    InferenceSession(CompiledModel model) {
+        ArithmeticCircuit circuit = model.getCircuit();
+        this.model = model;
+        this.evidence = new int[model.size()];
+        switch (model.getNumericMode()) {
+            case FLOAT:
+                this.values = null;
+                this.derivatives = null;
+                this.floatValues = circuit.createFloatValues();
+                this.floatDerivatives = new float[circuit.size()];
+                break;
+            case LOG:
+                this.values = circuit.createLogValues();
+                this.derivatives = circuit.createDerivatives();
+                this.floatValues = null;
+                this.floatDerivatives = null;
+                break;
+            default:
+                this.values = circuit.createValues();
+                this.derivatives = circuit.createDerivatives();
+                this.floatValues = null;
+                this.floatDerivatives = null;
+        }
+        Arrays.fill(evidence, -1);
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    /**
+     * Sets the observed level of the node.
+     *
+     * @param nodeName Node name
+     * @param level Observed level
+     */
+    public void setEvidence(String nodeName, String level) {
+        int var = model.getId(nodeName);
+        int state = model.getLevels(nodeName).indexOf(level);
+        Ensure.IsTrue(state != -1, String.format("Node %s doesn't contain level %s", nodeName, level));
+        evidence[var] = state;
+        inferred = false;
+    }
+
+    /**
+     * Sets the specified evidence instead of the current one. The evidence is
+     * indexed by the ids of the nodes of the compiled network.
+     *
+     * @param evidence Evidence
+     */
+    public void setEvidence(Evidence evidence) {
+        Ensure.NotNull(evidence, "evidence");
+        Ensure.AreEquals(evidence.size(), model.getNodeNames().size(), "Size of evidence");
+
+        Arrays.fill(this.evidence, -1);
+        for (int id = 0; id < evidence.size(); id++) {
+            int level = evidence.getLevel(id);
+            if (level != -1) {
+                int var = model.getVar(id);
+                Ensure.LowerThan(level, model.getCard(var), "level");
+                this.evidence[var] = level;
+            }
+        }
+        inferred = false;
+    }
+
+    /**
+     * Returns the observed level of the node.
+     *
+     * @param nodeName Node name
+     * @return Observed level or null if the node is not observed
+     */
+    public String getEvidence(String nodeName) {
+        int state = evidence[model.getId(nodeName)];
+        return state == -1 ? null : model.getLevels(nodeName).get(state);
+    }
+
+    public void clearEvidence(String nodeName) {
+        evidence[model.getId(nodeName)] = -1;
+        inferred = false;
+    }
+
+    public void clearEvidences() {
+        Arrays.fill(evidence, -1);
+        inferred = false;
+    }
+
+    /**
+     * Returns the probability of the current evidence.
+     *
+     * @return Probability of evidence
+     */
+    public double getProbabilityOfEvidence() {
+        inferIfNecessary();
+        return probabilityOfEvidence;
+    }
+
+    /**
+     * Returns the natural logarithm of the probability of the current
+     * evidence. Unlike the probability itself, it does not underflow in
+     * {@link NumericMode#LOG}.
+     *
+     * @return Logarithm of probability of evidence
+     */
+    public double getLogProbabilityOfEvidence() {
+        inferIfNecessary();
+        return logProbabilityOfEvidence;
+    }
+
+    /**
+     * Returns the posterior marginal of the node. The marginal of an observed
+     * node puts all probability on the observed level.
+     *
+     * @param nodeName Node name
+     * @return Probability of each level
+     */
+    public double[] getInference(String nodeName) {
+        int var = model.getId(nodeName);
+        inferIfNecessary();
+        double[] result = new double[model.getCard(var)];
+        if (evidence[var] != -1) {
+            result[evidence[var]] = 1.0;
+        } else if (floatDerivatives != null) {
+            model.getCircuit().marginal(var, floatDerivatives, result);
+        } else if (model.getNumericMode() == NumericMode.LOG) {
+            model.getCircuit().marginalLog(var, derivatives, result);
+        } else {
+            model.getCircuit().marginal(var, derivatives, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the posterior probability of the level of the node.
+     *
+     * @param nodeName Node name
+     * @param level Level
+     * @return Posterior probability
+     */
+    public double getInference(String nodeName, String level) {
+        int state = model.getLevels(nodeName).indexOf(level);
+        Ensure.IsTrue(state != -1, String.format("Node %s doesn't contain level %s", nodeName, level));
+        return getInference(nodeName)[state];
+    }
+
+    private void inferIfNecessary() {
+        if (!inferred) {
+            ArithmeticCircuit circuit = model.getCircuit();
+            switch (model.getNumericMode()) {
+                case FLOAT:
+                    probabilityOfEvidence = circuit.evaluate(evidence, floatValues);
+                    logProbabilityOfEvidence = Math.log(probabilityOfEvidence);
+                    break;
+                case LOG:
+                    logProbabilityOfEvidence = circuit.evaluateLog(evidence, values);
+                    probabilityOfEvidence = Math.exp(logProbabilityOfEvidence);
+                    break;
+                default:
+                    probabilityOfEvidence = circuit.evaluate(evidence, values);
+                    logProbabilityOfEvidence = Math.log(probabilityOfEvidence);
+            }
+            Ensure.IsTrue(logProbabilityOfEvidence > Double.NEGATIVE_INFINITY,
+                    "Probability of evidence should be greater than 0.");
+            switch (model.getNumericMode()) {
+                case FLOAT:
+                    circuit.differentiate(floatValues, floatDerivatives);
+                    break;
+                case LOG:
+                    circuit.differentiateLog(values, derivatives);
+                    break;
+                default:
+                    circuit.differentiate(values, derivatives);
+            }
+            inferred = true;
+        }
+    }
+}
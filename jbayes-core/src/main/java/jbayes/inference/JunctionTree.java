@@ -0,0 +1,325 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import jbayes.core.Factor;
+
+/**
+ * The class represents a junction tree (clique tree) of a
+ * {@link CompiledNetwork}.
+ *
+ * <p>
+ * The tree is built by moralization of the network, triangulation of the moral
+ * graph using an {@link EliminationHeuristic} and connection of the maximal cliques by
+ * a maximum weight spanning tree. Cliques of disconnected parts of the network
+ * are joined by empty separators, so the result is always a single tree rooted
+ * at clique 0.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+final class JunctionTree {
+
+    private final CompiledNetwork network;
+    private final int[][] cliques;
+    private final int[] parent;
+    private final int[][] children;
+    private final int[][] separators;
+    private final int[] order;
+    private final int[] home;
+    private final int[] smallest;
+    private final Factor[] initial;
+    private long directThreshold = Long.MAX_VALUE;
+
+    private JunctionTree(CompiledNetwork network, int[][] cliques) {
+        this.network = network;
+        this.cliques = cliques;
+        this.parent = new int[cliques.length];
+        this.children = new int[cliques.length][];
+        this.separators = new int[cliques.length][];
+        this.order = new int[cliques.length];
+        this.home = new int[network.size()];
+        this.smallest = new int[network.size()];
+        this.initial = new Factor[cliques.length];
+    }
+
+    /**
+     * Builds a junction tree of the specified network.
+     *
+     * @param network Compiled network
+     * @param heuristic Heuristic used for triangulation
+     * @return Junction tree
+     */
+    static JunctionTree build(CompiledNetwork network, EliminationHeuristic heuristic) {
+        JunctionTree tree = new JunctionTree(network, triangulate(network, heuristic));
+        tree.connectCliques();
+        tree.assignFamilies();
+        return tree;
+    }
+
+    CompiledNetwork getNetwork() {
+        return network;
+    }
+
+    int getCliqueCount() {
+        return cliques.length;
+    }
+
+    int[] getClique(int clique) {
+        return cliques[clique];
+    }
+
+    /**
+     * Returns the parent of the clique in the tree or -1 for the root.
+     *
+     * @param clique Clique
+     * @return Parent clique
+     */
+    int getParent(int clique) {
+        return parent[clique];
+    }
+
+    /**
+     * Returns the children of the clique in the tree.
+     *
+     * @param clique Clique
+     * @return Child cliques
+     */
+    int[] getChildren(int clique) {
+        return children[clique];
+    }
+
+    /**
+     * Returns variables shared by the clique and its parent.
+     *
+     * @param clique Clique
+     * @return Separator variables
+     */
+    int[] getSeparator(int clique) {
+        return separators[clique];
+    }
+
+    /**
+     * Returns cliques in the order, in which each clique follows its parent.
+     *
+     * @return Cliques in the distribution order
+     */
+    int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the clique, which holds the CPT of the variable.
+     *
+     * @param var Variable
+     * @return Clique
+     */
+    int getHome(int var) {
+        return home[var];
+    }
+
+    /**
+     * Returns the smallest clique that contains the variable.
+     *
+     * @param var Variable
+     * @return Clique
+     */
+    int getSmallestClique(int var) {
+        return smallest[var];
+    }
+
+    /**
+     * Sets the count of entries above which clique potentials are stored
+     * outside the heap. Potentials computed before are released.
+     *
+     * @param directThreshold Count of entries
+     */
+    void setDirectThreshold(long directThreshold) {
+        close();
+        this.directThreshold = directThreshold;
+    }
+
+    /**
+     * Returns a new copy of the clique potential before any evidence is
+     * entered, i.e. the product of all CPTs assigned to the clique. The
+     * product is computed on the first call and kept afterwards.
+     *
+     * @param clique Clique
+     * @return Clique potential
+     */
+    Factor createPotential(int clique) {
+        if (initial[clique] == null) {
+            int[] cards = cardsOf(cliques[clique]);
+            long size = 1;
+            for (int card : cards) {
+                size = Math.multiplyExact(size, (long) card);
+            }
+            Factor potential = Factor.unit(cliques[clique], cards, size > directThreshold);
+            for (int var = 0; var < network.size(); var++) {
+                if (home[var] == clique) {
+                    potential.multiplyInPlace(network.getFamily(var));
+                }
+            }
+            initial[clique] = potential;
+        }
+        return initial[clique].copy();
+    }
+
+    /**
+     * Releases the clique potentials kept by {@link #createPotential(int)}.
+     */
+    void close() {
+        for (int clique = 0; clique < initial.length; clique++) {
+            if (initial[clique] != null) {
+                initial[clique].close();
+                initial[clique] = null;
+            }
+        }
+    }
+
+    private static int[][] triangulate(CompiledNetwork network, EliminationHeuristic heuristic) {
+        BitSet[] adjacency = EliminationOrdering.moralGraph(network);
+        BitSet[] graph = new BitSet[adjacency.length];
+        for (int i = 0; i < graph.length; i++) {
+            graph[i] = (BitSet) adjacency[i].clone();
+        }
+        BitSet all = new BitSet(network.size());
+        all.set(0, network.size());
+        int[] eliminationOrder = EliminationOrdering.eliminate(graph, network.getCards(), all, heuristic);
+
+        List<BitSet> found = new ArrayList<>();
+        for (int var : eliminationOrder) {
+            BitSet clique = (BitSet) adjacency[var].clone();
+            clique.set(var);
+            if (found.stream().noneMatch(x -> isSubset(clique, x))) {
+                found.add(clique);
+            }
+            EliminationOrdering.eliminate(adjacency, var);
+        }
+
+        int[][] result = new int[found.size()][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = found.get(i).stream().toArray();
+        }
+        return result;
+    }
+
+    private static boolean isSubset(BitSet subset, BitSet set) {
+        BitSet rest = (BitSet) subset.clone();
+        rest.andNot(set);
+        return rest.isEmpty();
+    }
+
+    /**
+     * Connects cliques by a maximum weight spanning tree (Prim), where weight
+     * of an edge is the size of the separator.
+     */
+    private void connectCliques() {
+        int count = cliques.length;
+        boolean[] inTree = new boolean[count];
+        int[] bestWeight = new int[count];
+        int[] bestParent = new int[count];
+        Arrays.fill(bestWeight, -1);
+        Arrays.fill(bestParent, -1);
+
+        bestWeight[0] = 0;
+        for (int step = 0; step < count; step++) {
+            int next = -1;
+            for (int c = 0; c < count; c++) {
+                if (!inTree[c] && (next == -1 || bestWeight[c] > bestWeight[next])) {
+                    next = c;
+                }
+            }
+            inTree[next] = true;
+            order[step] = next;
+            parent[next] = bestParent[next];
+            separators[next] = bestParent[next] == -1 ? new int[0] : intersect(cliques[next], cliques[bestParent[next]]);
+
+            for (int c = 0; c < count; c++) {
+                if (!inTree[c]) {
+                    int weight = intersect(cliques[c], cliques[next]).length;
+                    if (weight > bestWeight[c]) {
+                        bestWeight[c] = weight;
+                        bestParent[c] = next;
+                    }
+                }
+            }
+        }
+
+        int[] childCounts = new int[count];
+        for (int c = 0; c < count; c++) {
+            if (parent[c] != -1) {
+                childCounts[parent[c]]++;
+            }
+        }
+        for (int c = 0; c < count; c++) {
+            children[c] = new int[childCounts[c]];
+            childCounts[c] = 0;
+        }
+        for (int c : order) {
+            if (parent[c] != -1) {
+                children[parent[c]][childCounts[parent[c]]++] = c;
+            }
+        }
+    }
+
+    private void assignFamilies() {
+        Arrays.fill(smallest, -1);
+        for (int c = 0; c < cliques.length; c++) {
+            for (int var : cliques[c]) {
+                if (smallest[var] == -1 || cliques[c].length < cliques[smallest[var]].length) {
+                    smallest[var] = c;
+                }
+            }
+        }
+        for (int var = 0; var < network.size(); var++) {
+            int[] family = network.getFamily(var).getVariables();
+            home[var] = -1;
+            for (int c = 0; c < cliques.length && home[var] == -1; c++) {
+                if (containsAll(cliques[c], family)) {
+                    home[var] = c;
+                }
+            }
+        }
+    }
+
+    private int[] cardsOf(int[] vars) {
+        int[] cards = new int[vars.length];
+        for (int i = 0; i < vars.length; i++) {
+            cards[i] = network.getCard(vars[i]);
+        }
+        return cards;
+    }
+
+    private static boolean containsAll(int[] set, int[] subset) {
+        for (int var : subset) {
+            if (Arrays.binarySearch(set, var) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        return Arrays.stream(a).filter(x -> Arrays.binarySearch(b, x) >= 0).toArray();
+    }
+}
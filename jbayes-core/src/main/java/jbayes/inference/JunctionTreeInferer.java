@@ -0,0 +1,167 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.List;
+import jbayes.core.BayesNet;
+import jbayes.core.Factor;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exact inferer that runs Hugin propagation on a junction tree of the network.
+ *
+ * <p>
+ * The junction tree is built once before the first query. Each query copies
+ * the initial clique potentials, enters the current evidence of the nodes,
+ * collects messages to the root and distributes them back.
+ * </p>
+ *
+ * <p>
+ * Clique potentials larger than {@link #getDirectThreshold()} are stored
+ * outside the heap. The copies made by a query are released at its end, the
+ * initial potentials by {@link #close()}.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class JunctionTreeInferer extends BayesInfererBase implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JunctionTreeInferer.class);
+
+    private final EliminationHeuristic heuristic;
+    private long directThreshold = Long.MAX_VALUE;
+    private CompiledNetwork compiled;
+    private JunctionTree tree;
+
+    public JunctionTreeInferer(BayesNet network) {
+        this(network, EliminationHeuristic.MIN_FILL);
+    }
+
+    public JunctionTreeInferer(BayesNet network, EliminationHeuristic heuristic) {
+        super(network);
+        Ensure.NotNull(heuristic, "heuristic");
+
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Returns the count of entries above which clique potentials are stored
+     * outside the heap.
+     *
+     * @return Count of entries
+     */
+    public long getDirectThreshold() {
+        return directThreshold;
+    }
+
+    /**
+     * Sets the count of entries above which clique potentials are stored
+     * outside the heap, see {@link jbayes.core.DirectFactorStorage}. Such
+     * potentials don't burden the garbage collector and may be larger than
+     * an array. By default all potentials that fit in an array are stored on
+     * the heap.
+     *
+     * @param directThreshold Count of entries
+     */
+    public void setDirectThreshold(long directThreshold) {
+        Ensure.GreaterThanOrEquals(directThreshold, 0L, "directThreshold");
+        this.directThreshold = directThreshold;
+        if (tree != null) {
+            tree.setDirectThreshold(directThreshold);
+        }
+    }
+
+    /**
+     * Releases the clique potentials stored outside the heap. The inferer can
+     * still be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (tree != null) {
+            tree.close();
+        }
+    }
+
+    @Override
+    protected void compile() {
+        close();
+        compiled = CompiledNetwork.compile(getNetwork());
+        tree = JunctionTree.build(compiled, heuristic);
+        tree.setDirectThreshold(directThreshold);
+        LOGGER.debug("Junction tree of {} contains {} cliques", getNetwork(), tree.getCliqueCount());
+    }
+
+    @Override
+    protected void infer(List<Node> nodes) {
+        int count = tree.getCliqueCount();
+        Factor[] potentials = new Factor[count];
+        Factor[] separators = new Factor[count];
+        try {
+            propagate(getEvidence(compiled), potentials, separators);
+
+            for (Node node : nodes) {
+                int var = compiled.getId(node);
+                Factor marginal = potentials[tree.getSmallestClique(var)].marginalize(new int[]{var});
+                marginal.normalize();
+                setInference(node, marginal.getValues());
+            }
+        } finally {
+            for (int c = 0; c < count; c++) {
+                if (potentials[c] != null) {
+                    potentials[c].close();
+                }
+                if (separators[c] != null) {
+                    separators[c].close();
+                }
+            }
+        }
+    }
+
+    private void propagate(int[] evidence, Factor[] potentials, Factor[] separators) {
+        int count = tree.getCliqueCount();
+        for (int c = 0; c < count; c++) {
+            potentials[c] = tree.createPotential(c);
+        }
+        for (int var = 0; var < evidence.length; var++) {
+            if (evidence[var] != -1) {
+                potentials[tree.getHome(var)].observe(var, evidence[var]);
+            }
+        }
+
+        // collect evidence to the root
+        int[] order = tree.getOrder();
+        for (int i = order.length - 1; i > 0; i--) {
+            int c = order[i];
+            separators[c] = potentials[c].marginalize(tree.getSeparator(c));
+            potentials[tree.getParent(c)].multiplyInPlace(separators[c]);
+        }
+        Ensure.GreaterThan(potentials[order[0]].sum(), 0.0, "Probability of evidence");
+
+        // distribute evidence from the root
+        for (int i = 1; i < order.length; i++) {
+            int c = order[i];
+            try (Factor message = potentials[tree.getParent(c)].marginalize(tree.getSeparator(c));
+                    Factor quotient = message.divide(separators[c])) {
+                potentials[c].multiplyInPlace(quotient);
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import jbayes.core.BayesNet;
+import jbayes.core.Factor;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exact inferer that runs lazy propagation (Madsen and Jensen) on a junction
+ * tree.
+ *
+ * <p>
+ * Clique potentials and messages are kept as lists of factors instead of
+ * single tables. A message is computed by dropping barren factors, i.e.
+ * conditional probabilities of variables that are neither in the separator
+ * nor in any other factor, and eliminating the remaining variables outside of
+ * the separator one by one. Factors are multiplied only when they share a
+ * variable to eliminate, so full clique tables are never built. This pays off
+ * on networks with large cliques, e.g. with many AND/OR nodes.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class LazyPropagationInferer extends BayesInfererBase {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazyPropagationInferer.class);
+
+    private final EliminationHeuristic heuristic;
+    private CompiledNetwork compiled;
+    private JunctionTree tree;
+    private long largestTableSize;
+
+    public LazyPropagationInferer(BayesNet network) {
+        this(network, EliminationHeuristic.MIN_FILL);
+    }
+
+    public LazyPropagationInferer(BayesNet network, EliminationHeuristic heuristic) {
+        super(network);
+        Ensure.NotNull(heuristic, "heuristic");
+
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Returns count of entries of the largest table computed by the last
+     * query. CPTs of the network are not counted.
+     *
+     * @return Size of the largest table
+     */
+    public long getLargestTableSize() {
+        return largestTableSize;
+    }
+
+    @Override
+    protected void compile() {
+        compiled = CompiledNetwork.compile(getNetwork());
+        tree = JunctionTree.build(compiled, heuristic);
+    }
+
+    @Override
+    protected void infer(List<Node> nodes) {
+        int[] evidence = getEvidence(compiled);
+        largestTableSize = 0;
+
+        List<List<Term>> terms = new ArrayList<>();
+        for (int c = 0; c < tree.getCliqueCount(); c++) {
+            terms.add(new ArrayList<>());
+        }
+        for (int var = 0; var < compiled.size(); var++) {
+            Factor factor = compiled.getFamily(var);
+            for (int v : factor.getVariables()) {
+                if (evidence[v] != -1) {
+                    factor = factor.reduce(v, evidence[v]);
+                }
+            }
+            terms.get(tree.getHome(var)).add(new Term(factor, evidence[var] == -1 ? var : -1));
+        }
+
+        // messages towards the root, then messages towards the cliques of the targets
+        int[] order = tree.getOrder();
+        List<List<Term>> upward = new ArrayList<>();
+        List<List<Term>> downward = new ArrayList<>();
+        for (int c = 0; c < order.length; c++) {
+            upward.add(null);
+            downward.add(null);
+        }
+        for (int i = order.length - 1; i >= 0; i--) {
+            int c = order[i];
+            if (tree.getParent(c) != -1) {
+                upward.set(c, project(collect(c, -1, false, terms, upward, downward), tree.getSeparator(c)));
+            }
+        }
+        boolean[] required = new boolean[order.length];
+        for (Node node : nodes) {
+            for (int c = tree.getSmallestClique(compiled.getId(node)); c != -1; c = tree.getParent(c)) {
+                required[c] = true;
+            }
+        }
+        for (int c : order) {
+            int parent = tree.getParent(c);
+            if (parent != -1 && required[c]) {
+                downward.set(c, project(collect(parent, c, true, terms, upward, downward), tree.getSeparator(c)));
+            }
+        }
+
+        for (Node node : nodes) {
+            int var = compiled.getId(node);
+            int clique = tree.getSmallestClique(var);
+            List<Term> result = project(collect(clique, -1, true, terms, upward, downward), new int[]{var});
+            Factor marginal = Factor.unit(new int[]{var}, new int[]{compiled.getCard(var)});
+            for (Term term : result) {
+                marginal = marginal.multiply(term.potential).marginalize(new int[]{var});
+            }
+            Ensure.GreaterThan(marginal.normalize(), 0.0, "Probability of evidence");
+            setInference(node, marginal.getValues());
+        }
+        LOGGER.debug("Largest table computed by lazy propagation contains {} entries", largestTableSize);
+    }
+
+    /**
+     * Returns factors of the clique together with messages sent to it by its
+     * children except the skipped one and, optionally, by its parent.
+     */
+    private List<Term> collect(int clique, int skippedChild, boolean withParent, List<List<Term>> terms,
+            List<List<Term>> upward, List<List<Term>> downward) {
+        List<Term> result = new ArrayList<>(terms.get(clique));
+        for (int child : tree.getChildren(clique)) {
+            if (child != skippedChild) {
+                result.addAll(upward.get(child));
+            }
+        }
+        if (withParent && tree.getParent(clique) != -1) {
+            result.addAll(downward.get(clique));
+        }
+        return result;
+    }
+
+    /**
+     * Sums the product of the factors over all variables except the kept
+     * ones, keeping the result factorized.
+     */
+    private List<Term> project(List<Term> terms, int[] keep) {
+        List<Term> result = new ArrayList<>(terms);
+        removeBarren(result, keep);
+
+        boolean[] eliminated = new boolean[compiled.size()];
+        for (int var : keep) {
+            eliminated[var] = true;
+        }
+        while (true) {
+            int best = -1;
+            double bestCost = Double.POSITIVE_INFINITY;
+            for (Term term : result) {
+                for (int var : term.potential.getVariables()) {
+                    if (!eliminated[var]) {
+                        double cost = costOf(result, var);
+                        if (cost < bestCost) {
+                            best = var;
+                            bestCost = cost;
+                        }
+                    }
+                }
+            }
+            if (best == -1) {
+                return result;
+            }
+
+            Factor product = null;
+            for (int i = result.size() - 1; i >= 0; i--) {
+                if (result.get(i).potential.contains(best)) {
+                    Factor potential = result.remove(i).potential;
+                    product = product == null ? potential : product.multiply(potential);
+                }
+            }
+            largestTableSize = Math.max(largestTableSize, product.size());
+            int[] vars = product.getVariables();
+            int[] rest = new int[vars.length - 1];
+            for (int i = 0, j = 0; i < vars.length; i++) {
+                if (vars[i] != best) {
+                    rest[j++] = vars[i];
+                }
+            }
+            result.add(new Term(product.marginalize(rest), -1));
+            eliminated[best] = true;
+        }
+    }
+
+    /**
+     * Returns count of entries of the product of all factors containing the
+     * variable.
+     */
+    private double costOf(List<Term> terms, int var) {
+        boolean[] seen = new boolean[compiled.size()];
+        double result = 1.0;
+        for (Term term : terms) {
+            if (term.potential.contains(var)) {
+                for (int v : term.potential.getVariables()) {
+                    if (!seen[v]) {
+                        seen[v] = true;
+                        result *= compiled.getCard(v);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes conditional probabilities of unobserved variables, which are
+     * not kept and do not occur in any other factor, since they sum up to
+     * one. Removal may turn further factors barren, so it is repeated.
+     */
+    private static void removeBarren(List<Term> terms, int[] keep) {
+        boolean removed = true;
+        while (removed) {
+            removed = false;
+            for (int i = terms.size() - 1; i >= 0; i--) {
+                int head = terms.get(i).head;
+                if (head != -1 && Arrays.stream(keep).noneMatch(x -> x == head) && !occursElsewhere(terms, i, head)) {
+                    terms.remove(i);
+                    removed = true;
+                }
+            }
+        }
+    }
+
+    private static boolean occursElsewhere(List<Term> terms, int index, int var) {
+        for (int i = 0; i < terms.size(); i++) {
+            if (i != index && terms.get(i).potential.contains(var)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Factor of a clique or a message. Head is the variable, whose conditional
+     * probability the factor is, or -1 if the factor is not a conditional
+     * probability.
+     */
+    private static final class Term {
+
+        private final Factor potential;
+        private final int head;
+
+        Term(Factor potential, int head) {
+            this.potential = potential;
+            this.head = head;
+        }
+    }
+}
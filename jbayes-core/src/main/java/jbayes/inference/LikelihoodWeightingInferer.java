@@ -0,0 +1,331 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import jbayes.core.BayesNet;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Approximate inferer that estimates marginals by likelihood weighting.
+ *
+ * <p>
+ * Nodes are sampled in topological order, observed nodes keep their evidence
+ * and weight the sample by the likelihood of the evidence. Samples are drawn
+ * in parallel by a {@link ForkJoinPool}, where each task uses its own stream
+ * split from a {@link SplittableRandom}, so the result depends only on the
+ * seed. Sampling stops when the sample budget is exhausted or, if a target
+ * standard error is set, as soon as the standard error of each requested
+ * marginal drops below it.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class LikelihoodWeightingInferer extends BayesInfererBase {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LikelihoodWeightingInferer.class);
+
+    /**
+     * Count of samples drawn by one task without further splitting.
+     */
+    private static final int TASK_SIZE = 4096;
+
+    private long sampleCount = 100_000;
+    private long batchSize = 10_000;
+    private double targetStandardError = 0.0;
+    private long seed = System.nanoTime();
+    private ForkJoinPool pool;
+    private CompiledNetwork compiled;
+    private int[] offsets;
+    private double effectiveSampleSize = Double.NaN;
+    private double standardError = Double.NaN;
+    private long drawnSampleCount;
+
+    public LikelihoodWeightingInferer(BayesNet network) {
+        super(network);
+    }
+
+    public LikelihoodWeightingInferer(BayesNet network, long sampleCount) {
+        super(network);
+        setSampleCount(sampleCount);
+    }
+
+    /**
+     * Returns the maximal count of samples drawn by one query.
+     *
+     * @return Sample budget
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Sets the maximal count of samples drawn by one query.
+     *
+     * @param sampleCount Sample budget
+     */
+    public final void setSampleCount(long sampleCount) {
+        Ensure.GreaterThan(sampleCount, 0L, "sampleCount");
+        this.sampleCount = sampleCount;
+    }
+
+    /**
+     * Returns count of samples drawn between two checks of the standard error.
+     *
+     * @return Batch size
+     */
+    public long getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets count of samples drawn between two checks of the standard error.
+     *
+     * @param batchSize Batch size
+     */
+    public void setBatchSize(long batchSize) {
+        Ensure.GreaterThan(batchSize, 0L, "batchSize");
+        this.batchSize = batchSize;
+    }
+
+    public double getTargetStandardError() {
+        return targetStandardError;
+    }
+
+    /**
+     * Sets the standard error, which is enough for each requested marginal.
+     * Zero means that the whole sample budget is always drawn.
+     *
+     * @param targetStandardError Target standard error
+     */
+    public void setTargetStandardError(double targetStandardError) {
+        Ensure.GreaterThanOrEquals(targetStandardError, 0.0, "targetStandardError");
+        this.targetStandardError = targetStandardError;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool != null ? pool : ForkJoinPool.commonPool();
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the effective sample size of the last query, i.e. the squared
+     * sum of sample weights divided by the sum of squared weights.
+     *
+     * @return Effective sample size or NaN if nothing has been queried yet
+     */
+    public double getEffectiveSampleSize() {
+        return effectiveSampleSize;
+    }
+
+    /**
+     * Returns the largest estimated standard error of the marginals computed
+     * by the last query.
+     *
+     * @return Standard error or NaN if nothing has been queried yet
+     */
+    public double getStandardError() {
+        return standardError;
+    }
+
+    /**
+     * Returns count of samples drawn by the last query.
+     *
+     * @return Count of samples
+     */
+    public long getDrawnSampleCount() {
+        return drawnSampleCount;
+    }
+
+    @Override
+    protected void compile() {
+        compiled = CompiledNetwork.compile(getNetwork());
+        offsets = new int[compiled.size() + 1];
+        for (int var = 0; var < compiled.size(); var++) {
+            offsets[var + 1] = offsets[var] + compiled.getCard(var);
+        }
+    }
+
+    @Override
+    protected void infer(List<Node> nodes) {
+        int[] evidence = getEvidence(compiled);
+        int[] targets = nodes.stream().mapToInt(x -> compiled.getId(x)).toArray();
+        SplittableRandom random = new SplittableRandom(seed);
+        long batch = targetStandardError > 0.0 ? Math.min(batchSize, sampleCount) : sampleCount;
+
+        Accumulator total = new Accumulator(offsets[compiled.size()]);
+        drawnSampleCount = 0;
+        do {
+            long count = Math.min(batch, sampleCount - drawnSampleCount);
+            total.add(getPool().invoke(new SamplingTask(evidence, random.split(), count)));
+            drawnSampleCount += count;
+            standardError = total.sumWeights > 0.0 ? total.standardError(targets) : Double.POSITIVE_INFINITY;
+        } while (drawnSampleCount < sampleCount && standardError > targetStandardError);
+
+        Ensure.GreaterThan(total.sumWeights, 0.0, "Total weight of samples consistent with evidence");
+        effectiveSampleSize = total.effectiveSampleSize();
+        LOGGER.debug("Drawn {} samples, effective sample size {}, standard error {}",
+                drawnSampleCount, effectiveSampleSize, standardError);
+
+        for (int i = 0; i < targets.length; i++) {
+            setInference(nodes.get(i), total.marginal(targets[i]));
+        }
+    }
+
+    /**
+     * Draws one weighted sample into the specified array.
+     *
+     * @return Weight of the sample
+     */
+    private double sample(int[] evidence, SplittableRandom random, int[] states) {
+        double weight = 1.0;
+        for (int var = 0; var < states.length; var++) {
+            double[] cpt = compiled.getFamily(var).getValues();
+            int offset = compiled.getColumnOffset(var, states);
+            if (evidence[var] != -1) {
+                states[var] = evidence[var];
+                weight *= cpt[offset + evidence[var]];
+                if (weight == 0.0) {
+                    return 0.0;
+                }
+            } else {
+                int card = compiled.getCard(var);
+                double u = random.nextDouble();
+                int state = 0;
+                double cumulative = cpt[offset];
+                while (u >= cumulative && state < card - 1) {
+                    cumulative += cpt[offset + ++state];
+                }
+                states[var] = state;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * The class accumulates weighted counts of the levels of each variable.
+     */
+    private final class Accumulator {
+
+        private final double[] counts;
+        private double sumWeights;
+        private double sumSquaredWeights;
+
+        Accumulator(int size) {
+            this.counts = new double[size];
+        }
+
+        void add(int[] states, double weight) {
+            for (int var = 0; var < states.length; var++) {
+                counts[offsets[var] + states[var]] += weight;
+            }
+            sumWeights += weight;
+            sumSquaredWeights += weight * weight;
+        }
+
+        void add(Accumulator other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            sumWeights += other.sumWeights;
+            sumSquaredWeights += other.sumSquaredWeights;
+        }
+
+        double effectiveSampleSize() {
+            return sumSquaredWeights > 0.0 ? sumWeights * sumWeights / sumSquaredWeights : 0.0;
+        }
+
+        double[] marginal(int var) {
+            double[] result = new double[compiled.getCard(var)];
+            for (int state = 0; state < result.length; state++) {
+                result[state] = counts[offsets[var] + state] / sumWeights;
+            }
+            return result;
+        }
+
+        double standardError(int[] vars) {
+            double ess = effectiveSampleSize();
+            double result = 0.0;
+            for (int var : vars) {
+                for (int i = offsets[var]; i < offsets[var + 1]; i++) {
+                    double p = counts[i] / sumWeights;
+                    result = Math.max(result, Math.sqrt(p * (1.0 - p) / ess));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The task draws samples, splitting itself while there are more than
+     * {@link #TASK_SIZE} samples to draw.
+     */
+    private final class SamplingTask extends RecursiveTask<Accumulator> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] evidence;
+        private final SplittableRandom random;
+        private final long count;
+
+        SamplingTask(int[] evidence, SplittableRandom random, long count) {
+            this.evidence = evidence;
+            this.random = random;
+            this.count = count;
+        }
+
+        @Override
+        protected Accumulator compute() {
+            if (count > TASK_SIZE) {
+                SamplingTask first = new SamplingTask(evidence, random.split(), count / 2);
+                SamplingTask second = new SamplingTask(evidence, random.split(), count - count / 2);
+                first.fork();
+                Accumulator result = second.compute();
+                result.add(first.join());
+                return result;
+            }
+
+            Accumulator result = new Accumulator(offsets[compiled.size()]);
+            int[] states = new int[compiled.size()];
+            for (long i = 0; i < count; i++) {
+                double weight = sample(evidence, random, states);
+                if (weight > 0.0) {
+                    result.add(states, weight);
+                }
+            }
+            return result;
+        }
+    }
+}
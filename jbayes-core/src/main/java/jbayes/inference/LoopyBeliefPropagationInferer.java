@@ -0,0 +1,387 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import jbayes.core.BayesNet;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Approximate inferer that runs Pearl's belief propagation on networks with
+ * loops.
+ *
+ * <p>
+ * Messages are passed directly over the links of the network, so an iteration
+ * costs time linear in the count of links (times the size of the families).
+ * The residual schedule always updates the message that would change most,
+ * the synchronous schedule updates all messages at once and splits the work
+ * over a {@link ForkJoinPool}. Damping mixes new messages with old ones, which
+ * helps on networks where propagation oscillates. On polytrees the result is
+ * exact.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class LoopyBeliefPropagationInferer extends BayesInfererBase {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoopyBeliefPropagationInferer.class);
+
+    /**
+     * Count of messages computed by one task without further splitting.
+     */
+    private static final int TASK_SIZE = 256;
+
+    /**
+     * Order in which messages are updated.
+     */
+    public enum Schedule {
+
+        /**
+         * Messages are updated one by one, the one with the largest residual
+         * first.
+         */
+        RESIDUAL,
+        /**
+         * All messages are updated at once from the messages of the previous
+         * iteration, in parallel.
+         */
+        SYNCHRONOUS
+    }
+
+    private Schedule schedule = Schedule.RESIDUAL;
+    private int maxIterations = 100;
+    private double tolerance = 1e-6;
+    private double damping = 0.0;
+    private ForkJoinPool pool;
+    private CompiledNetwork compiled;
+    private PearlMessages messages;
+    private int iterations;
+    private double residual = Double.NaN;
+
+    public LoopyBeliefPropagationInferer(BayesNet network) {
+        super(network);
+    }
+
+    public LoopyBeliefPropagationInferer(BayesNet network, Schedule schedule) {
+        super(network);
+        setSchedule(schedule);
+    }
+
+    public Schedule getSchedule() {
+        return schedule;
+    }
+
+    public final void setSchedule(Schedule schedule) {
+        Ensure.NotNull(schedule, "schedule");
+        this.schedule = schedule;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Sets the maximal count of iterations of one query.
+     *
+     * @param maxIterations Count of iterations
+     */
+    public void setMaxIterations(int maxIterations) {
+        Ensure.GreaterThan(maxIterations, 0, "maxIterations");
+        this.maxIterations = maxIterations;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Sets the residual, below which messages are considered converged.
+     *
+     * @param tolerance Largest acceptable change of a message entry
+     */
+    public void setTolerance(double tolerance) {
+        Ensure.GreaterThanOrEquals(tolerance, 0.0, "tolerance");
+        this.tolerance = tolerance;
+    }
+
+    public double getDamping() {
+        return damping;
+    }
+
+    /**
+     * Sets the weight of the old message in an update. Zero means no damping.
+     *
+     * @param damping Weight in range [0, 1)
+     */
+    public void setDamping(double damping) {
+        Ensure.GreaterThanOrEquals(damping, 0.0, "damping");
+        Ensure.LowerThan(damping, 1.0, "damping");
+        this.damping = damping;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool != null ? pool : ForkJoinPool.commonPool();
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns count of iterations of the last query. For the residual
+     * schedule an iteration is counted after as many single updates as there
+     * are messages.
+     *
+     * @return Count of iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the largest change of a message entry, which was pending when
+     * the last query finished.
+     *
+     * @return Final residual or NaN if nothing has been queried yet
+     */
+    public double getResidual() {
+        return residual;
+    }
+
+    @Override
+    protected void compile() {
+        compiled = CompiledNetwork.compile(getNetwork());
+        messages = new PearlMessages(compiled);
+    }
+
+    @Override
+    protected void infer(List<Node> nodes) {
+        int[] evidence = getEvidence(compiled);
+        messages.reset();
+        if (schedule == Schedule.RESIDUAL) {
+            propagateByResidual(evidence);
+        } else {
+            propagateSynchronously(evidence);
+        }
+        LOGGER.debug("Belief propagation has done {} iterations, residual {}", iterations, residual);
+
+        for (Node node : nodes) {
+            int var = compiled.getId(node);
+            double[] belief = new double[compiled.getCard(var)];
+            Ensure.GreaterThan(messages.computeBelief(var, evidence, belief), 0.0, "Probability of evidence");
+            setInference(node, belief);
+        }
+    }
+
+    /**
+     * Message 2 * e is the causal message of edge e, message 2 * e + 1 is its
+     * diagnostic message.
+     */
+    private double[] getMessage(int message) {
+        int edge = message / 2;
+        return message % 2 == 0 ? messages.getPi(edge) : messages.getLambda(edge);
+    }
+
+    private void computeMessage(int message, int[] evidence, double[] out) {
+        if (message % 2 == 0) {
+            messages.computePiMessage(message / 2, evidence, out);
+        } else {
+            messages.computeLambdaMessage(message / 2, evidence, out);
+        }
+    }
+
+    private double update(double[] message, double[] pending) {
+        double result = PearlMessages.residual(message, pending);
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (1.0 - damping) * pending[i] + damping * message[i];
+        }
+        return result;
+    }
+
+    private void propagateSynchronously(int[] evidence) {
+        int count = 2 * messages.getEdgeCount();
+        double[][] pending = new double[count][];
+        for (int message = 0; message < count; message++) {
+            pending[message] = new double[getMessage(message).length];
+        }
+
+        iterations = 0;
+        residual = count > 0 ? Double.POSITIVE_INFINITY : 0.0;
+        while (iterations < maxIterations && residual > tolerance) {
+            getPool().invoke(new MessageTask(evidence, pending, 0, count));
+            residual = 0.0;
+            for (int message = 0; message < count; message++) {
+                residual = Math.max(residual, update(getMessage(message), pending[message]));
+            }
+            iterations++;
+        }
+    }
+
+    private void propagateByResidual(int[] evidence) {
+        int count = 2 * messages.getEdgeCount();
+        double[][] pending = new double[count][];
+        ResidualQueue queue = new ResidualQueue(count);
+        for (int message = 0; message < count; message++) {
+            pending[message] = new double[getMessage(message).length];
+            computeMessage(message, evidence, pending[message]);
+            queue.set(message, PearlMessages.residual(getMessage(message), pending[message]));
+        }
+
+        long updates = 0;
+        long maxUpdates = (long) maxIterations * count;
+        while (updates < maxUpdates && count > 0 && queue.peekResidual() > tolerance) {
+            int message = queue.peek();
+            int edge = message / 2;
+            double change = update(getMessage(message), pending[message]);
+            queue.set(message, damping * change);
+            updates++;
+
+            // the message comes into the child (pi) or into the parent (lambda)
+            int target = message % 2 == 0 ? messages.getChild(edge) : messages.getParent(edge);
+            for (int childEdge : messages.getChildEdges(target)) {
+                if (childEdge != edge) {
+                    refresh(2 * childEdge, evidence, pending, queue);
+                }
+            }
+            for (int parentEdge : messages.getParentEdges(target)) {
+                if (parentEdge != edge) {
+                    refresh(2 * parentEdge + 1, evidence, pending, queue);
+                }
+            }
+        }
+        iterations = count > 0 ? (int) ((updates + count - 1) / count) : 0;
+        residual = count > 0 ? queue.peekResidual() : 0.0;
+    }
+
+    private void refresh(int message, int[] evidence, double[][] pending, ResidualQueue queue) {
+        computeMessage(message, evidence, pending[message]);
+        queue.set(message, PearlMessages.residual(getMessage(message), pending[message]));
+    }
+
+    /**
+     * Indexed binary max-heap of message residuals.
+     */
+    private static final class ResidualQueue {
+
+        private final int[] heap;
+        private final int[] positions;
+        private final double[] residuals;
+
+        ResidualQueue(int size) {
+            this.heap = new int[size];
+            this.positions = new int[size];
+            this.residuals = new double[size];
+            for (int i = 0; i < size; i++) {
+                heap[i] = i;
+                positions[i] = i;
+            }
+        }
+
+        int peek() {
+            return heap[0];
+        }
+
+        double peekResidual() {
+            return residuals[heap[0]];
+        }
+
+        void set(int message, double residual) {
+            double old = residuals[message];
+            residuals[message] = residual;
+            if (residual > old) {
+                siftUp(positions[message]);
+            } else {
+                siftDown(positions[message]);
+            }
+        }
+
+        private void siftUp(int position) {
+            while (position > 0) {
+                int parent = (position - 1) / 2;
+                if (residuals[heap[parent]] >= residuals[heap[position]]) {
+                    return;
+                }
+                swap(position, parent);
+                position = parent;
+            }
+        }
+
+        private void siftDown(int position) {
+            while (true) {
+                int largest = position;
+                for (int child = 2 * position + 1; child <= 2 * position + 2 && child < heap.length; child++) {
+                    if (residuals[heap[child]] > residuals[heap[largest]]) {
+                        largest = child;
+                    }
+                }
+                if (largest == position) {
+                    return;
+                }
+                swap(position, largest);
+                position = largest;
+            }
+        }
+
+        private void swap(int first, int second) {
+            int message = heap[first];
+            heap[first] = heap[second];
+            heap[second] = message;
+            positions[heap[first]] = first;
+            positions[heap[second]] = second;
+        }
+    }
+
+    /**
+     * The task computes pending messages from the current ones, splitting
+     * itself while there are more than {@link #TASK_SIZE} messages.
+     */
+    private final class MessageTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] evidence;
+        private final double[][] pending;
+        private final int from;
+        private final int to;
+
+        MessageTask(int[] evidence, double[][] pending, int from, int to) {
+            this.evidence = evidence;
+            this.pending = pending;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TASK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MessageTask(evidence, pending, from, middle),
+                        new MessageTask(evidence, pending, middle, to));
+                return;
+            }
+            for (int message = from; message < to; message++) {
+                computeMessage(message, evidence, pending[message]);
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import jbayes.core.BayesNet;
+import jbayes.core.Evidence;
+import jbayes.core.Factor;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+
+/**
+ * Exact inferer of the jointly most probable levels of nodes by max-product
+ * variable elimination.
+ *
+ * <p>
+ * The most probable explanation (MPE) assigns levels to all unobserved nodes.
+ * The maximum a posteriori assignment (MAP) assigns levels to the specified
+ * nodes only: other nodes are summed out before the specified ones are
+ * maximized out. Levels are recovered by tracing the elimination back. Unlike
+ * the most probable level of each marginal on its own, the result is always a
+ * consistent joint assignment.
+ * </p>
+ *
+ * <p>
+ * Evidence is read from the nodes or, if an {@link Evidence} is given, from
+ * it without changing the nodes.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class MaxProductInferer {
+
+    private final BayesNet network;
+    private final EliminationHeuristic heuristic;
+    private CompiledNetwork compiled;
+    private long compiledVersion;
+
+    public MaxProductInferer(BayesNet network) {
+        this(network, EliminationHeuristic.MIN_FILL);
+    }
+
+    public MaxProductInferer(BayesNet network, EliminationHeuristic heuristic) {
+        Ensure.NotNull(network, "network");
+        Ensure.NotNull(heuristic, "heuristic");
+
+        this.network = network;
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Returns underlying {@link BayesNet} instance.
+     *
+     * @return Underlying {@link BayesNet} instance
+     */
+    public BayesNet getNetwork() {
+        return network;
+    }
+
+    /**
+     * Finds the most probable levels of all nodes without evidence.
+     *
+     * @return Most probable explanation
+     */
+    public Explanation inferMostProbableExplanation() {
+        return inferMaximumAPosteriori(network.getNodes());
+    }
+
+    /**
+     * Finds the jointly most probable levels of the specified nodes. Nodes
+     * with evidence are skipped.
+     *
+     * @param nodes Nodes
+     * @return Maximum a posteriori assignment
+     */
+    public Explanation inferMaximumAPosteriori(Node... nodes) {
+        return inferMaximumAPosteriori(Arrays.asList(nodes));
+    }
+
+    /**
+     * Finds the jointly most probable levels of the specified nodes. Nodes
+     * with evidence are skipped.
+     *
+     * @param nodes Nodes
+     * @return Maximum a posteriori assignment
+     */
+    public Explanation inferMaximumAPosteriori(Collection<Node> nodes) {
+        Ensure.NotNull(nodes, "nodes");
+
+        return infer(null, nodes);
+    }
+
+    /**
+     * Finds the most probable levels of all nodes not observed in the
+     * specified evidence. The evidence of the nodes is neither read nor
+     * changed.
+     *
+     * @param evidence Evidence indexed by node id
+     * @return Most probable explanation
+     */
+    public Explanation inferMostProbableExplanation(Evidence evidence) {
+        return inferMaximumAPosteriori(evidence, network.getNodes());
+    }
+
+    /**
+     * Finds the jointly most probable levels of the specified nodes given the
+     * specified evidence. Nodes observed in the evidence are skipped.
+     *
+     * @param evidence Evidence indexed by node id
+     * @param nodes Nodes
+     * @return Maximum a posteriori assignment
+     */
+    public Explanation inferMaximumAPosteriori(Evidence evidence, Node... nodes) {
+        return inferMaximumAPosteriori(evidence, Arrays.asList(nodes));
+    }
+
+    /**
+     * Finds the jointly most probable levels of the specified nodes given the
+     * specified evidence. Nodes observed in the evidence are skipped.
+     *
+     * @param evidence Evidence indexed by node id
+     * @param nodes Nodes
+     * @return Maximum a posteriori assignment
+     */
+    public Explanation inferMaximumAPosteriori(Evidence evidence, Collection<Node> nodes) {
+        Ensure.NotNull(evidence, "evidence");
+        Ensure.NotNull(nodes, "nodes");
+        Ensure.AreEquals(evidence.size(), network.getGraph().size(), "Size of evidence");
+
+        return infer(evidence, nodes);
+    }
+
+    /**
+     * Finds the jointly most probable levels given the specified evidence or,
+     * if it is null, the evidence of the nodes.
+     */
+    private Explanation infer(Evidence given, Collection<Node> nodes) {
+        if (compiled == null || compiledVersion != network.getVersion()) {
+            compiledVersion = network.getVersion();
+            compiled = CompiledNetwork.compile(network);
+        }
+
+        int[] evidence = new int[compiled.size()];
+        if (given != null) {
+            compiled.readEvidence(given, evidence);
+        } else {
+            compiled.readEvidence(evidence);
+        }
+        List<Node> targets = nodes.stream()
+                .filter(x -> given != null ? !given.isObserved(x.getId()) : x.getEvidence() == null)
+                .collect(Collectors.toList());
+        BitSet maximized = new BitSet();
+        BitSet observed = new BitSet();
+        for (Node node : targets) {
+            maximized.set(compiled.getId(node));
+        }
+        for (int var = 0; var < evidence.length; var++) {
+            if (evidence[var] != -1) {
+                observed.set(var);
+            }
+        }
+
+        BitSet relevant = findAncestors(maximized, observed);
+        List<Factor> factors = new ArrayList<>();
+        for (int var = relevant.nextSetBit(0); var >= 0; var = relevant.nextSetBit(var + 1)) {
+            Factor factor = compiled.getFamily(var);
+            for (int v : factor.getVariables()) {
+                if (evidence[v] != -1) {
+                    factor = factor.reduce(v, evidence[v]);
+                }
+            }
+            factors.add(factor);
+        }
+        BitSet summed = (BitSet) relevant.clone();
+        summed.andNot(observed);
+        summed.andNot(maximized);
+
+        // sum out the other nodes first, since max and sum do not commute
+        BitSet[] adjacency = EliminationOrdering.interactionGraph(compiled.size(),
+                factors.stream().map(x -> x.getVariables()).collect(Collectors.toList()));
+        int[] sumOrder = EliminationOrdering.eliminate(adjacency, compiled.getCards(), summed, heuristic);
+        int[] maxOrder = EliminationOrdering.eliminate(adjacency, compiled.getCards(), maximized, heuristic);
+
+        List<Factor> pool = new ArrayList<>(factors);
+        for (int var : sumOrder) {
+            Factor product = multiplyContaining(pool, var);
+            if (product != null) {
+                pool.add(product.marginalize(without(product.getVariables(), var)));
+            }
+        }
+        double probabilityOfEvidence = computeProbabilityOfEvidence(pool, maxOrder);
+        Ensure.GreaterThan(probabilityOfEvidence, 0.0, "Probability of evidence");
+
+        List<Factor> products = new ArrayList<>();
+        for (int var : maxOrder) {
+            Factor product = multiplyContaining(pool, var);
+            products.add(product);
+            pool.add(product.maximize(without(product.getVariables(), var)));
+        }
+        double probability = 1.0;
+        for (Factor factor : pool) {
+            probability *= factor.getValues()[0];
+        }
+
+        int[] states = new int[compiled.size()];
+        for (int i = maxOrder.length - 1; i >= 0; i--) {
+            states[maxOrder[i]] = argmax(products.get(i), maxOrder[i], states);
+        }
+        Map<Node, String> levels = new LinkedHashMap<>();
+        for (Node node : targets) {
+            int var = compiled.getId(node);
+            levels.put(node, node.getLevels().get(states[var]));
+        }
+        return new Explanation(levels, probability, probabilityOfEvidence);
+    }
+
+    /**
+     * Sums the product of the factors over the specified variables, which
+     * gives the probability of evidence, since other unobserved variables
+     * have been summed out already.
+     */
+    private static double computeProbabilityOfEvidence(List<Factor> factors, int[] order) {
+        List<Factor> pool = new ArrayList<>(factors);
+        for (int var : order) {
+            Factor product = multiplyContaining(pool, var);
+            pool.add(product.marginalize(without(product.getVariables(), var)));
+        }
+        double result = 1.0;
+        for (Factor factor : pool) {
+            result *= factor.sum();
+        }
+        return result;
+    }
+
+    private BitSet findAncestors(BitSet targets, BitSet observed) {
+        BitSet result = (BitSet) observed.clone();
+        result.or(targets);
+        Deque<Integer> queue = new ArrayDeque<>();
+        result.stream().forEach(queue::add);
+        while (!queue.isEmpty()) {
+            for (int parent : compiled.getParents(queue.poll())) {
+                if (!result.get(parent)) {
+                    result.set(parent);
+                    queue.add(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the level of the variable maximizing the product given the
+     * levels of the other variables of the product.
+     */
+    private static int argmax(Factor product, int var, int[] states) {
+        int[] vars = product.getVariables();
+        int[] cards = product.getCards();
+        int offset = 0;
+        int varStride = 0;
+        for (int i = 0, stride = 1; i < vars.length; stride *= cards[i], i++) {
+            if (vars[i] == var) {
+                varStride = stride;
+            } else {
+                offset += states[vars[i]] * stride;
+            }
+        }
+        double[] values = product.getValues();
+        int result = 0;
+        for (int state = 1; state < cards[product.indexOf(var)]; state++) {
+            if (values[offset + state * varStride] > values[offset + result * varStride]) {
+                result = state;
+            }
+        }
+        return result;
+    }
+
+    private static Factor multiplyContaining(List<Factor> pool, int var) {
+        Factor product = null;
+        for (Iterator<Factor> it = pool.iterator(); it.hasNext();) {
+            Factor factor = it.next();
+            if (factor.contains(var)) {
+                product = product == null ? factor : product.multiply(factor);
+                it.remove();
+            }
+        }
+        return product;
+    }
+
+    private static int[] without(int[] vars, int var) {
+        int[] result = new int[vars.length - 1];
+        for (int i = 0, j = 0; i < vars.length; i++) {
+            if (vars[i] != var) {
+                result[j++] = vars[i];
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+/**
+ * The class represents the representation of numbers used for evaluation of a
+ * {@link CompiledModel}.
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public enum NumericMode {
+
+    /**
+     * Probabilities in double precision. Probability of evidence underflows
+     * below about 1e-308.
+     */
+    DOUBLE,
+    /**
+     * Probabilities in single precision, which halves the buffers of each
+     * session. Posteriors are accurate to about six digits and probability of
+     * evidence underflows below about 1e-38.
+     */
+    FLOAT,
+    /**
+     * Logarithms of probabilities in double precision, where sums are
+     * computed by log-sum-exp. Does not underflow for any evidence, but is
+     * several times slower than {@link #DOUBLE}.
+     */
+    LOG
+}
@@ -0,0 +1,313 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.Arrays;
+
+/**
+ * Pearl's messages passed over the links of a compiled network.
+ *
+ * <p>
+ * Each link from a parent U to a child X carries a causal message pi_X(U) from
+ * U to X and a diagnostic message lambda_X(U) from X to U, both over the
+ * levels of U. The class stores messages and computes new messages from the
+ * current ones, so it serves exact propagation on polytrees as well as loopy
+ * propagation. Computing methods do not modify the state and may be called
+ * concurrently.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+final class PearlMessages {
+
+    private final CompiledNetwork compiled;
+    private final int[] edgeParents;
+    private final int[] edgeChildren;
+    /**
+     * Position of the parent of the edge among the parents of the child.
+     */
+    private final int[] edgePositions;
+    private final int[][] parentEdges;
+    private final int[][] childEdges;
+    private final double[][] pi;
+    private final double[][] lambda;
+
+    PearlMessages(CompiledNetwork compiled) {
+        this.compiled = compiled;
+        int size = compiled.size();
+        int edgeCount = 0;
+        for (int var = 0; var < size; var++) {
+            edgeCount += compiled.getParents(var).length;
+        }
+
+        this.edgeParents = new int[edgeCount];
+        this.edgeChildren = new int[edgeCount];
+        this.edgePositions = new int[edgeCount];
+        this.parentEdges = new int[size][];
+        this.childEdges = new int[size][];
+        int[] childCounts = new int[size];
+        for (int var = 0, edge = 0; var < size; var++) {
+            int[] parents = compiled.getParents(var);
+            parentEdges[var] = new int[parents.length];
+            for (int i = 0; i < parents.length; i++, edge++) {
+                edgeParents[edge] = parents[i];
+                edgeChildren[edge] = var;
+                edgePositions[edge] = i;
+                parentEdges[var][i] = edge;
+            }
+            childEdges[var] = new int[compiled.getChildren(var).length];
+        }
+        for (int edge = 0; edge < edgeCount; edge++) {
+            int parent = edgeParents[edge];
+            childEdges[parent][childCounts[parent]++] = edge;
+        }
+
+        this.pi = new double[edgeCount][];
+        this.lambda = new double[edgeCount][];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            pi[edge] = new double[compiled.getCard(edgeParents[edge])];
+            lambda[edge] = new double[compiled.getCard(edgeParents[edge])];
+        }
+        reset();
+    }
+
+    CompiledNetwork getCompiledNetwork() {
+        return compiled;
+    }
+
+    int getEdgeCount() {
+        return edgeParents.length;
+    }
+
+    int getParent(int edge) {
+        return edgeParents[edge];
+    }
+
+    int getChild(int edge) {
+        return edgeChildren[edge];
+    }
+
+    int[] getParentEdges(int var) {
+        return parentEdges[var];
+    }
+
+    int[] getChildEdges(int var) {
+        return childEdges[var];
+    }
+
+    /**
+     * Returns the current causal message of the edge (live array).
+     *
+     * @param edge Edge
+     * @return Message over the levels of the parent
+     */
+    double[] getPi(int edge) {
+        return pi[edge];
+    }
+
+    /**
+     * Returns the current diagnostic message of the edge (live array).
+     *
+     * @param edge Edge
+     * @return Message over the levels of the parent
+     */
+    double[] getLambda(int edge) {
+        return lambda[edge];
+    }
+
+    /**
+     * Sets all messages to uniform distributions.
+     */
+    void reset() {
+        for (int edge = 0; edge < pi.length; edge++) {
+            Arrays.fill(pi[edge], 1.0 / pi[edge].length);
+            Arrays.fill(lambda[edge], 1.0 / lambda[edge].length);
+        }
+    }
+
+    /**
+     * Computes the causal support pi(X), i.e. the CPT of the variable summed
+     * over the causal messages of its parents.
+     *
+     * @param var Variable
+     * @param out Output array over the levels of the variable
+     */
+    void computePi(int var, double[] out) {
+        int card = compiled.getCard(var);
+        double[] cpt = compiled.getFamily(var).getValues();
+        int[] parents = compiled.getParents(var);
+        int[] states = new int[parents.length];
+
+        Arrays.fill(out, 0.0);
+        for (int offset = 0; offset < cpt.length; offset += card) {
+            double weight = 1.0;
+            for (int i = 0; i < parents.length; i++) {
+                weight *= pi[parentEdges[var][i]][states[i]];
+            }
+            if (weight != 0.0) {
+                for (int state = 0; state < card; state++) {
+                    out[state] += weight * cpt[offset + state];
+                }
+            }
+            increment(states, parents);
+        }
+    }
+
+    /**
+     * Computes the diagnostic support lambda(X), i.e. the evidence of the
+     * variable multiplied by the diagnostic messages of its children.
+     *
+     * @param var Variable
+     * @param evidence Observed level of each variable or -1
+     * @param out Output array over the levels of the variable
+     */
+    void computeLambda(int var, int[] evidence, double[] out) {
+        computeLambda(var, evidence, -1, out);
+    }
+
+    /**
+     * Computes the causal message sent along the edge from its parent.
+     *
+     * @param edge Edge
+     * @param evidence Observed level of each variable or -1
+     * @param out Output array over the levels of the parent
+     */
+    void computePiMessage(int edge, int[] evidence, double[] out) {
+        int parent = edgeParents[edge];
+        double[] support = new double[out.length];
+        computePi(parent, support);
+        computeLambda(parent, evidence, edge, out);
+        for (int state = 0; state < out.length; state++) {
+            out[state] *= support[state];
+        }
+        normalize(out);
+    }
+
+    /**
+     * Computes the diagnostic message sent along the edge from its child.
+     *
+     * @param edge Edge
+     * @param evidence Observed level of each variable or -1
+     * @param out Output array over the levels of the parent
+     */
+    void computeLambdaMessage(int edge, int[] evidence, double[] out) {
+        int child = edgeChildren[edge];
+        int position = edgePositions[edge];
+        int card = compiled.getCard(child);
+        double[] support = new double[card];
+        computeLambda(child, evidence, support);
+        double[] cpt = compiled.getFamily(child).getValues();
+        int[] parents = compiled.getParents(child);
+        int[] states = new int[parents.length];
+
+        Arrays.fill(out, 0.0);
+        for (int offset = 0; offset < cpt.length; offset += card) {
+            double weight = 1.0;
+            for (int i = 0; i < parents.length; i++) {
+                if (i != position) {
+                    weight *= pi[parentEdges[child][i]][states[i]];
+                }
+            }
+            if (weight != 0.0) {
+                double value = 0.0;
+                for (int state = 0; state < card; state++) {
+                    value += cpt[offset + state] * support[state];
+                }
+                out[states[position]] += weight * value;
+            }
+            increment(states, parents);
+        }
+        normalize(out);
+    }
+
+    /**
+     * Computes the normalized belief of the variable from the current
+     * messages.
+     *
+     * @param var Variable
+     * @param evidence Observed level of each variable or -1
+     * @param out Output array over the levels of the variable
+     * @return Sum of the belief before normalization
+     */
+    double computeBelief(int var, int[] evidence, double[] out) {
+        double[] support = new double[out.length];
+        computePi(var, support);
+        computeLambda(var, evidence, out);
+        for (int state = 0; state < out.length; state++) {
+            out[state] *= support[state];
+        }
+        return normalize(out);
+    }
+
+    /**
+     * Returns the largest absolute difference of the arrays.
+     *
+     * @param first First array
+     * @param second Second array
+     * @return Residual
+     */
+    static double residual(double[] first, double[] second) {
+        double result = 0.0;
+        for (int i = 0; i < first.length; i++) {
+            result = Math.max(result, Math.abs(first[i] - second[i]));
+        }
+        return result;
+    }
+
+    private void computeLambda(int var, int[] evidence, int skippedEdge, double[] out) {
+        Arrays.fill(out, 1.0);
+        if (evidence[var] != -1) {
+            Arrays.fill(out, 0.0);
+            out[evidence[var]] = 1.0;
+        }
+        for (int edge : childEdges[var]) {
+            if (edge != skippedEdge) {
+                double[] message = lambda[edge];
+                for (int state = 0; state < out.length; state++) {
+                    out[state] *= message[state];
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves to the next assignment of the parents, the first parent varies
+     * fastest as in family tables.
+     */
+    private void increment(int[] states, int[] parents) {
+        for (int i = 0; i < states.length; i++) {
+            if (++states[i] < compiled.getCard(parents[i])) {
+                return;
+            }
+            states[i] = 0;
+        }
+    }
+
+    private static double normalize(double[] values) {
+        double sum = 0.0;
+        for (double value : values) {
+            sum += value;
+        }
+        if (sum > 0.0) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] /= sum;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.IntFunction;
+import jbayes.core.BayesNet;
+import jbayes.core.BayesNetGraph;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exact inferer for singly connected networks (polytrees) by Pearl's message
+ * passing.
+ *
+ * <p>
+ * Inference takes time linear in the size of the network and needs no
+ * triangulation. Messages are kept between queries and computed on demand:
+ * when evidence of a node changes, only the messages pointing away from that
+ * node become stale, and only those lying between changed nodes and requested
+ * nodes are sent again.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class PolytreeInferer extends BayesInfererBase {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PolytreeInferer.class);
+
+    private CompiledNetwork compiled;
+    private PearlMessages messages;
+    private boolean[] stale;
+    private int[] evidence;
+    private int sentMessageCount;
+
+    public PolytreeInferer(BayesNet network) {
+        super(network);
+    }
+
+    /**
+     * Checks whether the network is singly connected, i.e. there is at most
+     * one undirected path between any two nodes.
+     *
+     * @param network {@link BayesNet}
+     * @return True if the network is a polytree (or a forest of polytrees)
+     */
+    public static boolean isSinglyConnected(BayesNet network) {
+        Ensure.NotNull(network, "network");
+
+        BayesNetGraph graph = network.getGraph();
+        return isSinglyConnected(graph.size(), graph::getParents);
+    }
+
+    /**
+     * Returns count of messages sent by the last query.
+     *
+     * @return Count of messages
+     */
+    public int getSentMessageCount() {
+        return sentMessageCount;
+    }
+
+    @Override
+    protected void compile() {
+        compiled = CompiledNetwork.compile(getNetwork());
+        Ensure.IsTrue(isSinglyConnected(compiled), String.format("Network %s should be singly connected", getNetwork()));
+        messages = new PearlMessages(compiled);
+        stale = new boolean[2 * messages.getEdgeCount()];
+        Arrays.fill(stale, true);
+        evidence = getEvidence(compiled);
+    }
+
+    @Override
+    protected void infer(List<Node> nodes) {
+        int[] current = getEvidence(compiled);
+        for (int var = 0; var < current.length; var++) {
+            if (current[var] != evidence[var]) {
+                invalidate(var);
+            }
+        }
+        evidence = current;
+
+        sentMessageCount = 0;
+        for (Node node : nodes) {
+            int var = compiled.getId(node);
+            for (int edge : messages.getParentEdges(var)) {
+                send(2 * edge);
+            }
+            for (int edge : messages.getChildEdges(var)) {
+                send(2 * edge + 1);
+            }
+            double[] belief = new double[compiled.getCard(var)];
+            Ensure.GreaterThan(messages.computeBelief(var, evidence, belief), 0.0, "Probability of evidence");
+            setInference(node, belief);
+        }
+        LOGGER.debug("Sent {} messages", sentMessageCount);
+    }
+
+    private static boolean isSinglyConnected(CompiledNetwork compiled) {
+        return isSinglyConnected(compiled.size(), compiled::getParents);
+    }
+
+    private static boolean isSinglyConnected(int size, IntFunction<int[]> parents) {
+        int[] roots = new int[size];
+        for (int var = 0; var < roots.length; var++) {
+            roots[var] = var;
+        }
+        for (int var = 0; var < roots.length; var++) {
+            for (int parent : parents.apply(var)) {
+                int first = findRoot(roots, var);
+                int second = findRoot(roots, parent);
+                if (first == second) {
+                    return false;
+                }
+                roots[first] = second;
+            }
+        }
+        return true;
+    }
+
+    private static int findRoot(int[] roots, int var) {
+        while (roots[var] != var) {
+            roots[var] = roots[roots[var]];
+            var = roots[var];
+        }
+        return var;
+    }
+
+    /**
+     * Marks stale all messages pointing away from the variable. Messages
+     * depending on a stale message are always stale, so marking stops at
+     * messages, which are already stale.
+     */
+    private void invalidate(int var) {
+        Deque<Integer> queue = new ArrayDeque<>();
+        addOutgoing(var, -1, queue);
+        while (!queue.isEmpty()) {
+            int message = queue.poll();
+            if (!stale[message]) {
+                stale[message] = true;
+                int edge = message / 2;
+                addOutgoing(message % 2 == 0 ? messages.getChild(edge) : messages.getParent(edge), edge, queue);
+            }
+        }
+    }
+
+    /**
+     * Adds messages sent by the variable to all neighbours except the one
+     * connected by the specified edge.
+     */
+    private void addOutgoing(int var, int skippedEdge, Deque<Integer> out) {
+        for (int edge : messages.getChildEdges(var)) {
+            if (edge != skippedEdge) {
+                out.add(2 * edge);
+            }
+        }
+        for (int edge : messages.getParentEdges(var)) {
+            if (edge != skippedEdge) {
+                out.add(2 * edge + 1);
+            }
+        }
+    }
+
+    /**
+     * Sends the message if it is stale, sending first the stale messages it
+     * depends on. Message 2 * e is the causal message of edge e, message
+     * 2 * e + 1 is its diagnostic message.
+     */
+    private void send(int message) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        Deque<Integer> inputs = new ArrayDeque<>();
+        stack.push(message);
+        while (!stack.isEmpty()) {
+            int current = stack.peek();
+            if (!stale[current]) {
+                stack.pop();
+                continue;
+            }
+            int edge = current / 2;
+            inputs.clear();
+            addIncoming(current % 2 == 0 ? messages.getParent(edge) : messages.getChild(edge), edge, inputs);
+            boolean ready = true;
+            for (int input : inputs) {
+                if (stale[input]) {
+                    stack.push(input);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                if (current % 2 == 0) {
+                    messages.computePiMessage(edge, evidence, messages.getPi(edge));
+                } else {
+                    messages.computeLambdaMessage(edge, evidence, messages.getLambda(edge));
+                }
+                stale[current] = false;
+                sentMessageCount++;
+                stack.pop();
+            }
+        }
+    }
+
+    /**
+     * Adds messages received by the variable from all neighbours except the
+     * one connected by the specified edge.
+     */
+    private void addIncoming(int var, int skippedEdge, Deque<Integer> out) {
+        for (int edge : messages.getParentEdges(var)) {
+            if (edge != skippedEdge) {
+                out.add(2 * edge);
+            }
+        }
+        for (int edge : messages.getChildEdges(var)) {
+            if (edge != skippedEdge) {
+                out.add(2 * edge + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import jbayes.core.BayesNet;
+import jbayes.core.BayesNetGraph;
+import jbayes.core.Evidence;
+import jbayes.core.Node;
+import jbayes.core.NodeLinkType;
+import jbayes.util.Ensure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inferer that runs another inferer on the smallest subnetwork relevant to the
+ * query.
+ *
+ * <p>
+ * Requisite nodes are found by the Bayes-ball algorithm (Shachter), which
+ * drops barren nodes and nodes d-separated from the requested nodes by the
+ * evidence. Observed nodes, which are needed as evidence but whose CPTs do not
+ * matter, become roots with uniform distribution. For each pattern of
+ * requested and observed nodes, a pruned copy of the network and an inferer
+ * for it created by the factory are kept, so repeated queries only copy
+ * evidence and results. At most {@code maximumSize} patterns are kept; the
+ * least recently used ones are evicted. The factory may create any inferer, e.g.
+ * {@code x -> new RBayesInferer(r, x)}.
+ * </p>
+ *
+ * <p>
+ * Pruned networks are dropped when the network is compiled again after a
+ * change of its version. Changes made directly to the CPT lists are not
+ * detected.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class RelevancePruningInferer extends BayesInfererBase {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RelevancePruningInferer.class);
+
+    private final Function<BayesNet, IBayesInferer> factory;
+    private final Cache<QueryPattern, PrunedNetwork> networks;
+
+    public RelevancePruningInferer(BayesNet network, Function<BayesNet, IBayesInferer> factory) {
+        this(network, factory, 1_000);
+    }
+
+    public RelevancePruningInferer(BayesNet network, Function<BayesNet, IBayesInferer> factory, long maximumSize) {
+        super(network);
+        Ensure.NotNull(factory, "factory");
+        Ensure.GreaterThan(maximumSize, 0L, "maximumSize");
+
+        this.factory = factory;
+        this.networks = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Returns count of query patterns, for which pruned networks are kept.
+     *
+     * @return Count of cached pruned networks
+     */
+    public int getCachedNetworkCount() {
+        return (int) networks.size();
+    }
+
+    /**
+     * Returns nodes needed to compute marginals of the specified nodes given
+     * the current evidence: nodes whose CPTs are needed and observed nodes
+     * whose evidence is needed.
+     *
+     * @param targets Requested nodes
+     * @return Requisite nodes
+     */
+    public static Set<Node> findRequisiteNodes(Collection<Node> targets) {
+        return new BayesBall(targets, null).getRequisiteNodes();
+    }
+
+    @Override
+    protected void compile() {
+        networks.invalidateAll();
+    }
+
+    @Override
+    protected void infer(List<Node> nodes) {
+        Evidence evidence = getEvidence();
+        BitSet observed = new BitSet();
+        for (int id = 0; id < evidence.size(); id++) {
+            if (evidence.isObserved(id)) {
+                observed.set(id);
+            }
+        }
+        PrunedNetwork pruned = getPrunedNetwork(new QueryPattern(new HashSet<>(nodes), observed), nodes, evidence);
+
+        // ids of the copies follow the order of insertion into the pruned network
+        int[] levels = new int[pruned.copies.size()];
+        for (Map.Entry<Node, Node> entry : pruned.copies.entrySet()) {
+            levels[entry.getValue().getId()] = evidence.getLevel(entry.getKey().getId());
+        }
+        List<Node> targets = nodes.stream().map(x -> pruned.copies.get(x)).collect(Collectors.toList());
+        pruned.inferer.inferNodes(Evidence.FromArray(levels), targets);
+        for (Node node : nodes) {
+            node.setInference(pruned.copies.get(node).getInference());
+        }
+    }
+
+    private PrunedNetwork getPrunedNetwork(QueryPattern pattern, List<Node> nodes, Evidence evidence) {
+        PrunedNetwork pruned = networks.getIfPresent(pattern);
+        if (pruned == null) {
+            pruned = new PrunedNetwork(nodes, evidence);
+            networks.put(pattern, pruned);
+        }
+        return pruned;
+    }
+
+    /**
+     * The class marks requisite nodes by passing a ball from the requested
+     * nodes: unobserved nodes pass it from a child to parents and children,
+     * from a parent to children, observed nodes pass it from a parent back to
+     * parents. Nodes are marked by their ids in the graph of the network.
+     */
+    private static final class BayesBall {
+
+        private final BayesNetGraph graph;
+        private final Evidence evidence;
+        private final BitSet top = new BitSet();
+        private final BitSet bottom = new BitSet();
+        private final BitSet visited = new BitSet();
+
+        /**
+         * @param given Evidence of the query or null for the evidence of the
+         * nodes
+         */
+        BayesBall(Collection<Node> targets, Evidence given) {
+            BayesNet network = targets.isEmpty() ? new BayesNet() : targets.iterator().next().getNetwork();
+            Ensure.NotNull(network, "network of the requested nodes");
+            this.graph = network.getGraph();
+            this.evidence = given != null ? given : network.getEvidence();
+            // a visit is the id of the node, shifted left, and whether it comes from a child
+            Deque<Integer> visits = new ArrayDeque<>();
+            for (Node target : targets) {
+                Ensure.IsTrue(graph.getNode(target.getId()) == target,
+                        String.format("Node %s doesn't belong to the network", target.getName()));
+                visits.add(target.getId() << 1 | 1);
+            }
+            while (!visits.isEmpty()) {
+                int visit = visits.poll();
+                int id = visit >>> 1;
+                boolean isFromChild = (visit & 1) != 0;
+                visited.set(id);
+                boolean isObserved = evidence.isObserved(id);
+                if ((isFromChild ? !isObserved : isObserved) && !top.get(id)) {
+                    top.set(id);
+                    for (int i = 0; i < graph.getParentCount(id); i++) {
+                        visits.add(graph.getParent(id, i) << 1 | 1);
+                    }
+                }
+                if (!isObserved && !bottom.get(id)) {
+                    bottom.set(id);
+                    for (int i = 0; i < graph.getChildCount(id); i++) {
+                        visits.add(graph.getChild(id, i) << 1);
+                    }
+                }
+            }
+        }
+
+        BayesNetGraph getGraph() {
+            return graph;
+        }
+
+        /**
+         * Returns ids of the nodes, whose CPTs are needed.
+         */
+        BitSet getProbabilityNodes() {
+            return top;
+        }
+
+        /**
+         * Returns ids of the requisite nodes.
+         */
+        BitSet getRequisiteIds() {
+            BitSet result = (BitSet) top.clone();
+            for (int id = visited.nextSetBit(0); id >= 0; id = visited.nextSetBit(id + 1)) {
+                if (evidence.isObserved(id)) {
+                    result.set(id);
+                }
+            }
+            return result;
+        }
+
+        Set<Node> getRequisiteNodes() {
+            Set<Node> result = new HashSet<>();
+            BitSet ids = getRequisiteIds();
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                result.add(graph.getNode(id));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Pruned copy of the network together with its inferer.
+     */
+    private final class PrunedNetwork {
+
+        private final Map<Node, Node> copies = new LinkedHashMap<>();
+        private final IBayesInferer inferer;
+
+        PrunedNetwork(Collection<Node> targets, Evidence evidence) {
+            BayesBall ball = new BayesBall(targets, evidence);
+            BayesNetGraph graph = ball.getGraph();
+            BitSet requisite = ball.getRequisiteIds();
+            BayesNet network = new BayesNet(getNetwork().getName());
+            for (int id = requisite.nextSetBit(0); id >= 0; id = requisite.nextSetBit(id + 1)) {
+                Node node = graph.getNode(id);
+                String[] levels = node.getLevels().toArray(new String[0]);
+                Node copy = new Node(node.getName(), levels, node.getLinkType());
+                if (ball.getProbabilityNodes().get(id)) {
+                    copy.setDistribution(node.getDistribution().copy());
+                } else {
+                    copy.setLinkType(NodeLinkType.NONE);
+                }
+                network.addNode(copy);
+                copies.put(node, copy);
+            }
+            // parents are linked in their original order, which defines the CPT layout
+            BitSet probability = ball.getProbabilityNodes();
+            for (int id = probability.nextSetBit(0); id >= 0; id = probability.nextSetBit(id + 1)) {
+                for (int i = 0; i < graph.getParentCount(id); i++) {
+                    network.addLink(copies.get(graph.getNode(graph.getParent(id, i))), copies.get(graph.getNode(id)));
+                }
+            }
+            this.inferer = factory.apply(network);
+            LOGGER.debug("Network {} is pruned from {} to {} nodes", getNetwork(),
+                    getNetwork().getNodes().size(), copies.size());
+        }
+    }
+
+    /**
+     * Requested and observed nodes of a query.
+     */
+    private static final class QueryPattern {
+
+        private final Set<Node> targets;
+        private final BitSet observed;
+
+        QueryPattern(Set<Node> targets, BitSet observed) {
+            this.targets = targets;
+            this.observed = observed;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(targets, observed);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof QueryPattern)) {
+                return false;
+            }
+            QueryPattern other = (QueryPattern) obj;
+            return targets.equals(other.targets) && observed.equals(other.observed);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import jbayes.core.BayesNet;
+import jbayes.core.Factor;
+import jbayes.core.Node;
+import jbayes.util.Ensure;
+
+/**
+ * Exact inferer that computes the marginal of each requested node by variable
+ * elimination.
+ *
+ * <p>
+ * Only the CPTs of the requested node, the observed nodes and their ancestors
+ * take part in a query. The elimination order is chosen by an
+ * {@link EliminationHeuristic} and cached per combination of the requested node
+ * and the set of observed nodes, so it is computed once for each query
+ * pattern.
+ * </p>
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class VariableEliminationInferer extends BayesInfererBase {
+
+    private final EliminationHeuristic heuristic;
+    private final Map<QueryPattern, int[]> orders = new ConcurrentHashMap<>();
+    private CompiledNetwork compiled;
+
+    public VariableEliminationInferer(BayesNet network) {
+        this(network, EliminationHeuristic.MIN_FILL);
+    }
+
+    public VariableEliminationInferer(BayesNet network, EliminationHeuristic heuristic) {
+        super(network);
+        Ensure.NotNull(heuristic, "heuristic");
+
+        this.heuristic = heuristic;
+    }
+
+    public EliminationHeuristic getHeuristic() {
+        return heuristic;
+    }
+
+    /**
+     * Returns count of the cached elimination orders.
+     *
+     * @return Count of the cached elimination orders
+     */
+    public int getCachedOrderCount() {
+        return orders.size();
+    }
+
+    @Override
+    protected void compile() {
+        compiled = CompiledNetwork.compile(getNetwork());
+        orders.clear();
+    }
+
+    @Override
+    protected void infer(List<Node> nodes) {
+        int[] evidence = getEvidence(compiled);
+        BitSet observed = new BitSet(evidence.length);
+        for (int var = 0; var < evidence.length; var++) {
+            if (evidence[var] != -1) {
+                observed.set(var);
+            }
+        }
+
+        for (Node node : nodes) {
+            int target = compiled.getId(node);
+            BitSet relevant = findAncestors(target, observed);
+            List<Factor> factors = new ArrayList<>();
+            for (int var = relevant.nextSetBit(0); var >= 0; var = relevant.nextSetBit(var + 1)) {
+                Factor factor = compiled.getFamily(var);
+                for (int v : factor.getVariables()) {
+                    if (evidence[v] != -1) {
+                        factor = factor.reduce(v, evidence[v]);
+                    }
+                }
+                factors.add(factor);
+            }
+
+            int[] order = orders.computeIfAbsent(new QueryPattern(target, observed),
+                    x -> findOrder(target, relevant, observed, factors));
+            Factor marginal = eliminate(factors, order).marginalize(new int[]{target});
+            Ensure.GreaterThan(marginal.normalize(), 0.0, "Probability of evidence");
+            setInference(node, marginal.getValues());
+        }
+    }
+
+    /**
+     * Returns the target, the observed variables and all their ancestors.
+     */
+    private BitSet findAncestors(int target, BitSet observed) {
+        BitSet result = (BitSet) observed.clone();
+        result.set(target);
+        Deque<Integer> queue = new ArrayDeque<>();
+        result.stream().forEach(queue::add);
+        while (!queue.isEmpty()) {
+            for (int parent : compiled.getParents(queue.poll())) {
+                if (!result.get(parent)) {
+                    result.set(parent);
+                    queue.add(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    private int[] findOrder(int target, BitSet relevant, BitSet observed, List<Factor> factors) {
+        BitSet[] adjacency = EliminationOrdering.interactionGraph(compiled.size(),
+                factors.stream().map(x -> x.getVariables()).collect(Collectors.toList()));
+        BitSet variables = (BitSet) relevant.clone();
+        variables.andNot(observed);
+        variables.clear(target);
+        return EliminationOrdering.eliminate(adjacency, compiled.getCards(), variables, heuristic);
+    }
+
+    private static Factor eliminate(List<Factor> factors, int[] order) {
+        List<Factor> pool = new ArrayList<>(factors);
+        for (int var : order) {
+            Factor product = null;
+            for (Iterator<Factor> it = pool.iterator(); it.hasNext();) {
+                Factor factor = it.next();
+                if (factor.contains(var)) {
+                    product = product == null ? factor : product.multiply(factor);
+                    it.remove();
+                }
+            }
+            if (product != null) {
+                pool.add(product.marginalize(without(product.getVariables(), var)));
+            }
+        }
+
+        Factor result = pool.get(0);
+        for (int i = 1; i < pool.size(); i++) {
+            result = result.multiply(pool.get(i));
+        }
+        return result;
+    }
+
+    private static int[] without(int[] vars, int var) {
+        int[] result = new int[vars.length - 1];
+        for (int i = 0, j = 0; i < vars.length; i++) {
+            if (vars[i] != var) {
+                result[j++] = vars[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The class represents a key of the cache of elimination orders.
+     */
+    private static final class QueryPattern {
+
+        private final int target;
+        private final BitSet observed;
+
+        QueryPattern(int target, BitSet observed) {
+            this.target = target;
+            this.observed = (BitSet) observed.clone();
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 5;
+            hash = 41 * hash + this.target;
+            hash = 41 * hash + Objects.hashCode(this.observed);
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final QueryPattern other = (QueryPattern) obj;
+            if (this.target != other.target) {
+                return false;
+            }
+            if (!Objects.equals(this.observed, other.observed)) {
+                return false;
+            }
+            return true;
+        }
+    }
+}
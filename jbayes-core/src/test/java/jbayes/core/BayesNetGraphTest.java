@@ -0,0 +1,142 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import java.util.BitSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class BayesNetGraphTest {
+
+    public BayesNetGraphTest() {
+    }
+
+    /**
+     * Creates the network a -> c <- b, c -> d.
+     */
+    private static BayesNet createNetwork() {
+        final String[] levels = new String[]{"yes", "no"};
+        BayesNet bn = new BayesNet("graph");
+        Node a = new Node("a", levels);
+        Node b = new Node("b", levels);
+        Node c = new Node("c", levels);
+        Node d = new Node("d", levels);
+        bn.addLink(c, d);
+        bn.addLink(a, c);
+        bn.addLink(b, c);
+        return bn;
+    }
+
+    /**
+     * Test of getParents method, of class BayesNetGraph.
+     */
+    @Test
+    public void testGetParents_Network_ParentsInOrderOfInLinks() {
+        System.out.println("getParents");
+        BayesNet bn = createNetwork();
+        BayesNetGraph instance = bn.getGraph();
+        int a = bn.getNodeByName("a").getId();
+        int b = bn.getNodeByName("b").getId();
+        int c = bn.getNodeByName("c").getId();
+        int d = bn.getNodeByName("d").getId();
+
+        assertEquals(4, instance.size());
+        assertArrayEquals(new int[]{a, b}, instance.getParents(c));
+        assertArrayEquals(new int[]{c}, instance.getParents(d));
+        assertArrayEquals(new int[0], instance.getParents(a));
+        assertArrayEquals(new int[]{c}, instance.getChildren(b));
+        assertEquals(1, instance.getChildCount(c));
+        assertEquals(d, instance.getChild(c, 0));
+    }
+
+    /**
+     * Test of getTopologicalOrder method, of class BayesNetGraph.
+     */
+    @Test
+    public void testGetTopologicalOrder_Network_ParentsBeforeChildren() {
+        System.out.println("getTopologicalOrder");
+        BayesNetGraph instance = createNetwork().getGraph();
+
+        int[] order = instance.getTopologicalOrder();
+
+        int[] positions = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            positions[order[i]] = i;
+        }
+        for (int id = 0; id < instance.size(); id++) {
+            for (int parent : instance.getParents(id)) {
+                assertTrue(positions[parent] < positions[id]);
+            }
+        }
+    }
+
+    /**
+     * Test of getTopologicalOrder method, of class BayesNetGraph.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testGetTopologicalOrder_Cycle_ExceptionThrown() {
+        System.out.println("getTopologicalOrder");
+        BayesNet bn = createNetwork();
+        bn.addLink(bn.getNodeByName("d"), bn.getNodeByName("a"));
+
+        bn.getGraph().getTopologicalOrder();
+    }
+
+    /**
+     * Test of getAncestors method, of class BayesNetGraph.
+     */
+    @Test
+    public void testGetAncestors_Network_AllAncestorsReturned() {
+        System.out.println("getAncestors");
+        BayesNet bn = createNetwork();
+        BayesNetGraph instance = bn.getGraph();
+        int d = bn.getNodeByName("d").getId();
+
+        BitSet expected = new BitSet();
+        expected.set(bn.getNodeByName("a").getId());
+        expected.set(bn.getNodeByName("b").getId());
+        expected.set(bn.getNodeByName("c").getId());
+        assertEquals(expected, instance.getAncestors(d));
+        assertTrue(instance.isAncestor(bn.getNodeByName("a").getId(), d));
+        assertFalse(instance.isAncestor(d, bn.getNodeByName("a").getId()));
+    }
+
+    /**
+     * Test of getGraph method, of class BayesNet.
+     */
+    @Test
+    public void testGetGraph_LinkAdded_GraphRebuilt() {
+        System.out.println("getGraph");
+        BayesNet bn = createNetwork();
+        BayesNetGraph before = bn.getGraph();
+
+        bn.getNodeByName("a").setDistribution(1, 1);
+        BayesNetGraph afterDistribution = bn.getGraph();
+        bn.addLink(bn.getNodeByName("a"), bn.getNodeByName("d"));
+        BayesNetGraph afterLink = bn.getGraph();
+
+        assertSame(before, afterDistribution);
+        assertNotSame(before, afterLink);
+        assertEquals(2, afterLink.getParentCount(bn.getNodeByName("d").getId()));
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class BayesNetSnapshotTest {
+
+    public BayesNetSnapshotTest() {
+    }
+
+    /**
+     * Creates the network rain -> grasswet <- sprinkler.
+     */
+    private static BayesNet createNetwork() {
+        final String[] levels = new String[]{"T", "F"};
+        BayesNet bn = new BayesNet("grass");
+        Node rain = new Node("rain", levels, new Double[]{0.2, 0.8});
+        Node sprinkler = new Node("sprinkler", levels, new Double[]{0.4, 0.6});
+        Node grasswet = new Node("grasswet", levels, new Double[]{0.99, 0.01, 0.8, 0.2, 0.9, 0.1, 0.0, 1.0});
+        bn.addLink(rain, grasswet);
+        bn.addLink(sprinkler, grasswet);
+        return bn;
+    }
+
+    /**
+     * Test of snapshot method, of class BayesNet.
+     */
+    @Test
+    public void testSnapshot_DistributionChanged_SnapshotUnchanged() {
+        System.out.println("snapshot");
+        BayesNet bn = createNetwork();
+        BayesNetSnapshot instance = bn.snapshot();
+
+        bn.getNodeByName("rain").setDistribution(0.5, 0.5);
+        bn.getNodeByName("sprinkler").setLevels("yes", "no");
+
+        DiscreteDistribution rain = (DiscreteDistribution) instance.getNode("rain").getDistribution();
+        assertArrayEquals(new double[]{0.2, 0.8}, rain.getCptValues(), 0.0);
+        assertEquals(Arrays.asList("T", "F"), instance.getNode("sprinkler").getLevels());
+    }
+
+    /**
+     * Test of snapshot method, of class BayesNet.
+     */
+    @Test
+    public void testSnapshot_NoChanges_SameSnapshotReturned() {
+        System.out.println("snapshot");
+        BayesNet bn = createNetwork();
+        BayesNetSnapshot first = bn.snapshot();
+
+        bn.setEvidence("rain", "T");
+        BayesNetSnapshot second = bn.snapshot();
+
+        assertSame(first, second);
+    }
+
+    /**
+     * Test of snapshot method, of class BayesNet.
+     */
+    @Test
+    public void testSnapshot_OneNodeChanged_OtherNodesShared() {
+        System.out.println("snapshot");
+        BayesNet bn = createNetwork();
+        BayesNetSnapshot before = bn.snapshot();
+
+        bn.getNodeByName("rain").setDistribution(0.5, 0.5);
+        BayesNetSnapshot after = bn.snapshot();
+
+        assertNotSame(before, after);
+        assertNotSame(before.getNode("rain"), after.getNode("rain"));
+        assertSame(before.getNode("sprinkler"), after.getNode("sprinkler"));
+        assertSame(before.getNode("grasswet"), after.getNode("grasswet"));
+        assertEquals(Collections.singletonList("rain"), after.getChangedNodes(before));
+    }
+
+    /**
+     * Test of getChangedNodes method, of class BayesNetSnapshot.
+     */
+    @Test
+    public void testGetChangedNodes_LinkAdded_ChildAndNewNodeChanged() {
+        System.out.println("getChangedNodes");
+        BayesNet bn = createNetwork();
+        BayesNetSnapshot before = bn.snapshot();
+
+        Node cloudy = new Node("cloudy", new String[]{"T", "F"}, new Double[]{0.5, 0.5});
+        bn.addLink(cloudy, bn.getNodeByName("rain"));
+        bn.getNodeByName("rain").setDistribution(0.8, 0.2, 0.2, 0.8);
+        BayesNetSnapshot after = bn.snapshot();
+
+        assertEquals(Arrays.asList("rain", "cloudy"), after.getChangedNodes(before));
+        assertEquals(Collections.singletonList("rain"), before.getChangedNodes(after));
+        assertSame(before.getNode("grasswet"), after.getNode("grasswet"));
+    }
+
+    /**
+     * Test of getDistribution method, of class BayesNetSnapshot.NodeSnapshot.
+     */
+    @Test
+    public void testGetDistribution_ReadTwice_SameInstanceReturned() {
+        System.out.println("getDistribution");
+        BayesNet bn = createNetwork();
+        BayesNetSnapshot instance = bn.snapshot();
+
+        BayesNetSnapshot.NodeSnapshot rain = instance.getNode("rain");
+
+        assertSame(rain.getDistribution(), rain.getDistribution());
+        assertNotSame(bn.getNodeByName("rain").getDistribution(), rain.getDistribution());
+        assertNotSame(rain.getDistribution(), instance.toNetwork().getNodeByName("rain").getDistribution());
+    }
+
+    /**
+     * Test of toNetwork method, of class BayesNetSnapshot.
+     */
+    @Test
+    public void testToNetwork_Snapshot_SameStructureAndDistributions() {
+        System.out.println("toNetwork");
+        BayesNet bn = createNetwork();
+        BayesNetSnapshot instance = bn.snapshot();
+
+        BayesNet result = instance.toNetwork();
+        bn.getNodeByName("grasswet").setDistribution(1, 1, 1, 1, 1, 1, 1, 1);
+
+        Node grasswet = result.getNodeByName("grasswet");
+        assertNotSame(bn.getNodeByName("grasswet"), grasswet);
+        assertEquals("rain", grasswet.getInLinks().get(0).getParent().getName());
+        assertEquals("sprinkler", grasswet.getInLinks().get(1).getParent().getName());
+        assertArrayEquals(new double[]{0.99, 0.01, 0.8, 0.2, 0.9, 0.1, 0.0, 1.0},
+                ((DiscreteDistribution) grasswet.getDistribution()).getCptValues(), 0.0);
+    }
+
+}
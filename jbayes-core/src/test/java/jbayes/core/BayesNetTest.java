@@ -17,6 +17,9 @@
  */
 package jbayes.core;
 
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import jbayes.core.BayesNet;
 import jbayes.core.Link;
 import jbayes.core.Node;
@@ -245,4 +248,113 @@ public class BayesNetTest {
         assertEquals(1, after - before);
     }
 
+    /**
+     * Test of getVersion method, of class BayesNet.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testGetVersion_ChangesOfStructureAndDistributions_VersionIncremented() throws Exception {
+        System.out.println("getVersion");
+        Node a = new Node("a", new String[]{"yes", "no"});
+        Node b = new Node("b", new String[]{"yes", "no"});
+        BayesNet instance = new BayesNet();
+
+        long before = instance.getVersion();
+        instance.addLink(a, b);
+        long afterLink = instance.getVersion();
+        a.setDistribution(1, 1);
+        long afterDistribution = instance.getVersion();
+        a.setEvidence("yes");
+        long afterEvidence = instance.getVersion();
+
+        assertTrue(afterLink > before);
+        assertTrue(afterDistribution > afterLink);
+        assertEquals(afterDistribution, afterEvidence);
+    }
+
+    /**
+     * Test of getNodeByName method, of class BayesNet.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testGetNodeByName_AddedNodes_NodesFound() throws Exception {
+        System.out.println("getNodeByName");
+        Node a = new Node("a", new String[]{"yes", "no"});
+        Node b = new Node("b", new String[]{"yes", "no"});
+        BayesNet instance = new BayesNet();
+        instance.addLink(a, b);
+
+        assertSame(a, instance.getNodeByName("a"));
+        assertSame(b, instance.getNodeByName("b"));
+    }
+
+    /**
+     * Test of getNodeByName method, of class BayesNet.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test(expected = NoSuchElementException.class)
+    public void testGetNodeByName_UnknownName_ExceptionThrown() throws Exception {
+        System.out.println("getNodeByName");
+        BayesNet instance = new BayesNet();
+        instance.addNode(new Node("a", new String[]{"yes", "no"}));
+
+        instance.getNodeByName("b");
+    }
+
+    /**
+     * Test of addNode method, of class BayesNet.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testAddNode_SameName_ExceptionThrown() throws Exception {
+        System.out.println("addNode");
+        BayesNet instance = new BayesNet();
+        instance.addNode(new Node("a", new String[]{"yes", "no"}));
+
+        instance.addNode(new Node("a", new String[]{"on", "off"}));
+    }
+
+    /**
+     * Test of getNodeById method, of class BayesNet.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testGetNodeById_AddedNodes_DenseIdsInOrderOfInsertion() throws Exception {
+        System.out.println("getNodeById");
+        Node a = new Node("a", new String[]{"yes", "no"});
+        Node b = new Node("b", new String[]{"yes", "no"});
+        Node c = new Node("c", new String[]{"yes", "no"});
+        BayesNet instance = new BayesNet();
+        instance.addLink(b, a);
+        instance.addNode(c);
+
+        assertEquals(0, b.getId());
+        assertEquals(1, a.getId());
+        assertEquals(2, c.getId());
+        assertSame(a, instance.getNodeById(1));
+        assertNull(instance.getNodeById(3));
+    }
+
+    /**
+     * Test of addNode method, of class BayesNet.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testAddNode_NodeInHashSetBeforeAdding_NodeStillFound() throws Exception {
+        System.out.println("addNode");
+        Node node = new Node("a", new String[]{"yes", "no"});
+        Set<Node> set = new HashSet<>();
+        set.add(node);
+        BayesNet instance = new BayesNet();
+        instance.addNode(node);
+
+        assertTrue(set.contains(node));
+    }
+
 }
@@ -0,0 +1,75 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class DirectFactorStorageTest {
+
+    public DirectFactorStorageTest() {
+    }
+
+    /**
+     * Test of get method, of class DirectFactorStorage.
+     */
+    @Test
+    public void testGet_NewStorage_ZeroValues() {
+        System.out.println("get");
+        try (DirectFactorStorage instance = new DirectFactorStorage(10)) {
+            assertEquals(10, instance.size());
+            for (long i = 0; i < instance.size(); i++) {
+                assertEquals(0.0, instance.get(i), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Test of set method, of class DirectFactorStorage.
+     */
+    @Test
+    public void testSet_SeveralChunks_ValuesKept() {
+        System.out.println("set");
+        try (DirectFactorStorage instance = new DirectFactorStorage(11, 2)) {
+            for (long i = 0; i < instance.size(); i++) {
+                instance.set(i, i * 0.5);
+            }
+            for (long i = 0; i < instance.size(); i++) {
+                assertEquals(i * 0.5, instance.get(i), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Test of close method, of class DirectFactorStorage.
+     */
+    @Test
+    public void testClose_CalledTwice_StorageClosed() {
+        System.out.println("close");
+        DirectFactorStorage instance = new DirectFactorStorage(4);
+
+        instance.close();
+        instance.close();
+
+        assertTrue(instance.isClosed());
+    }
+}
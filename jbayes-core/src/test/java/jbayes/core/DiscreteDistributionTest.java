@@ -0,0 +1,84 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class DiscreteDistributionTest {
+
+    public DiscreteDistributionTest() {
+    }
+
+    /**
+     * Test of getCpt method, of class DiscreteDistribution.
+     */
+    @Test
+    public void testGetCpt_FromIntegerArray_ListViewOfValues() {
+        System.out.println("getCpt");
+        DiscreteDistribution instance = DiscreteDistribution.FromArray(5, 5, 9, 1);
+
+        assertEquals(Arrays.asList(5.0, 5.0, 9.0, 1.0), instance.getCpt());
+        assertArrayEquals(new double[]{5.0, 5.0, 9.0, 1.0}, instance.getCptValues(), 0.0);
+    }
+
+    /**
+     * Test of getCpt method, of class DiscreteDistribution.
+     */
+    @Test
+    public void testGetCpt_SetThroughList_ValuesChanged() {
+        System.out.println("getCpt");
+        double[] values = new double[]{1.0, 0.0};
+        DiscreteDistribution instance = new DiscreteDistribution(values);
+
+        instance.getCpt().set(1, 3.0);
+
+        assertSame(values, instance.getCptValues());
+        assertEquals(3.0, values[1], 0.0);
+    }
+
+    /**
+     * Test of setInference method, of class DiscreteDistribution.
+     */
+    @Test
+    public void testSetInference_Null_InferenceIsNull() {
+        System.out.println("setInference");
+        DiscreteDistribution instance = DiscreteDistribution.FromArray(1.0, 1.0);
+
+        instance.setInferenceValues(new double[]{0.5, 0.5});
+        instance.setInference(null);
+
+        assertNull(instance.getInference());
+    }
+
+    /**
+     * Test of convertToString method, of class DiscreteDistribution.
+     */
+    @Test
+    public void testConvertToString_CommaSeparatedValues() {
+        System.out.println("convertToString");
+        DiscreteDistribution instance = DiscreteDistribution.FromArray(5, 5, 9, 1);
+
+        assertEquals("5.0, 5.0, 9.0, 1.0", instance.convertToString());
+    }
+}
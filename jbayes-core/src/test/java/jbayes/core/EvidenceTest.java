@@ -0,0 +1,115 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class EvidenceTest {
+
+    public EvidenceTest() {
+    }
+
+    private static BayesNet createNetwork() {
+        final String[] levels = new String[]{"T", "F"};
+        BayesNet bn = new BayesNet("grass");
+        bn.addLink(new Node("rain", levels, new Double[]{0.2, 0.8}),
+                new Node("grasswet", levels, new Double[]{0.9, 0.1, 0.1, 0.9}));
+        return bn;
+    }
+
+    /**
+     * Test of equals method, of class Evidence.
+     */
+    @Test
+    public void testEquals_SameLevels_EqualWithSameHash() {
+        System.out.println("equals");
+        Evidence a = Evidence.none(3).with(1, 0);
+        Evidence b = Evidence.FromArray(-1, 0, -1);
+
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, b.with(2, 1));
+        assertEquals(Evidence.none(3), a.without(1));
+        assertEquals(1, a.getObservedCount());
+    }
+
+    /**
+     * Test of FromArray method, of class Evidence.
+     */
+    @Test
+    public void testFromArray_ArrayChanged_EvidenceUnchanged() {
+        System.out.println("FromArray");
+        int[] levels = new int[]{1, -1};
+        Evidence instance = Evidence.FromArray(levels);
+
+        levels[0] = 0;
+
+        assertEquals(1, instance.getLevel(0));
+        assertFalse(instance.isObserved(1));
+    }
+
+    /**
+     * Test of FromArray method, of class Evidence.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testFromArray_NegativeLevel_ExceptionThrown() {
+        System.out.println("FromArray");
+        Evidence.FromArray(0, -2);
+    }
+
+    /**
+     * Test of getEvidence method, of class BayesNet.
+     */
+    @Test
+    public void testGetEvidence_NodeObserved_LevelIndexByNodeId() {
+        System.out.println("getEvidence");
+        BayesNet bn = createNetwork();
+        Node grasswet = bn.getNodeByName("grasswet");
+        grasswet.setEvidence("F");
+
+        Evidence result = bn.getEvidence();
+
+        assertEquals(Evidence.none(2).with(grasswet, "F"), result);
+        assertEquals(1, result.getLevel(grasswet.getId()));
+    }
+
+    /**
+     * Test of setEvidence method, of class BayesNet.
+     */
+    @Test
+    public void testSetEvidence_Evidence_NodesObservedAndCleared() {
+        System.out.println("setEvidence");
+        BayesNet bn = createNetwork();
+        Node rain = bn.getNodeByName("rain");
+        Node grasswet = bn.getNodeByName("grasswet");
+        rain.setEvidence("T");
+
+        bn.setEvidence(Evidence.none(2).with(grasswet, "T"));
+
+        assertNull(rain.getEvidence());
+        assertEquals("T", grasswet.getEvidence());
+        assertEquals(0, grasswet.getEvidenceIndex());
+        assertEquals(1.0, grasswet.getInference("T"), 0.0);
+    }
+
+}
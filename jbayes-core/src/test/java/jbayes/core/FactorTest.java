@@ -0,0 +1,339 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class FactorTest {
+
+    public FactorTest() {
+    }
+
+    /**
+     * Creates a factor over variables 0, 1, 2 with cardinalities 2, 3, 2 and
+     * values 1..12.
+     */
+    private static Factor createFactor() {
+        double[] values = new double[12];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i + 1;
+        }
+        return new Factor(new int[]{0, 1, 2}, new int[]{2, 3, 2}, values);
+    }
+
+    /**
+     * Returns the state of the variable at the specified position in the
+     * entry with the specified index.
+     */
+    private static int stateOf(Factor factor, int index, int position) {
+        return (int) ((index / factor.getStrides()[position]) % factor.getCards()[position]);
+    }
+
+    /**
+     * Returns a direct copy of the specified factor.
+     */
+    private static Factor toDirect(Factor factor) {
+        DirectFactorStorage storage = new DirectFactorStorage(factor.size(), 2);
+        for (int i = 0; i < factor.size(); i++) {
+            storage.set(i, factor.get(i));
+        }
+        return new Factor(factor.getVariables(), factor.getCards(), storage);
+    }
+
+    private static double[] valuesOf(Factor factor) {
+        double[] result = new double[(int) factor.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = factor.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Test of constructor, of class Factor.
+     */
+    @Test
+    public void testFactor_ThreeVariables_StridesPrecomputed() {
+        System.out.println("Factor");
+        Factor instance = createFactor();
+
+        assertArrayEquals(new long[]{1, 2, 6}, instance.getStrides());
+        assertEquals(12, instance.size());
+    }
+
+    /**
+     * Test of constructor, of class Factor.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testFactor_WrongSize_ExceptionThrown() {
+        System.out.println("Factor");
+        new Factor(new int[]{0, 1}, new int[]{2, 3}, new double[5]);
+    }
+
+    /**
+     * Test of multiply method, of class Factor.
+     */
+    @Test
+    public void testMultiply_SharedVariable_ProductOfConsistentEntries() {
+        System.out.println("multiply");
+        Factor a = createFactor();
+        Factor b = new Factor(new int[]{3, 1}, new int[]{2, 3}, new double[]{1, 2, 3, 4, 5, 6});
+
+        Factor result = a.multiply(b);
+
+        assertArrayEquals(new int[]{0, 1, 2, 3}, result.getVariables());
+        assertArrayEquals(new int[]{2, 3, 2, 2}, result.getCards());
+        for (int i = 0; i < result.size(); i++) {
+            int aIndex = i % 12;
+            int bIndex = stateOf(result, i, 3) + 2 * stateOf(result, i, 1);
+            assertEquals(a.getValues()[aIndex] * b.getValues()[bIndex], result.getValues()[i], 0.0);
+        }
+    }
+
+    /**
+     * Test of multiplyInPlace method, of class Factor.
+     */
+    @Test
+    public void testMultiplyInPlace_SubsetOfVariables_EntriesScaled() {
+        System.out.println("multiplyInPlace");
+        Factor instance = createFactor();
+        Factor other = new Factor(new int[]{2, 0}, new int[]{2, 2}, new double[]{1, 10, 100, 1000});
+
+        instance.multiplyInPlace(other);
+
+        for (int i = 0; i < instance.size(); i++) {
+            double factor = other.getValues()[stateOf(instance, i, 2) + 2 * stateOf(instance, i, 0)];
+            assertEquals((i + 1) * factor, instance.getValues()[i], 0.0);
+        }
+    }
+
+    /**
+     * Test of marginalize method, of class Factor.
+     */
+    @Test
+    public void testMarginalize_ReorderedVariables_SumsOfConsistentEntries() {
+        System.out.println("marginalize");
+        Factor instance = createFactor();
+
+        Factor result = instance.marginalize(new int[]{2, 0});
+
+        // entries with var0 = s0, var2 = s2 are 1 + s0 + 6 * s2 + {0, 2, 4}
+        assertArrayEquals(new double[]{9, 27, 12, 30}, result.getValues(), 0.0);
+        assertEquals(instance.sum(), result.sum(), 0.0);
+    }
+
+    /**
+     * Test of maximize method, of class Factor.
+     */
+    @Test
+    public void testMaximize_OneVariable_MaximumOfConsistentEntries() {
+        System.out.println("maximize");
+        Factor instance = createFactor();
+
+        Factor result = instance.maximize(new int[]{1});
+
+        assertArrayEquals(new double[]{8, 10, 12}, result.getValues(), 0.0);
+    }
+
+    /**
+     * Test of reduce method, of class Factor.
+     */
+    @Test
+    public void testReduce_MiddleVariable_VariableRemoved() {
+        System.out.println("reduce");
+        Factor instance = createFactor();
+
+        Factor result = instance.reduce(1, 2);
+
+        assertArrayEquals(new int[]{0, 2}, result.getVariables());
+        assertArrayEquals(new double[]{5, 6, 11, 12}, result.getValues(), 0.0);
+    }
+
+    /**
+     * Test of observe method, of class Factor.
+     */
+    @Test
+    public void testObserve_MiddleVariable_InconsistentEntriesZeroed() {
+        System.out.println("observe");
+        Factor instance = createFactor();
+
+        instance.observe(1, 1);
+
+        for (int i = 0; i < instance.size(); i++) {
+            assertEquals(stateOf(instance, i, 1) == 1 ? i + 1 : 0.0, instance.getValues()[i], 0.0);
+        }
+    }
+
+    /**
+     * Test of normalize method, of class Factor.
+     */
+    @Test
+    public void testNormalize_PositiveValues_SumToOne() {
+        System.out.println("normalize");
+        Factor instance = createFactor();
+
+        assertEquals(78.0, instance.normalize(), 0.0);
+        assertEquals(1.0, instance.sum(), 1e-12);
+        assertEquals(12.0 / 78.0, instance.getValues()[11], 1e-12);
+    }
+
+    /**
+     * Test of mapIndices method, of class Factor.
+     */
+    @Test
+    public void testMapIndices_SubsetOfVariables_ConsistentIndices() {
+        System.out.println("mapIndices");
+        Factor instance = createFactor();
+
+        int[] result = Factor.mapIndices(instance.getVariables(), instance.getCards(), new int[]{1, 2}, new int[]{3, 2});
+
+        for (int i = 0; i < result.length; i++) {
+            assertEquals(stateOf(instance, i, 1) + 3 * stateOf(instance, i, 2), result[i]);
+        }
+    }
+
+    /**
+     * Test of reduce method, of class Factor.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testReduce_UnknownVariable_ExceptionThrown() {
+        System.out.println("reduce");
+        createFactor().reduce(5, 0);
+    }
+
+    /**
+     * Test of multiply method, of class Factor.
+     */
+    @Test
+    public void testMultiply_DirectFactor_SameValuesAsOnHeap() {
+        System.out.println("multiply");
+        Factor a = createFactor();
+        Factor b = new Factor(new int[]{3, 1}, new int[]{2, 3}, new double[]{1, 2, 3, 4, 5, 6});
+
+        try (Factor direct = toDirect(a); Factor result = direct.multiply(b)) {
+            assertTrue(result.isDirect());
+            assertArrayEquals(a.multiply(b).getValues(), valuesOf(result), 0.0);
+        }
+    }
+
+    /**
+     * Test of marginalize method, of class Factor.
+     */
+    @Test
+    public void testMarginalize_DirectFactor_MarginalOnHeap() {
+        System.out.println("marginalize");
+        try (Factor instance = toDirect(createFactor())) {
+            Factor result = instance.marginalize(new int[]{2, 0});
+
+            assertFalse(result.isDirect());
+            assertArrayEquals(new double[]{9, 27, 12, 30}, result.getValues(), 0.0);
+        }
+    }
+
+    /**
+     * Test of observe and reduce methods, of class Factor.
+     */
+    @Test
+    public void testObserveAndReduce_DirectFactor_SameValuesAsOnHeap() {
+        System.out.println("observe");
+        Factor expected = createFactor();
+        expected.observe(1, 1);
+        Factor other = new Factor(new int[]{2, 0}, new int[]{2, 2}, new double[]{1, 10, 100, 1000});
+        expected.multiplyInPlace(other);
+
+        try (Factor instance = toDirect(createFactor())) {
+            instance.observe(1, 1);
+            instance.multiplyInPlace(other);
+
+            assertArrayEquals(expected.getValues(), valuesOf(instance), 0.0);
+            assertArrayEquals(expected.reduce(1, 1).getValues(), instance.reduce(1, 1).getValues(), 0.0);
+            assertEquals(expected.normalize(), instance.normalize(), 1e-9);
+            assertArrayEquals(expected.getValues(), valuesOf(instance), 1e-15);
+        }
+    }
+
+    /**
+     * Test of getValues method, of class Factor.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testGetValues_DirectFactor_ExceptionThrown() {
+        System.out.println("getValues");
+        try (Factor instance = Factor.unit(new int[]{0}, new int[]{2}, true)) {
+            instance.getValues();
+        }
+    }
+
+    /**
+     * Test of multiplyInPlace method, of class Factor.
+     */
+    @Test
+    public void testMultiplyInPlace_ContiguousRuns_EntriesScaled() {
+        System.out.println("multiplyInPlace");
+        int[][] runs = new int[][]{{0}, {0, 1}, {1}, {1, 2}, {2}};
+        for (int[] run : runs) {
+            Factor instance = createFactor();
+            int[] runCards = new int[run.length];
+            for (int i = 0; i < run.length; i++) {
+                runCards[i] = instance.getCards()[run[i]];
+            }
+            Factor other = createFactor().marginalize(run);
+
+            instance.multiplyInPlace(other);
+
+            for (int i = 0; i < instance.size(); i++) {
+                int otherIndex = 0;
+                for (int j = run.length - 1; j >= 0; j--) {
+                    otherIndex = otherIndex * runCards[j] + stateOf(instance, i, run[j]);
+                }
+                assertEquals((i + 1) * other.get(otherIndex), instance.get(i), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Test of marginalize method, of class Factor.
+     */
+    @Test
+    public void testMarginalize_ContiguousRuns_SameAsSumOfEntries() {
+        System.out.println("marginalize");
+        Factor instance = createFactor();
+
+        assertArrayEquals(new double[]{36, 42}, instance.marginalize(new int[]{0}).getValues(), 0.0);
+        assertArrayEquals(new double[]{21, 57}, instance.marginalize(new int[]{2}).getValues(), 0.0);
+        assertArrayEquals(new double[]{3, 7, 11, 15, 19, 23}, instance.marginalize(new int[]{1, 2}).getValues(), 0.0);
+        assertArrayEquals(new double[]{8, 10, 12, 14, 16, 18}, instance.marginalize(new int[]{0, 1}).getValues(), 0.0);
+    }
+
+    /**
+     * Test of multiply method, of class Factor.
+     */
+    @Test
+    public void testMultiply_DisjointVariables_OuterProduct() {
+        System.out.println("multiply");
+        Factor a = new Factor(new int[]{0}, new int[]{2}, new double[]{1, 2});
+        Factor b = new Factor(new int[]{1, 2}, new int[]{2, 2}, new double[]{3, 5, 7, 11});
+
+        Factor result = a.multiply(b);
+
+        assertArrayEquals(new double[]{3, 6, 5, 10, 7, 14, 11, 22}, result.getValues(), 0.0);
+    }
+}
@@ -17,6 +17,7 @@
  */
 package jbayes.core;
 
+import java.util.Arrays;
 import jbayes.core.Node;
 import jbayes.core.DiscreteDistribution;
 import org.junit.After;
@@ -91,6 +92,24 @@ public class NodeTest {
         assertEquals(1.0, instance.getInference().get(1), TestConstants.DELTA);
     }
 
+    /**
+     * Test of setEvidence method, of class Node.
+     */
+    @Test()
+    public void testSetEvidence_InferenceIsSet_EvidenceInference() {
+        System.out.println("setEvidence");
+        Node instance = new Node("test");
+        instance.setLevels("yes", "no");
+        instance.setDistribution(DiscreteDistribution.FromArray(1.0, 0.0, 1.0, 0.0));
+        instance.setEvidence(0);
+        instance.setInference(Arrays.asList(0.4, 0.6));
+        assertEquals(1.0, instance.getInference("yes"), TestConstants.DELTA);
+        instance.setEvidence(1);
+        assertEquals("no", instance.getMostProbableLevel());
+        instance.clearEvidence();
+        assertNull(instance.getInference());
+    }
+
     /**
      * Test of getInference method, of class Node.
      */
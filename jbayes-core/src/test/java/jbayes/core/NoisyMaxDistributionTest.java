@@ -0,0 +1,87 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class NoisyMaxDistributionTest {
+
+    public NoisyMaxDistributionTest() {
+    }
+
+    /**
+     * Test of toCpt method, of class NoisyMaxDistribution.
+     */
+    @Test
+    public void testToCpt_NoisyOr_ProductOfInhibitorsOfTrueParents() {
+        System.out.println("toCpt");
+        String[] levels = new String[]{"yes", "no"};
+        Node a = new Node("a", levels);
+        Node b = new Node("b", levels);
+        Node c = new Node("c", levels, NodeLinkType.NOISY_OR);
+        BayesNet bn = new BayesNet();
+        bn.addLink(a, c);
+        bn.addLink(b, c);
+        NoisyMaxDistribution instance = NoisyMaxDistribution.noisyOr(0.1, 0.2, 0.5);
+
+        List<Double> result = instance.toCpt(c);
+
+        double[] expResult = {0.91, 0.09, 0.55, 0.45, 0.82, 0.18, 0.1, 0.9};
+        assertEquals(expResult.length, result.size());
+        for (int i = 0; i < expResult.length; i++) {
+            assertEquals(expResult[i], result.get(i), 1e-12);
+        }
+    }
+
+    /**
+     * Test of toCpt method, of class NoisyMaxDistribution.
+     */
+    @Test
+    public void testToCpt_NoisyMax_MostSevereCausedLevel() {
+        System.out.println("toCpt");
+        Node a = new Node("a", new String[]{"on", "off"});
+        Node c = new Node("c", new String[]{"high", "medium", "low"}, NodeLinkType.NOISY_MAX);
+        BayesNet bn = new BayesNet();
+        bn.addLink(a, c);
+        NoisyMaxDistribution instance = new NoisyMaxDistribution(Arrays.asList(0.0, 0.5, 0.5),
+                Arrays.asList(Arrays.asList(0.5, 0.0, 0.5, 0.0, 0.0, 1.0)));
+
+        List<Double> result = instance.toCpt(c);
+
+        double[] expResult = {0.5, 0.25, 0.25, 0.0, 0.5, 0.5};
+        for (int i = 0; i < expResult.length; i++) {
+            assertEquals(expResult[i], result.get(i), 1e-12);
+        }
+    }
+
+    /**
+     * Test of noisyOr method, of class NoisyMaxDistribution.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testNoisyOr_InhibitorGreaterThanOne_ThrowsException() {
+        System.out.println("noisyOr");
+        NoisyMaxDistribution.noisyOr(0.0, 1.5);
+    }
+}
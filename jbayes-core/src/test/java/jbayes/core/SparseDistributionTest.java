@@ -0,0 +1,66 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class SparseDistributionTest {
+
+    public SparseDistributionTest() {
+    }
+
+    /**
+     * Test of FromCpt method, of class SparseDistribution.
+     */
+    @Test
+    public void testFromCpt_DeterministicCpt_OnlyNonZeroCellsStored() {
+        System.out.println("FromCpt");
+        SparseDistribution instance = SparseDistribution.FromCpt(1.0, 0.0, 0.0, 1.0, 0.3, 0.7);
+
+        assertEquals(6, instance.getSize());
+        assertEquals(4, instance.getNonZeroCount());
+        assertEquals(0.0, instance.get(1), 0.0);
+        assertEquals(0.7, instance.get(5), 0.0);
+        assertArrayEquals(new double[]{1.0, 0.0, 0.0, 1.0, 0.3, 0.7}, instance.toCptValues(), 0.0);
+    }
+
+    /**
+     * Test of convertToString method, of class SparseDistribution.
+     */
+    @Test
+    public void testConvertToString_SparseCpt_FullCpt() {
+        System.out.println("convertToString");
+        SparseDistribution instance = new SparseDistribution(4, new int[]{0, 3}, new double[]{1.0, 1.0});
+
+        assertEquals("1.0, 0.0, 0.0, 1.0", instance.convertToString());
+    }
+
+    /**
+     * Test of constructor, of class SparseDistribution.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testSparseDistribution_UnsortedIndices_ExceptionThrown() {
+        System.out.println("SparseDistribution");
+        new SparseDistribution(4, new int[]{3, 0}, new double[]{1.0, 1.0});
+    }
+}
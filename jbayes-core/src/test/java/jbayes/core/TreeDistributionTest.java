@@ -0,0 +1,102 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.core;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class TreeDistributionTest {
+
+    public TreeDistributionTest() {
+    }
+
+    private static Node createAlarm(TreeDistribution distribution) {
+        final String[] levels = new String[]{"yes", "no"};
+        Node power = new Node("power", levels, new Integer[]{9, 1});
+        Node fault = new Node("fault", levels, new Integer[]{1, 9});
+        Node alarm = new Node("alarm", levels);
+        alarm.setDistribution(distribution);
+        BayesNet bn = new BayesNet("alarm");
+        bn.addLink(power, alarm);
+        bn.addLink(fault, alarm);
+        return alarm;
+    }
+
+    /**
+     * Test of toCptValues method, of class TreeDistribution.
+     */
+    @Test
+    public void testToCptValues_ParentIrrelevantInContext_LeafRepeated() {
+        System.out.println("toCptValues");
+        TreeDistribution instance = new TreeDistribution(TreeDistribution.split("power",
+                TreeDistribution.split("fault", TreeDistribution.leaf(0.95, 0.05), TreeDistribution.leaf(0.01, 0.99)),
+                TreeDistribution.leaf(0.0, 1.0)));
+
+        double[] result = instance.toCptValues(createAlarm(instance));
+
+        // columns: (power, fault) = (yes, yes), (no, yes), (yes, no), (no, no)
+        assertArrayEquals(new double[]{0.95, 0.05, 0.0, 1.0, 0.01, 0.99, 0.0, 1.0}, result, 0.0);
+        assertEquals(3, instance.getLeafCount());
+    }
+
+    /**
+     * Test of toCptValues method, of class TreeDistribution.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testToCptValues_UnknownParent_ExceptionThrown() {
+        System.out.println("toCptValues");
+        TreeDistribution instance = new TreeDistribution(TreeDistribution.split("smoke",
+                TreeDistribution.leaf(0.5, 0.5), TreeDistribution.leaf(0.5, 0.5)));
+
+        instance.toCptValues(createAlarm(instance));
+    }
+
+    /**
+     * Test of toCptValues method, of class TreeDistribution.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testToCptValues_FullCptTooLarge_ExceptionThrown() {
+        System.out.println("toCptValues");
+        final String[] levels = new String[]{"yes", "no"};
+        TreeDistribution instance = new TreeDistribution(TreeDistribution.leaf(0.5, 0.5));
+        Node alarm = new Node("alarm", levels);
+        alarm.setDistribution(instance);
+        BayesNet bn = new BayesNet("alarm");
+        for (int i = 0; i < 32; i++) {
+            bn.addLink(new Node("sensor" + i, levels, new Integer[]{1, 1}), alarm);
+        }
+
+        instance.toCptValues(alarm);
+    }
+
+    /**
+     * Test of convertToString method, of class TreeDistribution.
+     */
+    @Test
+    public void testConvertToString_Tree_NestedSplits() {
+        System.out.println("convertToString");
+        TreeDistribution instance = new TreeDistribution(TreeDistribution.split("power",
+                TreeDistribution.leaf(0.9, 0.1), TreeDistribution.leaf(0.0, 1.0)));
+
+        assertEquals("power[(0.9, 0.1); (0.0, 1.0)]", instance.convertToString());
+    }
+}
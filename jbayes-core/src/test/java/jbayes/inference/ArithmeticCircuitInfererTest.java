@@ -0,0 +1,265 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import jbayes.core.BayesNet;
+import jbayes.core.DiscreteDistribution;
+import jbayes.core.Node;
+import jbayes.core.NodeLinkType;
+import jbayes.core.NoisyMaxDistribution;
+import jbayes.core.SparseDistribution;
+import jbayes.core.TreeDistribution;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class ArithmeticCircuitInfererTest {
+
+    @Test
+    public void test_infer_node_calculates_correctly_inference() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new ArithmeticCircuitInferer(bn);
+
+        inferer.inferNode("rain");
+        final double expected = 0.3577;
+        final double result = bn.getNodeByName("rain").getInference("T");
+
+        assertEquals(expected, result, 1e-4);
+    }
+
+    @Test
+    public void test_infer_node_does_not_change_inference_for_other_nodes() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new ArithmeticCircuitInferer(bn);
+
+        inferer.inferNode("rain");
+        final List<Double> result = bn.getNodeByName("sprinkler").getInference();
+
+        assertNull(result);
+    }
+
+    @Test
+    public void test_infer_all_nodes_reuses_circuit_for_different_evidence() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        ArithmeticCircuitInferer inferer = new ArithmeticCircuitInferer(bn);
+
+        inferer.inferAllNodes();
+        assertEquals(1.0, inferer.getProbabilityOfEvidence(), 1e-12);
+        assertEquals(0.3974534, bn.getNodeByName("dysp").getInference("yes"), 1e-10);
+
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("dysp", "yes");
+        inferer.inferAllNodes();
+        assertEquals(0.004153625, inferer.getProbabilityOfEvidence(), 1e-12);
+        assertEquals(0.11351530, bn.getNodeByName("lung").getInference("yes"), 1e-8);
+        assertEquals(0.78361672, bn.getNodeByName("bronc").getInference("yes"), 1e-8);
+
+        bn.clearEvidences();
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("either", "yes");
+        inferer.inferAllNodes();
+        assertEquals(0.0010225, inferer.getProbabilityOfEvidence(), 1e-12);
+        assertEquals(0.48899756, bn.getNodeByName("tub").getInference("yes"), 1e-8);
+    }
+
+    @Test
+    public void test_infer_batch_matches_inference_of_each_case() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        ArithmeticCircuitInferer inferer = new ArithmeticCircuitInferer(bn);
+        IBayesInferer exact = new JunctionTreeInferer(bn);
+        List<Node> evidenceNodes = Arrays.asList(bn.getNodeByName("asia"), bn.getNodeByName("xray"),
+                bn.getNodeByName("dysp"));
+        List<Node> targets = Arrays.asList(bn.getNodeByName("tub"), bn.getNodeByName("xray"));
+        Random random = new Random(1);
+        int[][] evidence = new int[1000][evidenceNodes.size()];
+        for (int[] row : evidence) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = random.nextInt(3) - 1;
+            }
+        }
+
+        double[][] result = inferer.inferBatch(evidenceNodes, evidence, targets);
+
+        assertEquals(evidence.length, result.length);
+        for (int i = 0; i < evidence.length; i++) {
+            bn.clearEvidences();
+            for (int j = 0; j < evidenceNodes.size(); j++) {
+                if (evidence[i][j] != -1) {
+                    evidenceNodes.get(j).setEvidence(evidenceNodes.get(j).getLevels().get(evidence[i][j]));
+                }
+            }
+            exact.inferAllNodes();
+            Node xray = bn.getNodeByName("xray");
+            double[] expected = {
+                bn.getNodeByName("tub").getInference("yes"),
+                bn.getNodeByName("tub").getInference("no"),
+                xray.getEvidence() == null ? xray.getInference("yes") : ("yes".equals(xray.getEvidence()) ? 1.0 : 0.0),
+                xray.getEvidence() == null ? xray.getInference("no") : ("no".equals(xray.getEvidence()) ? 1.0 : 0.0)};
+
+            assertArrayEquals(expected, result[i], 1e-12);
+        }
+    }
+
+    @Test
+    public void test_infer_batch_does_not_change_evidence_of_nodes() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        bn.setEvidence("asia", "yes");
+        ArithmeticCircuitInferer inferer = new ArithmeticCircuitInferer(bn);
+
+        double[][] result = inferer.inferBatch(Arrays.asList(bn.getNodeByName("either")),
+                new int[][]{{0}, {-1}}, Arrays.asList(bn.getNodeByName("dysp")));
+
+        assertEquals("yes", bn.getNodeByName("asia").getEvidence());
+        assertNull(bn.getNodeByName("either").getEvidence());
+        assertNull(bn.getNodeByName("dysp").getInference());
+        assertEquals(0.3974534, result[1][0], 1e-10);
+    }
+
+    @Test
+    public void test_infer_batch_fills_rows_of_impossible_cases_with_nan() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        ArithmeticCircuitInferer inferer = new ArithmeticCircuitInferer(bn);
+        List<Node> evidenceNodes = Arrays.asList(bn.getNodeByName("tub"), bn.getNodeByName("either"));
+
+        double[][] result = inferer.inferBatch(evidenceNodes, new int[][]{{0, 1}, {0, 0}},
+                Arrays.asList(bn.getNodeByName("lung")));
+
+        assertTrue(Double.isNaN(result[0][0]));
+        assertFalse(Double.isNaN(result[1][0]));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_infer_batch_throws_exception_for_invalid_level_index() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        ArithmeticCircuitInferer inferer = new ArithmeticCircuitInferer(bn);
+
+        inferer.inferBatch(Arrays.asList(bn.getNodeByName("tub")), new int[][]{{2}},
+                Arrays.asList(bn.getNodeByName("lung")));
+    }
+
+    @Test
+    public void test_infer_all_nodes_matches_expanded_cpt_of_noisy_max_node() {
+        BayesNet noisy = createNoisyMaxBN();
+        BayesNet expanded = createNoisyMaxBN();
+        Node node = expanded.getNodeByName("damage");
+        node.setDistribution(new DiscreteDistribution(((NoisyMaxDistribution) node.getDistribution()).toCpt(node)));
+        node.setLinkType(NodeLinkType.NONE);
+        noisy.setEvidence("damage", "medium");
+        expanded.setEvidence("damage", "medium");
+
+        new ArithmeticCircuitInferer(noisy).inferAllNodes();
+        new ArithmeticCircuitInferer(expanded).inferAllNodes();
+
+        for (String name : Arrays.asList("fire", "flood", "quake")) {
+            assertEquals(expanded.getNodeByName(name).getInference("yes"),
+                    noisy.getNodeByName(name).getInference("yes"), 1e-12);
+        }
+    }
+
+    private static BayesNet createNoisyMaxBN() {
+        BayesNet bn = new BayesNet("noisy-max");
+        String[] levels = new String[]{"yes", "no"};
+        Node damage = new Node("damage", new String[]{"high", "medium", "low"}, NodeLinkType.NOISY_MAX);
+        bn.addLink(new Node("fire", levels, new Integer[]{1, 9}), damage);
+        bn.addLink(new Node("flood", new String[]{"yes", "some", "no"}, new Integer[]{1, 2, 7}), damage);
+        bn.addLink(new Node("quake", levels, new Integer[]{1, 19}), damage);
+        damage.setDistribution(new NoisyMaxDistribution(Arrays.asList(0.01, 0.04, 0.95), Arrays.asList(
+                Arrays.asList(0.3, 0.5, 0.2, 0.0, 0.0, 1.0),
+                Arrays.asList(0.1, 0.6, 0.3, 0.0, 0.3, 0.7, 0.0, 0.0, 1.0),
+                Arrays.asList(0.6, 0.3, 0.1, 0.0, 0.0, 1.0))));
+        return bn;
+    }
+
+    /**
+     * Creates a fault model, where the alarm is raised only with power and
+     * its probability is decided by the first present fault, and the lamp is
+     * on iff there is power.
+     */
+    private static BayesNet createFaultBN(int faultCount) {
+        final String[] levels = new String[]{"yes", "no"};
+        BayesNet bn = new BayesNet("fault");
+        Node power = new Node("power", levels, new Integer[]{9, 1});
+        Node alarm = new Node("alarm", levels);
+        Node lamp = new Node("lamp", levels);
+        bn.addLink(power, alarm);
+        bn.addLink(power, lamp);
+        TreeDistribution.Subtree tree = TreeDistribution.leaf(0.01, 0.99);
+        for (int i = faultCount; i >= 1; i--) {
+            bn.addLink(new Node("f" + i, levels, new Integer[]{1, 9}), alarm);
+            tree = TreeDistribution.split("f" + i, TreeDistribution.leaf(1.0 - 0.1 / i, 0.1 / i), tree);
+        }
+        alarm.setDistribution(new TreeDistribution(TreeDistribution.split("power", tree, TreeDistribution.leaf(0.0, 1.0))));
+        lamp.setDistribution(SparseDistribution.FromCpt(1.0, 0.0, 0.0, 1.0));
+        return bn;
+    }
+
+    /**
+     * Replaces the distributions of the fault model by full CPTs. Unless
+     * exact, each cell of the alarm CPT is perturbed, so no values repeat.
+     */
+    private static BayesNet toDense(BayesNet bn, boolean exact) {
+        Random random = new Random(1);
+        Node alarm = bn.getNodeByName("alarm");
+        double[] cpt = ((TreeDistribution) alarm.getDistribution()).toCptValues(alarm);
+        for (int i = 0; i < cpt.length && !exact; i++) {
+            cpt[i] += 0.01 + 0.01 * random.nextDouble();
+        }
+        alarm.setDistribution(new DiscreteDistribution(cpt));
+        Node lamp = bn.getNodeByName("lamp");
+        lamp.setDistribution(new DiscreteDistribution(((SparseDistribution) lamp.getDistribution()).toCptValues()));
+        return bn;
+    }
+
+    @Test
+    public void test_infer_all_nodes_with_tree_and_sparse_cpts_equals_full_cpts() {
+        BayesNet bn = createFaultBN(6);
+        BayesNet dense = toDense(createFaultBN(6), true);
+        for (BayesNet network : Arrays.asList(bn, dense)) {
+            network.setEvidence("alarm", "yes");
+            network.setEvidence("lamp", "yes");
+        }
+
+        new ArithmeticCircuitInferer(bn).inferAllNodes();
+        new JunctionTreeInferer(dense).inferAllNodes();
+
+        for (Node node : dense.getNodes()) {
+            for (String level : node.getLevels()) {
+                assertEquals(node.getInference(level), bn.getNodeByName(node.getName()).getInference(level), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void test_compile_shares_repeated_and_skips_zero_parameters() {
+        ArithmeticCircuitInferer inferer = new ArithmeticCircuitInferer(createFaultBN(8));
+        ArithmeticCircuitInferer denseInferer = new ArithmeticCircuitInferer(toDense(createFaultBN(8), false));
+
+        inferer.inferAllNodes();
+        denseInferer.inferAllNodes();
+
+        assertTrue(inferer.getCircuitSize() < denseInferer.getCircuitSize() / 2);
+    }
+}
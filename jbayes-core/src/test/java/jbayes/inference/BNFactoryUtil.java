@@ -0,0 +1,88 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import jbayes.core.BayesNet;
+import jbayes.core.Node;
+import jbayes.core.NodeLinkType;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class BNFactoryUtil {
+
+    public static BayesNet createWeatherBN() {
+        final String[] levels = new String[]{"T", "F"};
+        Node rain = new Node("rain", levels, new Integer[]{20, 80});
+        Node sprinkler = new Node("sprinkler", levels, new Integer[]{1, 99, 40, 60});
+        Node grassWet = new Node("grasswet", levels, new Integer[]{99, 1, 80, 20, 90, 10, 0, 100});
+        BayesNet bn = new BayesNet("weather");
+        bn.addLink(rain, sprinkler);
+        bn.addLink(sprinkler, grassWet);
+        bn.addLink(rain, grassWet);
+
+        return bn;
+    }
+
+    public static BayesNet createAsiaBN() {
+        final String[] levels = new String[]{"yes", "no"};
+        Node asia = new Node("asia", levels, new Integer[]{1, 99});
+        Node tub = new Node("tub", levels, new Integer[]{5, 95, 1, 99});
+        Node smoke = new Node("smoke", levels, new Integer[]{5, 5});
+        Node lung = new Node("lung", levels, new Integer[]{1, 9, 1, 99});
+        Node bronc = new Node("bronc", levels, new Integer[]{6, 4, 3, 7});
+        Node xray = new Node("xray", levels, new Integer[]{98, 2, 5, 95});
+        Node dysp = new Node("dysp", levels, new Integer[]{9, 1, 7, 3, 8, 2, 1, 9});
+        Node either = new Node("either", levels, NodeLinkType.OR);
+        BayesNet bn = new BayesNet("asia");
+        bn.addLink(asia, tub);
+        bn.addLink(smoke, bronc);
+        bn.addLink(smoke, lung);
+        bn.addLink(tub, either);
+        bn.addLink(lung, either);
+        bn.addLink(either, xray);
+        bn.addLink(either, dysp);
+        bn.addLink(bronc, dysp);
+
+        return bn;
+    }
+
+    /**
+     * Asia network without dysp, which makes it singly connected.
+     */
+    public static BayesNet createAsiaPolytreeBN() {
+        final String[] levels = new String[]{"yes", "no"};
+        Node asia = new Node("asia", levels, new Integer[]{1, 99});
+        Node tub = new Node("tub", levels, new Integer[]{5, 95, 1, 99});
+        Node smoke = new Node("smoke", levels, new Integer[]{5, 5});
+        Node lung = new Node("lung", levels, new Integer[]{1, 9, 1, 99});
+        Node bronc = new Node("bronc", levels, new Integer[]{6, 4, 3, 7});
+        Node xray = new Node("xray", levels, new Integer[]{98, 2, 5, 95});
+        Node either = new Node("either", levels, NodeLinkType.OR);
+        BayesNet bn = new BayesNet("asia-polytree");
+        bn.addLink(asia, tub);
+        bn.addLink(smoke, bronc);
+        bn.addLink(smoke, lung);
+        bn.addLink(tub, either);
+        bn.addLink(lung, either);
+        bn.addLink(either, xray);
+
+        return bn;
+    }
+}
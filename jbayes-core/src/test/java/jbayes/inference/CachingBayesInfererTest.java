@@ -0,0 +1,148 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import jbayes.core.BayesNet;
+import jbayes.core.Evidence;
+import jbayes.core.Node;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class CachingBayesInfererTest {
+
+    @Test
+    public void test_infer_nodes_returns_cached_result_for_same_evidence_in_other_order() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        IBayesInferer exact = spy(new JunctionTreeInferer(bn));
+        CachingBayesInferer inferer = new CachingBayesInferer(exact);
+        Node tub = bn.getNodeByName("tub");
+        Node lung = bn.getNodeByName("lung");
+
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("dysp", "yes");
+        inferer.inferNodes(tub, lung);
+        bn.clearEvidences();
+        bn.setEvidence("dysp", "yes");
+        bn.setEvidence("asia", "yes");
+        inferer.inferNodes(lung, tub);
+
+        verify(exact, times(1)).inferNodes(anyCollectionOf(Node.class));
+        assertEquals(1, inferer.getStats().hitCount());
+        assertEquals(1, inferer.getStats().missCount());
+        assertEquals(0.11351530, lung.getInference("yes"), 1e-8);
+    }
+
+    @Test
+    public void test_infer_nodes_does_not_reuse_result_for_other_evidence() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        CachingBayesInferer inferer = new CachingBayesInferer(new JunctionTreeInferer(bn));
+
+        bn.setEvidence("asia", "yes");
+        inferer.inferNode("tub");
+        assertEquals(0.05, bn.getNodeByName("tub").getInference("yes"), 1e-12);
+
+        bn.setEvidence("either", "yes");
+        inferer.inferNode("tub");
+        assertEquals(0.48899756, bn.getNodeByName("tub").getInference("yes"), 1e-8);
+        assertEquals(2, inferer.getStats().missCount());
+    }
+
+    @Test
+    public void test_infer_nodes_keeps_cached_result_when_restored_inference_changes() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        CachingBayesInferer inferer = new CachingBayesInferer(new JunctionTreeInferer(bn));
+        Node tub = bn.getNodeByName("tub");
+
+        bn.setEvidence("asia", "yes");
+        inferer.inferNodes(tub);
+        inferer.inferNodes(tub);
+        tub.getInference().set(0, 1.0);
+        inferer.inferNodes(tub);
+
+        assertEquals(0.05, tub.getInference("yes"), 1e-12);
+        assertEquals(2, inferer.getStats().hitCount());
+    }
+
+    @Test
+    public void test_infer_nodes_clears_cache_after_distribution_changes() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        CachingBayesInferer inferer = new CachingBayesInferer(new JunctionTreeInferer(bn));
+
+        inferer.inferNode("asia");
+        bn.getNodeByName("asia").setDistribution(1, 1);
+        inferer.inferNode("asia");
+
+        assertEquals(0.5, bn.getNodeByName("asia").getInference("yes"), 1e-12);
+        assertEquals(0, inferer.getStats().hitCount());
+    }
+
+    @Test
+    public void test_infer_nodes_evicts_results_over_maximum_size() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        CachingBayesInferer inferer = new CachingBayesInferer(new JunctionTreeInferer(bn), 2);
+
+        for (String name : Arrays.asList("tub", "lung", "bronc", "either")) {
+            inferer.inferNode(name);
+        }
+
+        assertEquals(2, inferer.getCachedResultCount());
+        assertEquals(2, inferer.getStats().evictionCount());
+    }
+
+    @Test
+    public void test_infer_nodes_clears_cache_after_distribution_changes_of_set_nodes() {
+        Node rain = new Node("rain", new String[]{"T", "F"}, new Integer[]{20, 80});
+        BayesNet bn = new BayesNet("weather");
+        bn.setNodes(new HashSet<>(Arrays.asList(rain)));
+        CachingBayesInferer inferer = new CachingBayesInferer(new JunctionTreeInferer(bn));
+
+        inferer.inferNode("rain");
+        rain.setDistribution(1, 1);
+        inferer.inferNode("rain");
+
+        assertSame(bn, rain.getNetwork());
+        assertEquals(0.5, rain.getInference("T"), 1e-12);
+        assertEquals(0, inferer.getStats().hitCount());
+    }
+
+    @Test
+    public void test_infer_nodes_caches_results_for_given_evidence() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        IBayesInferer exact = spy(new JunctionTreeInferer(bn));
+        CachingBayesInferer inferer = new CachingBayesInferer(exact);
+        Node lung = bn.getNodeByName("lung");
+        Evidence evidence = Evidence.none(bn.getNodes().size())
+                .with(bn.getNodeByName("asia"), "yes")
+                .with(bn.getNodeByName("dysp"), "yes");
+
+        inferer.inferNodes(evidence, Arrays.asList(lung));
+        inferer.inferNodes(evidence, Arrays.asList(lung));
+
+        verify(exact, times(1)).inferNodes(eq(evidence), anyCollectionOf(Node.class));
+        assertEquals(1, inferer.getStats().hitCount());
+        assertNull(bn.getNodeByName("asia").getEvidence());
+        assertEquals(0.11351530, lung.getInference("yes"), 1e-8);
+    }
+}
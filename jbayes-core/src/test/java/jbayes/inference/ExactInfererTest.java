@@ -0,0 +1,72 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import jbayes.core.BayesNet;
+import jbayes.core.Node;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class ExactInfererTest {
+
+    @Test
+    public void test_infer_node_uses_polytree_inferer_for_singly_connected_network() {
+        BayesNet bn = BNFactoryUtil.createAsiaPolytreeBN();
+        bn.setEvidence("xray", "yes");
+        ExactInferer inferer = new ExactInferer(bn);
+
+        inferer.inferNode("lung");
+        final double result = bn.getNodeByName("lung").getInference("yes");
+        new JunctionTreeInferer(bn).inferNode("lung");
+
+        assertTrue(inferer.getInferer() instanceof PolytreeInferer);
+        assertEquals(bn.getNodeByName("lung").getInference("yes"), result, 1e-12);
+    }
+
+    @Test
+    public void test_infer_node_uses_junction_tree_inferer_for_loopy_network() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.setEvidence("grasswet", "T");
+        ExactInferer inferer = new ExactInferer(bn);
+
+        inferer.inferNode("rain");
+
+        assertTrue(inferer.getInferer() instanceof JunctionTreeInferer);
+        assertEquals(0.3577, bn.getNodeByName("rain").getInference("T"), 1e-4);
+    }
+
+    @Test
+    public void test_infer_node_falls_back_to_junction_tree_after_loop_is_added() {
+        BayesNet bn = BNFactoryUtil.createAsiaPolytreeBN();
+        ExactInferer inferer = new ExactInferer(bn);
+        inferer.inferNode("either");
+        assertTrue(inferer.getInferer() instanceof PolytreeInferer);
+
+        Node dysp = new Node("dysp", new String[]{"yes", "no"}, new Integer[]{9, 1, 7, 3, 8, 2, 1, 9});
+        bn.addLink(bn.getNodeByName("bronc"), dysp);
+        bn.addLink(bn.getNodeByName("either"), dysp);
+        inferer.inferNode("dysp");
+
+        assertTrue(inferer.getInferer() instanceof JunctionTreeInferer);
+        assertEquals(0.4359706, dysp.getInference("yes"), 1e-6);
+    }
+}
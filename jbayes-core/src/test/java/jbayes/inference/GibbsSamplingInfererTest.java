@@ -0,0 +1,147 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.List;
+import jbayes.core.BayesNet;
+import jbayes.core.Node;
+import jbayes.core.NodeLinkType;
+import jbayes.core.NoisyMaxDistribution;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class GibbsSamplingInfererTest {
+
+    @Test
+    public void test_infer_node_calculates_correctly_inference() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        GibbsSamplingInferer inferer = new GibbsSamplingInferer(bn);
+        inferer.setChainCount(4);
+        inferer.setSeed(2);
+        inferer.setTargetRHat(0.0);
+        inferer.setSampleCount(100_000);
+
+        inferer.inferNode("rain");
+        final double expected = 0.3577;
+        final double result = bn.getNodeByName("rain").getInference("T");
+
+        assertEquals(expected, result, 2e-2);
+        assertEquals(100_000, inferer.getDrawnSampleCount());
+        assertTrue(inferer.getEffectiveSampleSize(bn.getNodeByName("rain")) > 0.0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_infer_node_fails_when_markov_blanket_weights_underflow() {
+        final String[] levels = new String[]{"T", "F"};
+        BayesNet bn = new BayesNet("underflow");
+        Node cause = new Node("cause", levels, new Integer[]{1, 1});
+        for (int i = 0; i < 150; i++) {
+            Node effect = new Node("effect" + i, levels, new Integer[]{1, 999, 1, 999});
+            bn.addLink(cause, effect);
+            effect.setEvidence("T");
+        }
+        GibbsSamplingInferer inferer = new GibbsSamplingInferer(bn);
+        inferer.setSeed(1);
+
+        inferer.inferNode("cause");
+    }
+
+    @Test
+    public void test_infer_node_fails_when_weights_of_noisy_or_auxiliary_variable_underflow() {
+        final String[] levels = new String[]{"T", "F"};
+        BayesNet bn = new BayesNet("underflow");
+        Node first = new Node("first", levels, new Integer[]{1, 1});
+        Node second = new Node("second", levels, new Integer[]{1, 1});
+        Node alarm = new Node("alarm", levels, NodeLinkType.NOISY_OR);
+        bn.addLink(first, alarm);
+        bn.addLink(second, alarm);
+        // the second parent is never inhibited, so the alarm follows the auxiliary variable
+        alarm.setDistribution(NoisyMaxDistribution.noisyOr(0.1, 0.2, 0.0));
+        for (int i = 0; i < 150; i++) {
+            Node effect = new Node("effect" + i, levels, new Integer[]{1, 999, 1, 999});
+            bn.addLink(alarm, effect);
+            effect.setEvidence("T");
+        }
+        first.setEvidence("F");
+        second.setEvidence("F");
+        GibbsSamplingInferer inferer = new GibbsSamplingInferer(bn);
+        inferer.setSeed(1);
+
+        try {
+            inferer.inferNode("alarm");
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().matches(".*auxiliary variable \\d+ of Node alarm.*"));
+        }
+    }
+
+    @Test
+    public void test_infer_node_does_not_change_inference_for_other_nodes() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new GibbsSamplingInferer(bn);
+
+        inferer.inferNode("rain");
+        final List<Double> result = bn.getNodeByName("sprinkler").getInference();
+
+        assertNull(result);
+    }
+
+    @Test
+    public void test_infer_all_nodes_with_same_seed_returns_same_inference() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("dysp", "yes");
+        GibbsSamplingInferer inferer = new GibbsSamplingInferer(bn);
+        inferer.setChainCount(4);
+        inferer.setSeed(7);
+
+        inferer.inferAllNodes();
+        final double first = bn.getNodeByName("bronc").getInference("yes");
+        inferer.inferAllNodes();
+        final double second = bn.getNodeByName("bronc").getInference("yes");
+
+        assertEquals(first, second, 0.0);
+        assertEquals(0.78361672, first, 3e-2);
+    }
+
+    @Test
+    public void test_infer_node_stops_when_chains_converge() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        bn.setEvidence("asia", "yes");
+        GibbsSamplingInferer inferer = new GibbsSamplingInferer(bn);
+        inferer.setChainCount(4);
+        inferer.setSeed(1);
+        inferer.setSampleCount(100_000);
+        inferer.setTargetRHat(1.01);
+        inferer.setTargetEffectiveSampleSize(2_000);
+
+        inferer.inferNode("lung");
+
+        assertTrue(inferer.getDrawnSampleCount() < 100_000);
+        assertTrue(inferer.getRHat(bn.getNodeByName("lung")) <= 1.01);
+        assertTrue(inferer.getEffectiveSampleSize(bn.getNodeByName("lung")) >= 2_000);
+        assertTrue(Double.isNaN(inferer.getRHat(bn.getNodeByName("tub"))));
+        assertEquals(0.055, bn.getNodeByName("lung").getInference("yes"), 2e-2);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.List;
+import jbayes.core.BayesNet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class IncrementalJunctionTreeInfererTest {
+
+    @Test
+    public void test_infer_node_calculates_correctly_inference() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new IncrementalJunctionTreeInferer(bn);
+
+        inferer.inferNode("rain");
+        final double expected = 0.3577;
+        final double result = bn.getNodeByName("rain").getInference("T");
+
+        assertEquals(expected, result, 1e-4);
+    }
+
+    @Test
+    public void test_infer_node_does_not_change_inference_for_other_nodes() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new IncrementalJunctionTreeInferer(bn);
+
+        inferer.inferNode("rain");
+        final List<Double> result = bn.getNodeByName("sprinkler").getInference();
+
+        assertNull(result);
+    }
+
+    @Test
+    public void test_infer_all_nodes_is_exact_after_adding_and_retracting_findings() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        IncrementalJunctionTreeInferer inferer = new IncrementalJunctionTreeInferer(bn);
+
+        inferer.inferAllNodes();
+        assertEquals(0.3974534, bn.getNodeByName("dysp").getInference("yes"), 1e-8);
+
+        bn.setEvidence("asia", "yes");
+        inferer.inferAllNodes();
+        bn.setEvidence("dysp", "yes");
+        inferer.inferAllNodes();
+        assertEquals(0.11351530, bn.getNodeByName("lung").getInference("yes"), 1e-8);
+        assertEquals(0.78361672, bn.getNodeByName("bronc").getInference("yes"), 1e-8);
+
+        bn.getNodeByName("dysp").clearEvidence();
+        bn.setEvidence("either", "yes");
+        inferer.inferAllNodes();
+        assertEquals(0.48899756, bn.getNodeByName("tub").getInference("yes"), 1e-8);
+        assertEquals(0.85127139, bn.getNodeByName("dysp").getInference("yes"), 1e-8);
+
+        bn.clearEvidences();
+        inferer.inferAllNodes();
+        assertEquals(0.11029004, bn.getNodeByName("xray").getInference("yes"), 1e-8);
+    }
+
+    @Test
+    public void test_infer_node_sends_only_messages_affected_by_evidence() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        IncrementalJunctionTreeInferer inferer = new IncrementalJunctionTreeInferer(bn);
+
+        inferer.inferAllNodes();
+        final int full = inferer.getSentMessageCount();
+        inferer.inferAllNodes();
+        assertEquals(0, inferer.getSentMessageCount());
+
+        bn.setEvidence("asia", "yes");
+        inferer.inferNode("tub");
+        assertTrue(inferer.getSentMessageCount() < full);
+        assertEquals(0.05, bn.getNodeByName("tub").getInference("yes"), 1e-12);
+    }
+}
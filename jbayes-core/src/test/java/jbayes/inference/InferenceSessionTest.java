@@ -0,0 +1,203 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jbayes.core.BayesNet;
+import jbayes.core.BayesNetSnapshot;
+import jbayes.core.DiscreteDistribution;
+import jbayes.core.Node;
+import jbayes.core.NodeLinkType;
+import jbayes.core.NoisyMaxDistribution;
+import jbayes.core.TreeDistribution;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class InferenceSessionTest {
+
+    @Test
+    public void test_get_inference_calculates_correctly_inference() {
+        CompiledModel model = CompiledModel.compile(BNFactoryUtil.createAsiaBN());
+        InferenceSession session = model.createSession();
+
+        assertEquals(0.3974534, session.getInference("dysp", "yes"), 1e-10);
+
+        session.setEvidence("asia", "yes");
+        session.setEvidence("dysp", "yes");
+        assertEquals(0.004153625, session.getProbabilityOfEvidence(), 1e-12);
+        assertEquals(0.11351530, session.getInference("lung", "yes"), 1e-8);
+        assertArrayEquals(new double[]{1.0, 0.0}, session.getInference("dysp"), 0.0);
+
+        session.clearEvidence("dysp");
+        assertEquals(0.05, session.getInference("tub", "yes"), 1e-12);
+    }
+
+    @Test
+    public void test_model_does_not_depend_on_network_after_compilation() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        CompiledModel model = CompiledModel.compile(bn);
+
+        bn.setEvidence("asia", "yes");
+        bn.getNodeByName("smoke").setDistribution(DiscreteDistribution.FromArray(1, 0));
+        InferenceSession session = model.createSession();
+
+        assertNull(session.getEvidence("asia"));
+        assertEquals(0.3974534, session.getInference("dysp", "yes"), 1e-10);
+    }
+
+    @Test
+    public void test_model_keeps_levels_after_network_changes() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        CompiledModel model = CompiledModel.compile(bn);
+
+        bn.getNodeByName("asia").setLevels(Arrays.asList("visit", "none"));
+        InferenceSession session = model.createSession();
+        session.setEvidence("asia", "yes");
+
+        assertEquals(Arrays.asList("yes", "no"), model.getLevels("asia"));
+        assertEquals(0.05, session.getInference("tub", "yes"), 1e-12);
+    }
+
+    @Test
+    public void test_model_compiled_from_snapshot_ignores_later_changes() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        BayesNetSnapshot snapshot = bn.snapshot();
+
+        bn.getNodeByName("smoke").setDistribution(DiscreteDistribution.FromArray(1, 0));
+        CompiledModel before = CompiledModel.compile(snapshot);
+        CompiledModel after = CompiledModel.compile(bn.snapshot());
+
+        assertEquals(0.3974534, before.createSession().getInference("dysp", "yes"), 1e-10);
+        assertEquals(1.0, after.createSession().getInference("smoke", "yes"), 1e-12);
+    }
+
+    @Test
+    public void test_model_compiled_from_snapshot_equals_model_of_network() {
+        final String[] levels = new String[]{"yes", "no"};
+        BayesNet bn = new BayesNet("alarm");
+        Node power = new Node("power", levels, new Integer[]{9, 1});
+        Node fault = new Node("fault", levels, new Integer[]{1, 9});
+        Node alarm = new Node("alarm", levels);
+        Node call = new Node("call", levels, NodeLinkType.NOISY_OR);
+        bn.addLink(power, alarm);
+        bn.addLink(fault, alarm);
+        bn.addLink(alarm, call);
+        bn.addLink(fault, call);
+        alarm.setDistribution(new TreeDistribution(TreeDistribution.split("power",
+                TreeDistribution.split("fault", TreeDistribution.leaf(0.95, 0.05), TreeDistribution.leaf(0.01, 0.99)),
+                TreeDistribution.leaf(0.0, 1.0))));
+        call.setDistribution(NoisyMaxDistribution.noisyOr(0.05, 0.1, 0.6));
+
+        InferenceSession expected = CompiledModel.compile(bn).createSession();
+        InferenceSession result = CompiledModel.compile(bn.snapshot()).createSession();
+        expected.setEvidence("call", "yes");
+        result.setEvidence("call", "yes");
+
+        assertEquals(expected.getProbabilityOfEvidence(), result.getProbabilityOfEvidence(), 1e-12);
+        assertArrayEquals(expected.getInference("fault"), result.getInference("fault"), 1e-12);
+        assertArrayEquals(expected.getInference("alarm"), result.getInference("alarm"), 1e-12);
+    }
+
+    @Test
+    public void test_set_evidence_accepts_evidence_of_network() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        CompiledModel model = CompiledModel.compile(bn);
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("dysp", "yes");
+        InferenceSession session = model.createSession();
+
+        session.setEvidence(bn.getEvidence());
+
+        assertEquals("yes", session.getEvidence("asia"));
+        assertEquals(0.004153625, session.getProbabilityOfEvidence(), 1e-12);
+        assertEquals(0.11351530, session.getInference("lung", "yes"), 1e-8);
+    }
+
+    @Test
+    public void test_sessions_of_one_model_are_independent() {
+        CompiledModel model = CompiledModel.compile(BNFactoryUtil.createAsiaBN());
+        InferenceSession first = model.createSession();
+        InferenceSession second = model.createSession();
+
+        first.setEvidence("asia", "yes");
+        first.setEvidence("either", "yes");
+
+        assertEquals(0.48899756, first.getInference("tub", "yes"), 1e-8);
+        assertEquals(0.0104, second.getInference("tub", "yes"), 1e-12);
+    }
+
+    @Test
+    public void test_sessions_query_one_model_from_many_threads() throws Exception {
+        CompiledModel model = CompiledModel.compile(BNFactoryUtil.createAsiaBN());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final boolean withEvidence = t % 2 == 0;
+            tasks.add(() -> {
+                InferenceSession session = model.createSession();
+                for (int i = 0; i < 1000; i++) {
+                    session.clearEvidences();
+                    if (withEvidence) {
+                        session.setEvidence("asia", "yes");
+                        session.setEvidence("dysp", "yes");
+                    }
+                    double expected = withEvidence ? 0.78361672 : 0.45;
+                    if (Math.abs(session.getInference("bronc", "yes") - expected) > 1e-8) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+        }
+
+        try {
+            for (Future<Boolean> result : executor.invokeAll(tasks)) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_set_evidence_throws_exception_for_unknown_level() {
+        CompiledModel model = CompiledModel.compile(BNFactoryUtil.createAsiaBN());
+
+        model.createSession().setEvidence("asia", "maybe");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_get_inference_throws_exception_for_impossible_evidence() {
+        CompiledModel model = CompiledModel.compile(BNFactoryUtil.createAsiaBN());
+        InferenceSession session = model.createSession();
+        session.setEvidence("tub", "yes");
+        session.setEvidence("either", "no");
+
+        session.getInference("lung");
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.Arrays;
+import java.util.List;
+import jbayes.core.BayesNet;
+import jbayes.core.Evidence;
+import jbayes.core.Node;
+import jbayes.core.NodeLinkType;
+import jbayes.core.NoisyMaxDistribution;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class JunctionTreeInfererTest {
+
+    @Test
+    public void test_infer_node_calculates_correctly_inference() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new JunctionTreeInferer(bn);
+
+        inferer.inferNode("rain");
+        final double expected = 0.3577;
+        final double result = bn.getNodeByName("rain").getInference("T");
+
+        assertEquals(expected, result, 1e-4);
+    }
+
+    @Test
+    public void test_infer_nodes_reads_given_evidence_without_changing_nodes() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        Evidence evidence = Evidence.none(bn.getNodes().size()).with(bn.getNodeByName("grasswet"), "T");
+        IBayesInferer inferer = new JunctionTreeInferer(bn);
+
+        inferer.inferNodes(evidence, Arrays.asList(bn.getNodeByName("rain")));
+
+        assertNull(bn.getNodeByName("grasswet").getEvidence());
+        assertEquals(0.3577, bn.getNodeByName("rain").getInference("T"), 1e-4);
+    }
+
+    @Test
+    public void test_infer_node_does_not_change_inference_for_other_nodes() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new JunctionTreeInferer(bn);
+
+        inferer.inferNode("rain");
+        final List<Double> result = bn.getNodeByName("sprinkler").getInference();
+
+        assertNull(result);
+    }
+
+    @Test
+    public void test_infer_all_nodes_calculates_correctly_inference_for_all_nodes() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new JunctionTreeInferer(bn);
+
+        inferer.inferAllNodes();
+        final double expectedRain = 0.3577;
+        final double expectedSprinkler = 0.6467;
+        final double resultRain = bn.getNodeByName("rain").getInference("T");
+        final double resultSprinkler = bn.getNodeByName("sprinkler").getInference("T");
+
+        assertEquals(expectedRain, resultRain, 1e-4);
+        assertEquals(expectedSprinkler, resultSprinkler, 1e-4);
+    }
+
+    @Test
+    public void test_infer_all_nodes_without_evidence_returns_prior_marginals() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        IBayesInferer inferer = new JunctionTreeInferer(bn);
+
+        inferer.inferAllNodes();
+
+        assertEquals(0.0104, bn.getNodeByName("tub").getInference("yes"), 1e-10);
+        assertEquals(0.055, bn.getNodeByName("lung").getInference("yes"), 1e-10);
+        assertEquals(0.064828, bn.getNodeByName("either").getInference("yes"), 1e-10);
+        assertEquals(0.11029004, bn.getNodeByName("xray").getInference("yes"), 1e-10);
+        assertEquals(0.3974534, bn.getNodeByName("dysp").getInference("yes"), 1e-10);
+    }
+
+    @Test
+    public void test_infer_all_nodes_with_direct_potentials_calculates_correctly_inference() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        try (JunctionTreeInferer inferer = new JunctionTreeInferer(bn)) {
+            inferer.setDirectThreshold(0);
+            bn.setEvidence("asia", "yes");
+            bn.setEvidence("dysp", "yes");
+
+            inferer.inferAllNodes();
+
+            assertEquals(0.11351530, bn.getNodeByName("lung").getInference("yes"), 1e-8);
+            assertEquals(0.78361672, bn.getNodeByName("bronc").getInference("yes"), 1e-8);
+        }
+    }
+
+    @Test
+    public void test_infer_all_nodes_follows_changes_of_evidence() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        IBayesInferer inferer = new JunctionTreeInferer(bn);
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("dysp", "yes");
+        inferer.inferAllNodes();
+        assertEquals(0.11351530, bn.getNodeByName("lung").getInference("yes"), 1e-8);
+        assertEquals(0.78361672, bn.getNodeByName("bronc").getInference("yes"), 1e-8);
+
+        bn.clearEvidences();
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("either", "yes");
+        inferer.inferAllNodes();
+        assertEquals(0.48899756, bn.getNodeByName("tub").getInference("yes"), 1e-8);
+        assertEquals(0.85127139, bn.getNodeByName("dysp").getInference("yes"), 1e-8);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_infer_node_with_impossible_evidence_throws_exception() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        bn.setEvidence("tub", "yes");
+        bn.setEvidence("either", "no");
+        IBayesInferer inferer = new JunctionTreeInferer(bn);
+
+        inferer.inferNode("lung");
+    }
+
+    @Test
+    public void test_infer_node_calculates_correctly_inference_for_wide_noisy_or() {
+        final int parentCount = 40;
+        BayesNet bn = new BayesNet("noisy-or");
+        String[] levels = new String[]{"yes", "no"};
+        Node alarm = new Node("alarm", levels, NodeLinkType.NOISY_OR);
+        double[] inhibitors = new double[parentCount];
+        double allInhibited = 0.99;
+        for (int i = 0; i < parentCount; i++) {
+            Node cause = new Node("cause" + i, levels, new Double[]{0.01 * (i % 5 + 1), 1 - 0.01 * (i % 5 + 1)});
+            bn.addLink(cause, alarm);
+            inhibitors[i] = 0.1 * (i % 9 + 1);
+            allInhibited *= 1 - 0.01 * (i % 5 + 1) * (1 - inhibitors[i]);
+        }
+        alarm.setDistribution(NoisyMaxDistribution.noisyOr(0.01, inhibitors));
+        bn.setEvidence("alarm", "yes");
+        IBayesInferer inferer = new JunctionTreeInferer(bn);
+
+        inferer.inferNode("cause0");
+        double othersInhibited = allInhibited / (1 - 0.01 * (1 - inhibitors[0]));
+        final double expected = 0.01 * (1 - inhibitors[0] * othersInhibited) / (1 - allInhibited);
+        final double result = bn.getNodeByName("cause0").getInference("yes");
+
+        assertEquals(expected, result, 1e-12);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.List;
+import jbayes.core.BayesNet;
+import jbayes.core.Node;
+import jbayes.core.NodeLinkType;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class LazyPropagationInfererTest {
+
+    @Test
+    public void test_infer_node_calculates_correctly_inference() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new LazyPropagationInferer(bn);
+
+        inferer.inferNode("rain");
+        final double expected = 0.3577;
+        final double result = bn.getNodeByName("rain").getInference("T");
+
+        assertEquals(expected, result, 1e-4);
+    }
+
+    @Test
+    public void test_infer_node_does_not_change_inference_for_other_nodes() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new LazyPropagationInferer(bn);
+
+        inferer.inferNode("rain");
+        final List<Double> result = bn.getNodeByName("sprinkler").getInference();
+
+        assertNull(result);
+    }
+
+    @Test
+    public void test_infer_all_nodes_calculates_correctly_inference_of_asia() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        IBayesInferer inferer = new LazyPropagationInferer(bn);
+
+        inferer.inferAllNodes();
+        assertEquals(0.3974534, bn.getNodeByName("dysp").getInference("yes"), 1e-8);
+
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("dysp", "yes");
+        inferer.inferAllNodes();
+        assertEquals(0.11351530, bn.getNodeByName("lung").getInference("yes"), 1e-8);
+        assertEquals(0.78361672, bn.getNodeByName("bronc").getInference("yes"), 1e-8);
+        assertEquals(0.24488886, bn.getNodeByName("xray").getInference("yes"), 1e-8);
+    }
+
+    @Test
+    public void test_infer_all_nodes_does_not_build_clique_tables() {
+        final String[] levels = new String[]{"T", "F"};
+        BayesNet bn = new BayesNet("alarms");
+        Node any = new Node("any", levels, NodeLinkType.OR);
+        Node all = new Node("all", levels, NodeLinkType.AND);
+        for (int i = 0; i < 8; i++) {
+            Node sensor = new Node("sensor" + i, levels, new Integer[]{1, 9});
+            bn.addLink(sensor, any);
+            bn.addLink(sensor, all);
+        }
+        bn.setEvidence("any", "T");
+        bn.setEvidence("all", "F");
+        LazyPropagationInferer inferer = new LazyPropagationInferer(bn);
+
+        inferer.inferAllNodes();
+        final double result = bn.getNodeByName("sensor0").getInference("T");
+
+        final double expected = 0.1 * (1.0 - Math.pow(0.1, 7)) / (1.0 - Math.pow(0.9, 8) - Math.pow(0.1, 8));
+        assertEquals(expected, result, 1e-12);
+        // a clique with all sensors and one of the gates contains 2^9 entries
+        assertTrue(inferer.getLargestTableSize() < 512);
+    }
+}
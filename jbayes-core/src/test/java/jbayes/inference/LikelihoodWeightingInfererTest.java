@@ -0,0 +1,90 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.List;
+import jbayes.core.BayesNet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class LikelihoodWeightingInfererTest {
+
+    @Test
+    public void test_infer_node_calculates_correctly_inference() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        LikelihoodWeightingInferer inferer = new LikelihoodWeightingInferer(bn, 200_000);
+        inferer.setSeed(42);
+
+        inferer.inferNode("rain");
+        final double expected = 0.3577;
+        final double result = bn.getNodeByName("rain").getInference("T");
+
+        assertEquals(expected, result, 1e-2);
+        assertEquals(200_000, inferer.getDrawnSampleCount());
+    }
+
+    @Test
+    public void test_infer_node_does_not_change_inference_for_other_nodes() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new LikelihoodWeightingInferer(bn, 10_000);
+
+        inferer.inferNode("rain");
+        final List<Double> result = bn.getNodeByName("sprinkler").getInference();
+
+        assertNull(result);
+    }
+
+    @Test
+    public void test_infer_all_nodes_with_same_seed_returns_same_inference() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("dysp", "yes");
+        LikelihoodWeightingInferer inferer = new LikelihoodWeightingInferer(bn, 50_000);
+        inferer.setSeed(7);
+
+        inferer.inferAllNodes();
+        final double first = bn.getNodeByName("bronc").getInference("yes");
+        inferer.inferAllNodes();
+        final double second = bn.getNodeByName("bronc").getInference("yes");
+
+        assertEquals(first, second, 0.0);
+        assertEquals(0.78361672, first, 2e-2);
+    }
+
+    @Test
+    public void test_infer_node_stops_when_target_standard_error_is_reached() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        bn.setEvidence("asia", "yes");
+        LikelihoodWeightingInferer inferer = new LikelihoodWeightingInferer(bn, 10_000_000);
+        inferer.setSeed(1);
+        inferer.setTargetStandardError(0.005);
+
+        inferer.inferNode("lung");
+
+        assertTrue(inferer.getStandardError() <= 0.005);
+        assertTrue(inferer.getDrawnSampleCount() < 10_000_000);
+        assertTrue(inferer.getEffectiveSampleSize() > 0.0);
+        assertEquals(0.055, bn.getNodeByName("lung").getInference("yes"), 2e-2);
+    }
+}
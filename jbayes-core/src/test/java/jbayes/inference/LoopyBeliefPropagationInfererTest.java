@@ -0,0 +1,97 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.List;
+import jbayes.core.BayesNet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class LoopyBeliefPropagationInfererTest {
+
+    @Test
+    public void test_infer_node_does_not_change_inference_for_other_nodes() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new LoopyBeliefPropagationInferer(bn);
+
+        inferer.inferNode("rain");
+        final List<Double> result = bn.getNodeByName("sprinkler").getInference();
+
+        assertNull(result);
+    }
+
+    @Test
+    public void test_infer_all_nodes_is_exact_on_polytree() {
+        BayesNet bn = BNFactoryUtil.createAsiaPolytreeBN();
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("xray", "yes");
+        new JunctionTreeInferer(bn).inferAllNodes();
+        double[] expected = bn.getNodes().stream().filter(x -> x.getEvidence() == null)
+                .mapToDouble(x -> x.getInference(x.getLevels().get(0))).toArray();
+
+        for (LoopyBeliefPropagationInferer.Schedule schedule : LoopyBeliefPropagationInferer.Schedule.values()) {
+            LoopyBeliefPropagationInferer inferer = new LoopyBeliefPropagationInferer(bn, schedule);
+            inferer.setTolerance(1e-12);
+            inferer.inferAllNodes();
+            double[] result = bn.getNodes().stream().filter(x -> x.getEvidence() == null)
+                    .mapToDouble(x -> x.getInference(x.getLevels().get(0))).toArray();
+
+            assertArrayEquals(expected, result, 1e-9);
+            assertTrue(inferer.getResidual() <= 1e-12);
+        }
+    }
+
+    @Test
+    public void test_infer_all_nodes_approximates_loopy_network() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("dysp", "yes");
+        LoopyBeliefPropagationInferer inferer = new LoopyBeliefPropagationInferer(bn);
+
+        inferer.inferAllNodes();
+
+        assertEquals(0.11351530, bn.getNodeByName("lung").getInference("yes"), 2e-2);
+        assertEquals(0.78361672, bn.getNodeByName("bronc").getInference("yes"), 2e-2);
+        assertTrue(inferer.getIterations() > 0);
+        assertTrue(inferer.getResidual() <= inferer.getTolerance());
+    }
+
+    @Test
+    public void test_infer_all_nodes_converges_synchronously_with_damping() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("dysp", "yes");
+        new LoopyBeliefPropagationInferer(bn).inferAllNodes();
+        final double expected = bn.getNodeByName("bronc").getInference("yes");
+        LoopyBeliefPropagationInferer inferer = new LoopyBeliefPropagationInferer(bn,
+                LoopyBeliefPropagationInferer.Schedule.SYNCHRONOUS);
+        inferer.setDamping(0.5);
+
+        inferer.inferAllNodes();
+        final double result = bn.getNodeByName("bronc").getInference("yes");
+
+        assertEquals(expected, result, 1e-5);
+        assertTrue(inferer.getIterations() < inferer.getMaxIterations());
+        assertTrue(inferer.getResidual() <= inferer.getTolerance());
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jbayes.core.BayesNet;
+import jbayes.core.Evidence;
+import jbayes.core.Factor;
+import jbayes.core.Node;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class MaxProductInfererTest {
+
+    @Test
+    public void test_infer_most_probable_explanation_without_evidence() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        MaxProductInferer inferer = new MaxProductInferer(bn);
+
+        Explanation result = inferer.inferMostProbableExplanation();
+
+        assertEquals(8, result.getLevels().size());
+        assertBruteForce(bn, bn.getNodes(), result);
+    }
+
+    @Test
+    public void test_infer_most_probable_explanation_with_evidence() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("dysp", "yes");
+        MaxProductInferer inferer = new MaxProductInferer(bn);
+
+        Explanation result = inferer.inferMostProbableExplanation();
+
+        assertEquals(6, result.getLevels().size());
+        assertEquals(0.004153625, result.getProbabilityOfEvidence(), 1e-9);
+        assertBruteForce(bn, bn.getNodes(), result);
+    }
+
+    @Test
+    public void test_infer_most_probable_explanation_reads_given_evidence_without_changing_nodes() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        MaxProductInferer inferer = new MaxProductInferer(bn);
+        Evidence evidence = Evidence.none(bn.getNodes().size())
+                .with(bn.getNodeByName("asia"), "yes")
+                .with(bn.getNodeByName("dysp"), "yes");
+
+        Node tub = bn.getNodeByName("tub");
+        Node lung = bn.getNodeByName("lung");
+        Explanation result = inferer.inferMostProbableExplanation(evidence);
+
+        assertEquals(6, result.getLevels().size());
+        assertEquals(0.004153625, result.getProbabilityOfEvidence(), 1e-9);
+        assertNull(bn.getNodeByName("asia").getEvidence());
+        // dysp is observed, so only tub and lung are assigned
+        assertEquals(2, inferer.inferMaximumAPosteriori(evidence, tub, lung, bn.getNodeByName("dysp")).getLevels().size());
+
+        bn.setEvidence(evidence);
+        assertEquals(result.getLevels(), inferer.inferMostProbableExplanation().getLevels());
+    }
+
+    @Test
+    public void test_infer_maximum_a_posteriori_sums_out_other_nodes() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        bn.setEvidence("xray", "yes");
+        MaxProductInferer inferer = new MaxProductInferer(bn);
+        Node tub = bn.getNodeByName("tub");
+        Node lung = bn.getNodeByName("lung");
+
+        Explanation result = inferer.inferMaximumAPosteriori(tub, lung);
+
+        assertEquals(2, result.getLevels().size());
+        assertBruteForce(bn, Arrays.asList(tub, lung), result);
+    }
+
+    @Test
+    public void test_infer_maximum_a_posteriori_of_single_node_matches_marginal() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.setEvidence("grasswet", "T");
+        MaxProductInferer inferer = new MaxProductInferer(bn);
+        IBayesInferer exact = new JunctionTreeInferer(bn);
+
+        Explanation result = inferer.inferMaximumAPosteriori(bn.getNodeByName("rain"));
+        exact.inferNode("rain");
+
+        assertEquals(bn.getNodeByName("rain").getMostProbableLevel(), result.getLevel(bn.getNodeByName("rain")));
+        assertEquals(bn.getNodeByName("rain").getInference(result.getLevel(bn.getNodeByName("rain"))),
+                result.getPosteriorProbability(), 1e-4);
+    }
+
+    @Test
+    public void test_infer_maximum_a_posteriori_recompiles_changed_network() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        MaxProductInferer inferer = new MaxProductInferer(bn);
+        Node rain = bn.getNodeByName("rain");
+
+        assertEquals("F", inferer.inferMaximumAPosteriori(rain).getLevel(rain));
+        rain.setDistribution(90, 10);
+        assertEquals("T", inferer.inferMaximumAPosteriori(rain).getLevel(rain));
+
+        Node cloudy = new Node("cloudy", new String[]{"T", "F"}, new Integer[]{3, 7});
+        bn.addNode(cloudy);
+        assertEquals("F", inferer.inferMaximumAPosteriori(cloudy).getLevel(cloudy));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_infer_most_probable_explanation_throws_exception_for_impossible_evidence() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        bn.setEvidence("tub", "yes");
+        bn.setEvidence("either", "no");
+        MaxProductInferer inferer = new MaxProductInferer(bn);
+
+        inferer.inferMostProbableExplanation();
+    }
+
+    /**
+     * Compares the result with the maximum over all assignments of the joint
+     * probability summed over the nodes, which are not specified.
+     */
+    private static void assertBruteForce(BayesNet bn, Collection<Node> nodes, Explanation result) {
+        CompiledNetwork compiled = CompiledNetwork.compile(bn);
+        int[] evidence = compiled.getEvidence();
+        List<Node> targets = Arrays.asList(nodes.stream().filter(x -> x.getEvidence() == null).toArray(Node[]::new));
+        Map<List<Integer>, Double> probabilities = new HashMap<>();
+        double probabilityOfEvidence = 0.0;
+        int[] states = new int[compiled.size()];
+        do {
+            boolean consistent = true;
+            for (int var = 0; var < states.length; var++) {
+                consistent &= evidence[var] == -1 || evidence[var] == states[var];
+            }
+            if (consistent) {
+                double joint = joint(compiled, states);
+                Integer[] key = targets.stream().map(x -> states[compiled.getId(x)]).toArray(Integer[]::new);
+                probabilities.merge(Arrays.asList(key), joint, Double::sum);
+                probabilityOfEvidence += joint;
+            }
+        } while (next(compiled, states));
+
+        double max = probabilities.values().stream().mapToDouble(x -> x).max().getAsDouble();
+        Integer[] key = targets.stream()
+                .map(x -> x.getLevels().indexOf(result.getLevel(x))).toArray(Integer[]::new);
+        assertEquals(max, result.getProbability(), 1e-12);
+        assertEquals(max, probabilities.get(Arrays.asList(key)), 1e-12);
+        assertEquals(probabilityOfEvidence, result.getProbabilityOfEvidence(), 1e-12);
+    }
+
+    private static double joint(CompiledNetwork compiled, int[] states) {
+        double result = 1.0;
+        for (int var = 0; var < states.length; var++) {
+            Factor family = compiled.getFamily(var);
+            int index = 0;
+            int stride = 1;
+            for (int i = 0; i < family.getVariables().length; i++) {
+                index += states[family.getVariables()[i]] * stride;
+                stride *= family.getCards()[i];
+            }
+            result *= family.getValues()[index];
+        }
+        return result;
+    }
+
+    private static boolean next(CompiledNetwork compiled, int[] states) {
+        for (int var = 0; var < states.length; var++) {
+            if (++states[var] < compiled.getCard(var)) {
+                return true;
+            }
+            states[var] = 0;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import jbayes.core.BayesNet;
+import jbayes.core.Node;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Accuracy of each {@link NumericMode} against the results of the R inferer
+ * (gRain) on the test networks.
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class NumericModeTest {
+
+    /**
+     * Returns the largest error of the mode accepted for the test networks.
+     */
+    private static double toleranceOf(NumericMode mode) {
+        return mode == NumericMode.FLOAT ? 1e-6 : 1e-10;
+    }
+
+    /**
+     * Creates a chain of binary nodes, where each node equals its parent
+     * with probability 0.9.
+     */
+    private static BayesNet createChainBN(int length) {
+        final String[] levels = new String[]{"yes", "no"};
+        BayesNet bn = new BayesNet("chain");
+        Node parent = new Node("x0", levels, new Double[]{0.5, 0.5});
+        bn.addNode(parent);
+        for (int i = 1; i < length; i++) {
+            Node child = new Node("x" + i, levels, new Double[]{0.9, 0.1, 0.1, 0.9});
+            bn.addLink(parent, child);
+            parent = child;
+        }
+        return bn;
+    }
+
+    @Test
+    public void test_all_modes_calculate_correctly_prior_marginals() {
+        for (NumericMode mode : NumericMode.values()) {
+            InferenceSession session = CompiledModel.compile(BNFactoryUtil.createAsiaBN(),
+                    EliminationHeuristic.MIN_FILL, mode).createSession();
+
+            assertEquals(mode.name(), 0.0104, session.getInference("tub", "yes"), toleranceOf(mode));
+            assertEquals(mode.name(), 0.45, session.getInference("bronc", "yes"), toleranceOf(mode));
+            assertEquals(mode.name(), 0.3974534, session.getInference("dysp", "yes"), toleranceOf(mode));
+            assertEquals(mode.name(), 1.0, session.getProbabilityOfEvidence(), toleranceOf(mode));
+        }
+    }
+
+    @Test
+    public void test_all_modes_calculate_correctly_posterior_marginals() {
+        for (NumericMode mode : NumericMode.values()) {
+            InferenceSession session = CompiledModel.compile(BNFactoryUtil.createAsiaBN(),
+                    EliminationHeuristic.MIN_FILL, mode).createSession();
+            session.setEvidence("asia", "yes");
+            session.setEvidence("dysp", "yes");
+
+            assertEquals(mode.name(), 0.004153625, session.getProbabilityOfEvidence(), 1e-3 * toleranceOf(mode));
+            assertEquals(mode.name(), Math.log(0.004153625), session.getLogProbabilityOfEvidence(), toleranceOf(mode));
+            assertEquals(mode.name(), 0.11351530, session.getInference("lung", "yes"), 1e-8 + toleranceOf(mode));
+            assertEquals(mode.name(), 0.78361672, session.getInference("bronc", "yes"), 1e-8 + toleranceOf(mode));
+        }
+    }
+
+    @Test
+    public void test_all_modes_match_r_inferer_on_weather_network() {
+        for (NumericMode mode : NumericMode.values()) {
+            InferenceSession session = CompiledModel.compile(BNFactoryUtil.createWeatherBN(),
+                    EliminationHeuristic.MIN_FILL, mode).createSession();
+            session.setEvidence("grasswet", "T");
+
+            assertEquals(mode.name(), 0.3577, session.getInference("rain", "T"), 1e-4);
+            assertEquals(mode.name(), 0.6467, session.getInference("sprinkler", "T"), 1e-4);
+        }
+    }
+
+    @Test
+    public void test_log_mode_does_not_underflow_on_long_chain_of_evidence() {
+        BayesNet bn = createChainBN(500);
+        InferenceSession session = CompiledModel.compile(bn, EliminationHeuristic.MIN_FILL, NumericMode.LOG).createSession();
+        for (int i = 0; i < 499; i++) {
+            session.setEvidence("x" + i, i % 2 == 0 ? "yes" : "no");
+        }
+
+        assertEquals(Math.log(0.5) + 498 * Math.log(0.1), session.getLogProbabilityOfEvidence(), 1e-9);
+        assertEquals(0.0, session.getProbabilityOfEvidence(), 0.0);
+        assertEquals(0.9, session.getInference("x499", "yes"), 1e-12);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_double_mode_underflows_on_long_chain_of_evidence() {
+        BayesNet bn = createChainBN(500);
+        InferenceSession session = CompiledModel.compile(bn).createSession();
+        for (int i = 0; i < 499; i++) {
+            session.setEvidence("x" + i, i % 2 == 0 ? "yes" : "no");
+        }
+
+        session.getInference("x499");
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.List;
+import jbayes.core.BayesNet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class PolytreeInfererTest {
+
+    @Test
+    public void test_is_singly_connected_detects_loops() {
+        assertTrue(PolytreeInferer.isSinglyConnected(BNFactoryUtil.createAsiaPolytreeBN()));
+        assertFalse(PolytreeInferer.isSinglyConnected(BNFactoryUtil.createAsiaBN()));
+        assertFalse(PolytreeInferer.isSinglyConnected(BNFactoryUtil.createWeatherBN()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_infer_node_throws_exception_for_loopy_network() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        IBayesInferer inferer = new PolytreeInferer(bn);
+
+        inferer.inferNode("rain");
+    }
+
+    @Test
+    public void test_infer_node_does_not_change_inference_for_other_nodes() {
+        BayesNet bn = BNFactoryUtil.createAsiaPolytreeBN();
+        bn.getNodeByName("xray").setEvidence("yes");
+        IBayesInferer inferer = new PolytreeInferer(bn);
+
+        inferer.inferNode("lung");
+        final List<Double> result = bn.getNodeByName("tub").getInference();
+
+        assertNull(result);
+    }
+
+    @Test
+    public void test_infer_all_nodes_is_exact_after_evidence_changes() {
+        BayesNet bn = BNFactoryUtil.createAsiaPolytreeBN();
+        PolytreeInferer inferer = new PolytreeInferer(bn);
+        IBayesInferer exact = new JunctionTreeInferer(bn);
+        String[][] evidences = {{}, {"asia"}, {"asia", "xray"}, {"xray"}, {"xray", "bronc"}};
+
+        for (String[] names : evidences) {
+            bn.clearEvidences();
+            for (String name : names) {
+                bn.setEvidence(name, "yes");
+            }
+            exact.inferAllNodes();
+            double[] expected = bn.getNodes().stream().filter(x -> x.getEvidence() == null)
+                    .mapToDouble(x -> x.getInference("yes")).toArray();
+            inferer.inferAllNodes();
+            double[] result = bn.getNodes().stream().filter(x -> x.getEvidence() == null)
+                    .mapToDouble(x -> x.getInference("yes")).toArray();
+
+            assertArrayEquals(expected, result, 1e-12);
+        }
+    }
+
+    @Test
+    public void test_infer_node_sends_only_messages_affected_by_evidence() {
+        BayesNet bn = BNFactoryUtil.createAsiaPolytreeBN();
+        PolytreeInferer inferer = new PolytreeInferer(bn);
+
+        inferer.inferAllNodes();
+        assertEquals(12, inferer.getSentMessageCount());
+        inferer.inferAllNodes();
+        assertEquals(0, inferer.getSentMessageCount());
+
+        bn.setEvidence("bronc", "yes");
+        inferer.inferNode("tub");
+        assertEquals(4, inferer.getSentMessageCount());
+        assertEquals(0.0104, bn.getNodeByName("tub").getInference("yes"), 1e-12);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import jbayes.core.BayesNet;
+import jbayes.core.Evidence;
+import jbayes.core.Node;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class RelevancePruningInfererTest {
+
+    @Test
+    public void test_infer_node_calculates_correctly_inference() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new RelevancePruningInferer(bn, JunctionTreeInferer::new);
+
+        inferer.inferNode("rain");
+        final double expected = 0.3577;
+        final double result = bn.getNodeByName("rain").getInference("T");
+
+        assertEquals(expected, result, 1e-4);
+    }
+
+    @Test
+    public void test_infer_node_does_not_change_inference_for_other_nodes() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new RelevancePruningInferer(bn, JunctionTreeInferer::new);
+
+        inferer.inferNode("rain");
+        final List<Double> result = bn.getNodeByName("sprinkler").getInference();
+
+        assertNull(result);
+    }
+
+    @Test
+    public void test_find_requisite_nodes_drops_barren_and_d_separated_nodes() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+
+        assertEquals(names("asia", "tub"), names(RelevancePruningInferer.findRequisiteNodes(
+                Arrays.asList(bn.getNodeByName("tub")))));
+
+        bn.setEvidence("asia", "yes");
+        assertEquals(names("smoke", "lung"), names(RelevancePruningInferer.findRequisiteNodes(
+                Arrays.asList(bn.getNodeByName("lung")))));
+
+        bn.setEvidence("xray", "yes");
+        assertEquals(names("asia", "tub", "smoke", "lung", "either", "xray"), names(RelevancePruningInferer.findRequisiteNodes(
+                Arrays.asList(bn.getNodeByName("lung")))));
+    }
+
+    @Test
+    public void test_infer_all_nodes_reuses_pruned_network_for_same_pattern() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        List<BayesNet> pruned = new ArrayList<>();
+        RelevancePruningInferer inferer = new RelevancePruningInferer(bn, x -> {
+            pruned.add(x);
+            return new JunctionTreeInferer(x);
+        });
+
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("dysp", "yes");
+        inferer.inferNodes(bn.getNodeByName("bronc"));
+        assertEquals(0.78361672, bn.getNodeByName("bronc").getInference("yes"), 1e-8);
+
+        bn.setEvidence("dysp", "no");
+        inferer.inferNodes(bn.getNodeByName("bronc"));
+        bn.setEvidence("dysp", "yes");
+        inferer.inferNodes(bn.getNodeByName("bronc"));
+        assertEquals(0.78361672, bn.getNodeByName("bronc").getInference("yes"), 1e-8);
+        assertEquals(1, inferer.getCachedNetworkCount());
+        // xray is barren
+        assertFalse(names(pruned.get(0).getNodes()).contains("xray"));
+
+        bn.clearEvidences();
+        bn.setEvidence("asia", "yes");
+        bn.setEvidence("either", "yes");
+        inferer.inferNodes(bn.getNodeByName("tub"), bn.getNodeByName("dysp"));
+        assertEquals(0.48899756, bn.getNodeByName("tub").getInference("yes"), 1e-8);
+        assertEquals(0.85127139, bn.getNodeByName("dysp").getInference("yes"), 1e-8);
+        assertEquals(2, inferer.getCachedNetworkCount());
+    }
+
+    @Test
+    public void test_infer_nodes_given_evidence_does_not_change_nodes() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        RelevancePruningInferer inferer = new RelevancePruningInferer(bn, x -> new JunctionTreeInferer(x));
+        Evidence evidence = Evidence.none(bn.getNodes().size())
+                .with(bn.getNodeByName("asia"), "yes")
+                .with(bn.getNodeByName("dysp"), "yes");
+
+        inferer.inferNodes(evidence, Arrays.asList(bn.getNodeByName("bronc")));
+        assertEquals(0.78361672, bn.getNodeByName("bronc").getInference("yes"), 1e-8);
+
+        inferer.inferNodes(evidence.with(bn.getNodeByName("dysp").getId(), 1), Arrays.asList(bn.getNodeByName("bronc")));
+        assertNull(bn.getNodeByName("dysp").getEvidence());
+        assertEquals(1, inferer.getCachedNetworkCount());
+    }
+
+    @Test
+    public void test_infer_nodes_keeps_at_most_maximum_size_networks() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        RelevancePruningInferer inferer = new RelevancePruningInferer(bn, x -> new JunctionTreeInferer(x), 1);
+
+        inferer.inferNodes(bn.getNodeByName("bronc"));
+        inferer.inferNodes(bn.getNodeByName("tub"));
+        inferer.inferNodes(bn.getNodeByName("lung"));
+        assertEquals(1, inferer.getCachedNetworkCount());
+        assertEquals(0.055, bn.getNodeByName("lung").getInference("yes"), 1e-8);
+    }
+
+    private static Set<String> names(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    private static Set<String> names(Set<Node> nodes) {
+        return nodes.stream().map(x -> x.getName()).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.inference;
+
+import java.util.List;
+import jbayes.core.BayesNet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class VariableEliminationInfererTest {
+
+    @Test
+    public void test_infer_node_calculates_correctly_inference() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new VariableEliminationInferer(bn);
+
+        inferer.inferNode("rain");
+        final double expected = 0.3577;
+        final double result = bn.getNodeByName("rain").getInference("T");
+
+        assertEquals(expected, result, 1e-4);
+    }
+
+    @Test
+    public void test_infer_node_does_not_change_inference_for_other_nodes() {
+        BayesNet bn = BNFactoryUtil.createWeatherBN();
+        bn.getNodeByName("grasswet").setEvidence("T");
+        IBayesInferer inferer = new VariableEliminationInferer(bn);
+
+        inferer.inferNode("rain");
+        final List<Double> result = bn.getNodeByName("sprinkler").getInference();
+
+        assertNull(result);
+    }
+
+    @Test
+    public void test_infer_all_nodes_calculates_correctly_inference_with_each_heuristic() {
+        for (EliminationHeuristic heuristic : EliminationHeuristic.values()) {
+            BayesNet bn = BNFactoryUtil.createAsiaBN();
+            bn.setEvidence("asia", "yes");
+            bn.setEvidence("dysp", "yes");
+            IBayesInferer inferer = new VariableEliminationInferer(bn, heuristic);
+
+            inferer.inferAllNodes();
+
+            assertEquals(0.11351530, bn.getNodeByName("lung").getInference("yes"), 1e-8);
+            assertEquals(0.78361672, bn.getNodeByName("bronc").getInference("yes"), 1e-8);
+            assertEquals(0.24488886, bn.getNodeByName("xray").getInference("yes"), 1e-8);
+        }
+    }
+
+    @Test
+    public void test_infer_node_caches_elimination_order_per_query_pattern() {
+        BayesNet bn = BNFactoryUtil.createAsiaBN();
+        VariableEliminationInferer inferer = new VariableEliminationInferer(bn);
+
+        bn.setEvidence("asia", "yes");
+        inferer.inferNode("lung");
+        bn.setEvidence("asia", "no");
+        inferer.inferNode("lung");
+        assertEquals(1, inferer.getCachedOrderCount());
+
+        bn.setEvidence("xray", "yes");
+        inferer.inferNode("lung");
+        assertEquals(2, inferer.getCachedOrderCount());
+    }
+}
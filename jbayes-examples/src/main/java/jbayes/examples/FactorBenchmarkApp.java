@@ -0,0 +1,92 @@
+/*
+ *
+ * Copyright (C) 2015 Dmytro Grygorenko <dmitrygrig@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jbayes.examples;
+
+import java.util.Arrays;
+import java.util.Random;
+import jbayes.core.Factor;
+
+/**
+ * Measures {@link Factor} operations on clique shapes typical for junction
+ * trees. Run it once as is and once with
+ * {@code -Djbayes.factor.kernels=generic} to compare the contiguous kernels
+ * with the general index arithmetic.
+ *
+ * @author Dmytro Grygorenko <dmitrygrig(at)gmail.com>
+ */
+public class FactorBenchmarkApp {
+
+    private static final int ROUNDS = 20;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        System.out.printf("kernels: %s%n", System.getProperty("jbayes.factor.kernels", "contiguous"));
+        // 18 binary variables, separators of 8 variables
+        benchmark("binary clique", 18, 2, 8);
+        // 10 variables with 4 levels, separators of 4 variables
+        benchmark("4-level clique", 10, 4, 4);
+    }
+
+    private static void benchmark(String name, int count, int card, int separatorCount) {
+        int[] vars = new int[count];
+        int[] cards = new int[count];
+        for (int i = 0; i < count; i++) {
+            vars[i] = i;
+            cards[i] = card;
+        }
+        int[] leading = Arrays.copyOfRange(vars, 0, separatorCount);
+        int[] trailing = Arrays.copyOfRange(vars, count - separatorCount, count);
+        Factor clique = random(vars, cards);
+        Factor leadingMessage = random(leading, Arrays.copyOf(cards, separatorCount));
+        Factor trailingMessage = random(trailing, Arrays.copyOf(cards, separatorCount));
+
+        System.out.printf("%s, %d entries%n", name, clique.size());
+        measure("multiply by leading separator", clique, () -> clique.multiplyInPlace(leadingMessage));
+        measure("multiply by trailing separator", clique, () -> clique.multiplyInPlace(trailingMessage));
+        measure("sum out trailing variables", clique, () -> clique.marginalize(leading));
+        measure("sum out leading variables", clique, () -> clique.marginalize(trailing));
+        measure("normalize", clique, () -> clique.normalize());
+    }
+
+    private static void measure(String operation, Factor clique, Runnable body) {
+        // warm up, so that the measured code is compiled
+        for (int i = 0; i < ROUNDS; i++) {
+            body.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            body.run();
+        }
+        double nanos = (double) (System.nanoTime() - start) / ROUNDS / clique.size();
+        System.out.printf("  %-32s %6.3f ns/entry%n", operation, nanos);
+        // keep the values in a sane range
+        Arrays.fill(clique.getValues(), 1.0);
+    }
+
+    private static Factor random(int[] vars, int[] cards) {
+        Random random = new Random(1);
+        Factor factor = Factor.unit(vars, cards);
+        double[] values = factor.getValues();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 0.5 + random.nextDouble();
+        }
+        return factor;
+    }
+}
@@ -18,12 +18,15 @@
 package jbayes.r.inference;
 
 import com.google.common.base.Joiner;
+import com.google.common.primitives.Doubles;
 import java.util.Collection;
 import java.util.stream.Collectors;
 import jbayes.util.Ensure;
 import jbayes.core.BayesNet;
 import jbayes.core.Node;
 import jbayes.core.NodeLinkType;
+import jbayes.core.NoisyMaxDistribution;
+import jbayes.core.TreeDistribution;
 import jbayes.r.R;
 
 /**
@@ -168,7 +171,7 @@ public abstract class RBayesInfererBase {
          */
         protected String getFormattedNodeNamesByNodes(Collection<Node> nodes) {
             return '"' + Joiner.on("\",\"").join(
-                    nodes.parallelStream().
+                    nodes.stream().
                     map(x -> x.getName()).collect(Collectors.toList())) + '"';
         }
 
@@ -190,7 +193,7 @@ public abstract class RBayesInfererBase {
          */
         protected String getFormattedNodeEvidences(Collection<Node> nodes) {
             return '"' + Joiner.on("\",\"").join(
-                    nodes.parallelStream().
+                    nodes.stream().
                     map(x -> x.getEvidence()).collect(Collectors.toList())) + '"';
         }
     }
@@ -251,12 +254,17 @@ public abstract class RBayesInfererBase {
          * @return Command in R for representation of this object.
          */
         public String getRCreateCmd() {
-            // cptable
-            String table = node.getLinkType() == NodeLinkType.NONE
+            // cptable, noisy nodes are expanded into full tables, since gRain doesn't support them
+            boolean isTable = node.getLinkType() != NodeLinkType.AND && node.getLinkType() != NodeLinkType.OR;
+            String table = isTable
                     ? "cptable"
                     : node.getLinkType() == NodeLinkType.AND
                             ? "andtable" : "ortable";
 
+            Ensure.IsTrue(node.getLinkType() == NodeLinkType.NONE || !isTable
+                    || node.getDistribution() instanceof NoisyMaxDistribution,
+                    String.format("Node %s should have a noisy-MAX distribution", node.getName()));
+
             // dysp + bronc + either
             String vpar = node.getInLinks().isEmpty() ? node.getName()
                     : String.format("%s + %s", node.getName(), Joiner.on(" + ")
@@ -267,7 +275,10 @@ public abstract class RBayesInfererBase {
 
             // 5.0, 5.0, 9, 1
             String distr = node.getLinkType() == NodeLinkType.NONE
-                    ? node.getDistribution().convertToString() : null;
+                    ? node.getDistribution() instanceof TreeDistribution
+                            ? Joiner.on(", ").join(Doubles.asList(((TreeDistribution) node.getDistribution()).toCptValues(node)))
+                            : node.getDistribution().convertToString()
+                    : isTable ? Joiner.on(", ").join(((NoisyMaxDistribution) node.getDistribution()).toCpt(node)) : null;
 
             // "yes", "no"
             String stringLevels = Joiner.on(",")
@@ -277,7 +288,7 @@ public abstract class RBayesInfererBase {
                             .map(x -> String.format("\"%s\"", x))
                             .collect(Collectors.toList()));
 
-            return node.getLinkType() == NodeLinkType.NONE
+            return isTable
                     ? String.format("%s <- %s(~ %s, values = c(%s), levels = c(%s))", this.getAlias(), table, vpar, distr, stringLevels)
                     : String.format("%s <- %s(~ %s, levels = c(%s))", this.getAlias(), table, vpar, stringLevels);
         }
@@ -5,8 +5,11 @@
  */
 package jbayes.r.inference;
 
+import jbayes.core.BayesNet;
 import jbayes.core.Link;
 import jbayes.core.Node;
+import jbayes.core.NodeLinkType;
+import jbayes.core.NoisyMaxDistribution;
 import jbayes.r.inference.RBayesInfererBase.RNodeAdapter;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -96,4 +99,19 @@ public class RNodeAdapterTest {
         assertEquals(expResult, result);
     }
 
+    @Test
+    public void testGetRCreateCmd_NoisyOrNode_ExpandedCptable() {
+        String[] levels = new String[]{"yes", "no"};
+        Node c = new Node("c", levels, NodeLinkType.NOISY_OR);
+        BayesNet bn = new BayesNet();
+        bn.addLink(new Node("a", levels), c);
+        c.setDistribution(NoisyMaxDistribution.noisyOr(0.0, 0.5));
+        RNodeAdapter instance = new RNodeAdapter(c);
+
+        final String expResult = "c.a <- cptable(~ c + a, values = c(0.5, 0.5, 0.0, 1.0), levels = c(\"yes\",\"no\"))";
+        String result = instance.getRCreateCmd();
+
+        assertEquals(expResult, result);
+    }
+
 }